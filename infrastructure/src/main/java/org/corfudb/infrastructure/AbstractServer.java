@@ -5,6 +5,7 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.corfudb.protocols.wireprotocol.CorfuMsg;
+import org.corfudb.protocols.wireprotocol.CorfuMsgType;
 
 /**
  * Created by mwei on 12/4/15.
@@ -30,6 +31,19 @@ public abstract class AbstractServer {
         return true;
     }
 
+    /**
+     * Returns true if messages of a type can be handled in batches. The router hands all the
+     * messages of a batchable type read from a channel in one pass to a single worker, which
+     * handles them in order and flushes their responses once. The handler of a batchable
+     * type must send its response before it returns.
+     *
+     * @param type The type of the message.
+     * @return True if messages of the type can be batched.
+     */
+    public boolean isBatchable(CorfuMsgType type) {
+        return false;
+    }
+
     /**
      * Handle a incoming Netty message.
      *
@@ -4,81 +4,123 @@ import com.github.benmanes.caffeine.cache.CacheWriter;
 import com.github.benmanes.caffeine.cache.RemovalCause;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import org.corfudb.infrastructure.log.StreamLog;
 import org.corfudb.protocols.wireprotocol.LogData;
-import org.corfudb.runtime.exceptions.DataOutrankedException;
-import org.corfudb.runtime.exceptions.OverwriteException;
-import org.corfudb.runtime.exceptions.TrimmedException;
 
 /**
  * BatchWriter is a class that will intercept write-through calls to batch and
  * sync writes.
+ *
+ * <p>Operations are applied to the stream log in arrival order and grouped into
+ * commits: a group is closed when it reaches {@link #BATCH_SIZE} operations,
+ * {@link #BATCH_BYTES} bytes of payload, or when the max delay since the first
+ * operation of the group elapses. A single {@link StreamLog#sync(boolean)} covers
+ * the whole group, after which every future in the group is completed on a
+ * completion thread. Callers that use the async variants are never parked while
+ * the group is being formed.
  */
 @Slf4j
 public class BatchWriter<K, V> implements CacheWriter<K, V>, AutoCloseable {
 
     static final int BATCH_SIZE = 50;
+
+    static final long BATCH_BYTES = 4 * 1024 * 1024;
+
+    static final long DEFAULT_MAX_DELAY_MICROS = 200;
+
     private StreamLog streamLog;
     private BlockingQueue<BatchWriterOperation> operationsQueue;
+
+    /**
+     * Maximum time an operation waits for more operations to join its group.
+     */
+    @Getter
+    private final long maxDelayNanos;
+
     final ExecutorService writerService = Executors
             .newSingleThreadExecutor(new ThreadFactoryBuilder()
                     .setDaemon(false)
                     .setNameFormat("LogUnit-Write-Processor-%d")
                     .build());
 
+    /**
+     * Completes the futures of committed groups, so that the callbacks of the callers
+     * don't run on the write processor and delay the next group.
+     */
+    final ExecutorService completionService = Executors
+            .newSingleThreadExecutor(new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("LogUnit-Write-Completion-%d")
+                    .build());
+
     /**
      * Returns a new BatchWriter for a stream log.
      *
      * @param streamLog stream log for writes (can be in memory or file)
      */
     public BatchWriter(StreamLog streamLog) {
+        this(streamLog, DEFAULT_MAX_DELAY_MICROS);
+    }
+
+    /**
+     * Returns a new BatchWriter for a stream log.
+     *
+     * @param streamLog      stream log for writes (can be in memory or file)
+     * @param maxDelayMicros maximum time in microseconds a group is held open
+     *                       waiting for more operations before it is synced
+     */
+    public BatchWriter(StreamLog streamLog, long maxDelayMicros) {
+        if (maxDelayMicros < 0) {
+            throw new IllegalArgumentException("Max batch delay can't be negative: "
+                    + maxDelayMicros);
+        }
         this.streamLog = streamLog;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
         operationsQueue = new LinkedBlockingQueue<>();
         writerService.submit(this::batchWriteProcessor);
     }
 
     @Override
     public void write(@Nonnull K key, @Nonnull V value) {
-        try {
-            CompletableFuture<Void> cf = new CompletableFuture();
-            operationsQueue.add(new BatchWriterOperation(BatchWriterOperation.Type.WRITE,
-                    (Long) key, (LogData) value, null, cf));
-            cf.get();
-        } catch (Exception e) {
-            log.trace("Write Exception {}", e);
-            if (e.getCause() instanceof RuntimeException) {
-                throw (RuntimeException) e.getCause();
-            } else {
-                throw new RuntimeException(e);
-            }
-        }
+        waitFor(writeAsync((Long) key, (LogData) value));
     }
 
-    public void bulkWrite(List<LogData> entries) {
-        try {
-            CompletableFuture<Void> cf = new CompletableFuture();
-            operationsQueue.add(new BatchWriterOperation(BatchWriterOperation.Type.RANGE_WRITE,
-                    null, null, entries, cf));
-        } catch (Exception e) {
-            log.trace("Write Exception {}", e);
-            if (e.getCause() instanceof RuntimeException) {
-                throw (RuntimeException) e.getCause();
-            } else {
-                throw new RuntimeException(e);
-            }
-        }
+    /**
+     * Write a log entry, the returned future completes once the entry is synced.
+     *
+     * @param address log address to write
+     * @param logData entry to write
+     * @return a future that completes when the write is durable
+     */
+    public CompletableFuture<Void> writeAsync(long address, @Nonnull LogData logData) {
+        return enqueue(BatchWriterOperation.Type.WRITE, address, logData, null);
+    }
+
+    /**
+     * Write a range of log entries, the returned future completes once the entries
+     * are synced.
+     *
+     * @param entries entries to write
+     * @return a future that completes when the write is durable
+     */
+    public CompletableFuture<Void> bulkWrite(List<LogData> entries) {
+        return enqueue(BatchWriterOperation.Type.RANGE_WRITE, null, null, entries);
     }
 
     /**
@@ -87,14 +129,17 @@ public class BatchWriter<K, V> implements CacheWriter<K, V>, AutoCloseable {
      * @param address log address to trim
      */
     public void trim(@Nonnull long address) {
-        try {
-            CompletableFuture<Void> cf = new CompletableFuture();
-            operationsQueue.add(new BatchWriterOperation(BatchWriterOperation.Type.TRIM,
-                    address, null, null, cf));
-            cf.get();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        waitFor(trimAsync(address));
+    }
+
+    /**
+     * Asynchronously trim an address from the log.
+     *
+     * @param address log address to trim
+     * @return a future that completes when the trim is durable
+     */
+    public CompletableFuture<Void> trimAsync(long address) {
+        return enqueue(BatchWriterOperation.Type.TRIM, address, null, null);
     }
 
     /**
@@ -103,18 +148,80 @@ public class BatchWriter<K, V> implements CacheWriter<K, V>, AutoCloseable {
      * @param address prefix address to trim to (inclusive)
      */
     public void prefixTrim(@Nonnull long address) {
+        waitFor(prefixTrimAsync(address));
+    }
+
+    /**
+     * Asynchronously trim addresses from log up to a prefix.
+     *
+     * @param address prefix address to trim to (inclusive)
+     * @return a future that completes when the trim is durable
+     */
+    public CompletableFuture<Void> prefixTrimAsync(long address) {
+        return enqueue(BatchWriterOperation.Type.PREFIX_TRIM, address, null, null);
+    }
+
+    @Override
+    public void delete(K key, V value, RemovalCause removalCause) {
+    }
+
+    private CompletableFuture<Void> enqueue(BatchWriterOperation.Type type, Long address,
+                                            LogData logData, List<LogData> entries) {
+        CompletableFuture<Void> cf = new CompletableFuture<>();
+        operationsQueue.add(new BatchWriterOperation(type, address, logData, entries, cf));
+        return cf;
+    }
+
+    /**
+     * Block on an operation future and rethrow the cause of its failure, so that
+     * synchronous callers observe the same exceptions the stream log throws.
+     */
+    private void waitFor(CompletableFuture<Void> cf) {
         try {
-            CompletableFuture<Void> cf = new CompletableFuture();
-            operationsQueue.add(new BatchWriterOperation(BatchWriterOperation.Type.PREFIX_TRIM,
-                    address, null, null, cf));
             cf.get();
-        } catch (Exception e) {
+        } catch (ExecutionException e) {
+            log.trace("Write Exception {}", e);
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else {
+                throw new RuntimeException(e.getCause());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
         }
     }
 
-    @Override
-    public void delete(K key, V value, RemovalCause removalCause) {
+    /**
+     * Unwrap the exception an async caller observes in a completion stage.
+     *
+     * @param throwable exception passed to a completion stage
+     * @return the exception thrown by the stream log
+     */
+    public static Throwable unwrap(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
+    }
+
+    private static long payloadSize(BatchWriterOperation operation) {
+        switch (operation.getType()) {
+            case WRITE:
+                return dataSize(operation.getLogData());
+            case RANGE_WRITE:
+                long size = 0;
+                for (LogData entry : operation.getEntries()) {
+                    size += dataSize(entry);
+                }
+                return size;
+            default:
+                return 0;
+        }
+    }
+
+    private static long dataSize(LogData logData) {
+        return logData.getData() == null ? 0 : logData.getData().length;
     }
 
     private void handleOperationResults(BatchWriterOperation operation) {
@@ -125,73 +232,96 @@ public class BatchWriter<K, V> implements CacheWriter<K, V>, AutoCloseable {
         }
     }
 
+    private void applyOperation(BatchWriterOperation currOp) {
+        try {
+            switch (currOp.getType()) {
+                case TRIM:
+                    streamLog.trim(currOp.getAddress());
+                    break;
+                case PREFIX_TRIM:
+                    streamLog.prefixTrim(currOp.getAddress());
+                    break;
+                case WRITE:
+                    streamLog.append(currOp.getAddress(), currOp.getLogData());
+                    break;
+                case RANGE_WRITE:
+                    streamLog.append(currOp.getEntries());
+                    break;
+                default:
+                    log.warn("Unknown BatchWriterOperation {}", currOp);
+            }
+        } catch (Exception e) {
+            currOp.setException(e);
+        }
+    }
+
+    /**
+     * Sync the stream log once for the whole group, then complete the futures of
+     * every operation in the group on the completion thread. If the sync fails, none
+     * of the operations are durable and they are all failed with the sync exception.
+     */
+    private void commitGroup(List<BatchWriterOperation> group) {
+        try {
+            streamLog.sync(true);
+        } catch (Exception e) {
+            log.error("commitGroup: failed to sync {} operations", group.size(), e);
+            for (BatchWriterOperation operation : group) {
+                if (operation.getException() == null) {
+                    operation.setException(e);
+                }
+            }
+        }
+        log.trace("Sync'd {} operations", group.size());
+
+        List<BatchWriterOperation> committed = new ArrayList<>(group);
+        completionService.execute(() -> committed.forEach(this::handleOperationResults));
+        group.clear();
+    }
+
     private void batchWriteProcessor() {
         try {
-            BatchWriterOperation lastOp = null;
-            int processed = 0;
-            List<BatchWriterOperation> res = new LinkedList();
+            List<BatchWriterOperation> group = new ArrayList<>(BATCH_SIZE);
+            boolean shutdown = false;
 
-            while (true) {
-                BatchWriterOperation currOp;
+            while (!shutdown) {
+                BatchWriterOperation currOp = operationsQueue.take();
+                final long deadline = System.nanoTime() + maxDelayNanos;
+                long groupBytes = 0;
 
-                if (lastOp == null) {
-                    currOp = operationsQueue.take();
-                } else {
-                    currOp = operationsQueue.poll();
+                while (currOp != null) {
+                    if (currOp == BatchWriterOperation.SHUTDOWN) {
+                        log.trace("Shutting down the write processor");
+                        shutdown = true;
+                        break;
+                    }
 
-                    if (currOp == null || processed == BATCH_SIZE
-                            || currOp == BatchWriterOperation.SHUTDOWN) {
-                        streamLog.sync(true);
-                        log.trace("Sync'd {} writes", processed);
+                    applyOperation(currOp);
+                    group.add(currOp);
+                    groupBytes += payloadSize(currOp);
 
-                        for (BatchWriterOperation operation : res) {
-                            handleOperationResults(operation);
-                        }
-                        res.clear();
-                        processed = 0;
+                    if (group.size() >= BATCH_SIZE || groupBytes >= BATCH_BYTES) {
+                        break;
                     }
-                }
 
-                if (currOp == null) {
-                    lastOp = null;
-                    continue;
-                } else if (currOp == BatchWriterOperation.SHUTDOWN) {
-                    log.trace("Shutting down the write processor");
-                    streamLog.sync(true);
-                    break;
-                } else {
-                    try {
-                        switch (currOp.getType()) {
-                            case TRIM:
-                                streamLog.trim(currOp.getAddress());
-                                res.add(currOp);
-                                break;
-                            case PREFIX_TRIM:
-                                streamLog.prefixTrim(currOp.getAddress());
-                                res.add(currOp);
-                                break;
-                            case WRITE:
-                                streamLog.append(currOp.getAddress(), currOp.getLogData());
-                                res.add(currOp);
-                                break;
-                            case RANGE_WRITE:
-                                streamLog.append(currOp.getEntries());
-                                res.add(currOp);
-                                break;
-                            default:
-                                log.warn("Unknown BatchWriterOperation {}", currOp);
+                    // Operations that are already queued join the group without
+                    // waiting, otherwise wait out the remaining latency budget.
+                    currOp = operationsQueue.poll();
+                    if (currOp == null) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining > 0) {
+                            currOp = operationsQueue.poll(remaining, TimeUnit.NANOSECONDS);
                         }
-                    } catch (Exception e) {
-                        currOp.setException(e);
-                        res.add(currOp);
                     }
+                }
 
-                    processed++;
-                    lastOp = currOp;
+                if (!group.isEmpty() || shutdown) {
+                    commitGroup(group);
                 }
             }
         } catch (Exception e) {
             log.error("Caught exception in the write processor {}", e);
+        } finally {
+            completionService.shutdown();
         }
     }
 
@@ -201,4 +331,4 @@ public class BatchWriter<K, V> implements CacheWriter<K, V>, AutoCloseable {
         writerService.shutdown();
     }
 
-}
\ No newline at end of file
+}
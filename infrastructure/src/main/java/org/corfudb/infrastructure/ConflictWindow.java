@@ -0,0 +1,382 @@
+package org.corfudb.infrastructure;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+import org.corfudb.protocols.wireprotocol.TxResolutionInfo;
+import org.corfudb.runtime.view.Address;
+
+/**
+ * A bounded window of recent conflict keys and the global-log address of their latest
+ * update.
+ *
+ * <p>A conflict key is the 128-bit hash of a stream ID and a conflict parameter (see
+ * {@link TxResolutionInfo#hashConflictParam}), so the window stores keys as pairs of longs
+ * in open-addressing tables rather than as objects. The window is split into segments by
+ * key, each with its own lock, so that transactions on different streams don't contend.
+ *
+ * <p>Each segment also records its updates in a ring of buckets. Updates are appended to the
+ * newest bucket, so every bucket covers a range of addresses, older than the range of the
+ * next bucket. Once the ring is full, or the segment holds more keys than its share of the
+ * window, the oldest bucket is evicted: the keys whose latest update is in the bucket are
+ * removed. The maximum address of the evicted keys is passed to the eviction listener
+ * before they are removed, so that a reader that misses a key always sees the watermark
+ * that covers it. Trimming evicts the buckets below the trim mark, so it visits buckets
+ * rather than keys.
+ */
+public class ConflictWindow {
+
+    /**
+     * Returned by {@link #get(byte[])} for a key that isn't in the window.
+     */
+    public static final long ABSENT = Address.NOT_FOUND;
+
+    private static final int SEGMENTS = 64;
+
+    private static final int BUCKETS = 16;
+
+    private static final int MIN_TABLE_SIZE = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final LongConsumer evictionListener;
+
+    /**
+     * Returns an empty window.
+     *
+     * @param maxSize          maximum number of keys in the window
+     * @param evictionListener receives the maximum address of the keys of every evicted
+     *                         bucket
+     */
+    ConflictWindow(long maxSize, LongConsumer evictionListener) {
+        int maxSegmentSize = (int) Math.max(1, maxSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(maxSegmentSize);
+        }
+        this.evictionListener = evictionListener;
+    }
+
+    private Segment segmentFor(long low) {
+        return segments[(int) (low & (SEGMENTS - 1))];
+    }
+
+    /**
+     * Returns the address of the latest update of a key.
+     *
+     * @param key a {@link TxResolutionInfo#CONFLICT_HASH_SIZE} bytes key
+     * @return the address, or {@link #ABSENT}
+     */
+    public long get(byte[] key) {
+        ByteBuffer buf = ByteBuffer.wrap(key);
+        long high = buf.getLong();
+        long low = buf.getLong();
+        return segmentFor(low).get(high, low);
+    }
+
+    /**
+     * Records an update of a key.
+     *
+     * @param key     a {@link TxResolutionInfo#CONFLICT_HASH_SIZE} bytes key
+     * @param address the address of the update
+     */
+    public void put(byte[] key, long address) {
+        ByteBuffer buf = ByteBuffer.wrap(key);
+        long high = buf.getLong();
+        long low = buf.getLong();
+        segmentFor(low).put(high, low, address);
+    }
+
+    /**
+     * Removes the keys whose latest update is below a trim mark, without passing them to the
+     * eviction listener.
+     *
+     * @param trimMark the trim mark
+     * @return the number of removed keys
+     */
+    public long trim(long trimMark) {
+        long removed = 0;
+        for (Segment segment : segments) {
+            removed += segment.trim(trimMark);
+        }
+        return removed;
+    }
+
+    /**
+     * Removes all the keys, without passing them to the eviction listener.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Returns the number of keys in the window.
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * The updates of a range of addresses.
+     */
+    private static class Bucket {
+
+        private long[] highs = new long[MIN_TABLE_SIZE];
+        private long[] lows = new long[MIN_TABLE_SIZE];
+        private long[] addresses = new long[MIN_TABLE_SIZE];
+        private int count;
+        private long minAddress = Long.MAX_VALUE;
+        private long maxAddress = Long.MIN_VALUE;
+
+        void add(long high, long low, long address) {
+            if (count == highs.length) {
+                highs = Arrays.copyOf(highs, count * 2);
+                lows = Arrays.copyOf(lows, count * 2);
+                addresses = Arrays.copyOf(addresses, count * 2);
+            }
+            highs[count] = high;
+            lows[count] = low;
+            addresses[count] = address;
+            count++;
+            minAddress = Math.min(minAddress, address);
+            maxAddress = Math.max(maxAddress, address);
+        }
+
+        void reset() {
+            if (highs.length > MIN_TABLE_SIZE) {
+                highs = new long[MIN_TABLE_SIZE];
+                lows = new long[MIN_TABLE_SIZE];
+                addresses = new long[MIN_TABLE_SIZE];
+            }
+            count = 0;
+            minAddress = Long.MAX_VALUE;
+            maxAddress = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * An open-addressing table with linear probing, and the ring of buckets of its updates.
+     * A bucket may hold stale updates, of keys that were updated again or trimmed, which are
+     * skipped when the bucket is evicted.
+     */
+    private class Segment {
+
+        private final int maxSize;
+        private final int bucketSize;
+        private final Bucket[] buckets;
+
+        private long[] highs;
+        private long[] lows;
+        private long[] addresses;
+        private int size;
+
+        /**
+         * Index of the oldest bucket, and number of buckets in use. The newest bucket is the
+         * last one in use.
+         */
+        private int oldest;
+        private int inUse;
+
+        Segment(int maxSize) {
+            this.maxSize = maxSize;
+            int numBuckets = Math.min(BUCKETS, maxSize);
+            this.bucketSize = (maxSize + numBuckets - 1) / numBuckets;
+            this.buckets = new Bucket[numBuckets];
+            for (int i = 0; i < numBuckets; i++) {
+                buckets[i] = new Bucket();
+            }
+            clear();
+        }
+
+        synchronized void clear() {
+            highs = new long[MIN_TABLE_SIZE];
+            lows = new long[MIN_TABLE_SIZE];
+            addresses = new long[MIN_TABLE_SIZE];
+            Arrays.fill(addresses, ABSENT);
+            size = 0;
+
+            for (Bucket bucket : buckets) {
+                bucket.reset();
+            }
+            oldest = 0;
+            inUse = 1;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long get(long high, long low) {
+            int slot = find(high, low);
+            return slot < 0 ? ABSENT : addresses[slot];
+        }
+
+        synchronized void put(long high, long low, long address) {
+            Bucket newest = buckets[(oldest + inUse - 1) % buckets.length];
+            if (newest.count == bucketSize) {
+                if (inUse == buckets.length) {
+                    evictOldest();
+                }
+                // With a single bucket, the eviction emptied the newest bucket
+                if (newest.count != 0) {
+                    inUse++;
+                    newest = buckets[(oldest + inUse - 1) % buckets.length];
+                }
+            }
+            newest.add(high, low, address);
+
+            int slot = find(high, low);
+            if (slot < 0) {
+                if (size + 1 > highs.length / 2) {
+                    resize(highs.length * 2);
+                }
+                slot = -slot - 1;
+                highs[slot] = high;
+                lows[slot] = low;
+                size++;
+            }
+            addresses[slot] = address;
+
+            while (size > maxSize && inUse > 1) {
+                evictOldest();
+            }
+        }
+
+        synchronized long trim(long trimMark) {
+            long removed = 0;
+            // Buckets entirely below the trim mark are dropped
+            while (inUse > 1 && buckets[oldest].maxAddress < trimMark) {
+                removed += removeBucket(buckets[oldest], Long.MAX_VALUE, null);
+                buckets[oldest].reset();
+                oldest = (oldest + 1) % buckets.length;
+                inUse--;
+            }
+            // The keys below the trim mark in the remaining buckets are removed
+            for (int i = 0; i < inUse; i++) {
+                Bucket bucket = buckets[(oldest + i) % buckets.length];
+                if (bucket.minAddress < trimMark) {
+                    removed += removeBucket(bucket, trimMark, null);
+                }
+            }
+            return removed;
+        }
+
+        /**
+         * Evicts the oldest bucket, passing the maximum address of its evicted keys to the
+         * eviction listener.
+         */
+        private void evictOldest() {
+            Bucket bucket = buckets[oldest];
+            removeBucket(bucket, Long.MAX_VALUE, evictionListener);
+            bucket.reset();
+            if (inUse > 1) {
+                oldest = (oldest + 1) % buckets.length;
+                inUse--;
+            }
+        }
+
+        /**
+         * Removes the keys whose latest update is in a bucket, and below an address.
+         *
+         * @param listener receives the maximum address of the removed keys before they are
+         *                 removed, or null
+         * @return the number of removed keys
+         */
+        private long removeBucket(Bucket bucket, long below, LongConsumer listener) {
+            long maxRemoved = Long.MIN_VALUE;
+            for (int i = 0; i < bucket.count; i++) {
+                if (bucket.addresses[i] < below && isLatest(bucket, i)) {
+                    maxRemoved = Math.max(maxRemoved, bucket.addresses[i]);
+                }
+            }
+            if (maxRemoved == Long.MIN_VALUE) {
+                return 0;
+            }
+            if (listener != null) {
+                listener.accept(maxRemoved);
+            }
+
+            long removed = 0;
+            for (int i = 0; i < bucket.count; i++) {
+                if (bucket.addresses[i] < below) {
+                    int slot = find(bucket.highs[i], bucket.lows[i]);
+                    if (slot >= 0 && addresses[slot] == bucket.addresses[i]) {
+                        removeSlot(slot);
+                        removed++;
+                    }
+                }
+            }
+            return removed;
+        }
+
+        private boolean isLatest(Bucket bucket, int index) {
+            int slot = find(bucket.highs[index], bucket.lows[index]);
+            return slot >= 0 && addresses[slot] == bucket.addresses[index];
+        }
+
+        /**
+         * Returns the slot of a key, or -(insertion slot) - 1 if it's not in the table.
+         */
+        private int find(long high, long low) {
+            int mask = highs.length - 1;
+            int slot = home(high, mask);
+            while (addresses[slot] != ABSENT) {
+                if (highs[slot] == high && lows[slot] == low) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -slot - 1;
+        }
+
+        private int home(long high, int mask) {
+            return (int) (high ^ (high >>> Integer.SIZE)) & mask;
+        }
+
+        /**
+         * Removes a slot, shifting back the keys of its probe sequence.
+         */
+        private void removeSlot(int slot) {
+            int mask = highs.length - 1;
+            int hole = slot;
+            int next = (hole + 1) & mask;
+            while (addresses[next] != ABSENT) {
+                int home = home(highs[next], mask);
+                // Move the key to the hole if the hole is on its probe sequence
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    highs[hole] = highs[next];
+                    lows[hole] = lows[next];
+                    addresses[hole] = addresses[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            addresses[hole] = ABSENT;
+            size--;
+        }
+
+        private void resize(int tableSize) {
+            long[] oldHighs = highs;
+            long[] oldLows = lows;
+            long[] oldAddresses = addresses;
+            highs = new long[tableSize];
+            lows = new long[tableSize];
+            addresses = new long[tableSize];
+            Arrays.fill(addresses, ABSENT);
+            for (int i = 0; i < oldAddresses.length; i++) {
+                if (oldAddresses[i] != ABSENT) {
+                    int slot = -find(oldHighs[i], oldLows[i]) - 1;
+                    highs[slot] = oldHighs[i];
+                    lows[slot] = oldLows[i];
+                    addresses[slot] = oldAddresses[i];
+                }
+            }
+        }
+    }
+}
@@ -81,7 +81,13 @@ public class CorfuServer {
                     + "<truststore_password_file>] [-b] [-g -o <username_file> -j <password_file>] "
                     + "[-k <seqcache>] [-T <threads>] [-i <channel-implementation>] [-H <seconds>] "
                     + "[-I <cluster-id>] [-x <ciphers>] [-z <tls-protocols>]] [-P <prefix>]"
-                    + " [--agent] <port>\n"
+                    + " [--batch-max-delay=<micros>] [--cache-offheap-size=<bytes>]"
+                    + " [--compaction-rate=<MBps>] [--log-segment-records=<records>]"
+                    + " [--log-segment-preallocate=<segments>] [--log-segment-compression]"
+                    + " [--log-io-threads=<threads>] [--log-lazy-verify]"
+                    + " [--log-scrub-interval=<minutes>] [--log-scrub-rate=<MBps>]"
+                    + " [--log-dirs=<paths>] [--log-max-open-segments=<segments>]"
+                    + " [--log-direct-io] [--agent] <port>\n"
                     + "\n"
                     + "Options:\n"
                     + " -l <path>, --log-path=<path>                                             "
@@ -121,6 +127,12 @@ public class CorfuServer {
                     + "              If there is no log, then this will be the size of the log unit"
                     + "\n                                                                        "
                     + "                evicted entries will be auto-trimmed. [default: 0.5].\n"
+                    + " --cache-offheap-size=<bytes>                                             "
+                    + "              The size in bytes of the off-heap cache that keeps entries\n"
+                    + "                                                                          "
+                    + "              evicted from the in-memory cache, or 0 to disable it.\n"
+                    + "                                                                          "
+                    + "              [default: 0].\n"
                     + " -H <seconds>, --HandshakeTimeout=<sceonds>                               "
                     + "              Handshake timeout in seconds [default: 10].\n               "
                     + " -t <token>, --initial-token=<token>                                      "
@@ -130,10 +142,70 @@ public class CorfuServer {
                     + "                                                                          "
                     + " -k <seqcache>, --sequencer-cache-size=<seqcache>                         "
                     + "               The size of the sequencer's cache. [default: 250000].\n    "
+                    + " --sequencer-snapshot-interval=<seconds>                                  "
+                    + "              The interval in seconds between snapshots of the sequencer\n"
+                    + "                                                                          "
+                    + "              state, which bound the log scanned on a sequencer failover,\n"
+                    + "                                                                          "
+                    + "              or 0 to disable them [default: 10].\n"
                     + " -p <seconds>, --compact=<seconds>                                        "
                     + "              The rate the log unit should compact entries (find the,\n"
                     + "                                                                          "
                     + "              contiguous tail) in seconds [default: 60].\n"
+                    + " --log-segment-records=<records>                                          "
+                    + "              The number of records in a log segment file, only applied\n"
+                    + "                                                                          "
+                    + "              when the log is created. Size it so that records times the\n"
+                    + "                                                                          "
+                    + "              typical entry size is the desired file size.\n"
+                    + "                                                                          "
+                    + "              [default: 10000].\n"
+                    + " --log-segment-preallocate=<segments>                                     "
+                    + "              The number of log segment files created ahead of the tail\n"
+                    + "                                                                          "
+                    + "              segment [default: 1].\n"
+                    + " --log-dirs=<paths>                                                       "
+                    + "              Comma separated directories, on other disks, that the log\n"
+                    + "                                                                          "
+                    + "              segments are striped over in addition to the log path.\n"
+                    + "                                                                          "
+                    + "              Only applied when the log is created.\n"
+                    + " --log-max-open-segments=<segments>                                       "
+                    + "              The maximum number of open log segments, the least recently\n"
+                    + "                                                                          "
+                    + "              used segments behind the tail are closed, and opened again\n"
+                    + "                                                                          "
+                    + "              when accessed. 0 for no limit [default: 0].\n"
+                    + " --log-direct-io                                                          "
+                    + "              Append to log segments with direct I/O, bypassing the page\n"
+                    + "                                                                          "
+                    + "              cache. Requires Java 10 or later.\n"
+                    + " --log-segment-compression                                                "
+                    + "              Compress sealed log segments behind the tail segment.\n"
+                    + " --log-io-threads=<threads>                                               "
+                    + "              The number of threads serving asynchronous log reads and\n"
+                    + "                                                                          "
+                    + "              writes [default: 4].\n"
+                    + " --log-lazy-verify                                                        "
+                    + "              Verify the checksums of log records when they are read\n"
+                    + "                                                                          "
+                    + "              from disk and by a background scrubber, instead of when\n"
+                    + "                                                                          "
+                    + "              their segment is opened.\n"
+                    + " --log-scrub-interval=<minutes>                                           "
+                    + "              The interval in minutes between background verifications of\n"
+                    + "                                                                          "
+                    + "              the sealed log segments, or 0 to disable them. Defaults to\n"
+                    + "                                                                          "
+                    + "              60 with --log-lazy-verify, and to 0 otherwise.\n"
+                    + " --log-scrub-rate=<MBps>                                                  "
+                    + "              The maximum rate in MB/s at which background verifications\n"
+                    + "                                                                          "
+                    + "              read log segments, or 0 for no limit [default: 0].\n"
+                    + " --compaction-rate=<MBps>                                                 "
+                    + "              The maximum rate in MB/s at which compaction rewrites log\n"
+                    + "                                                                          "
+                    + "              segments, or 0 for no limit [default: 0].\n"
                     + " -d <level>, --log-level=<level>                                          "
                     + "              Set the logging level, valid levels are: \n"
                     + "                                                                          "
@@ -142,6 +214,10 @@ public class CorfuServer {
                     + "              Layout endpoint to seed Management Server\n"
                     + " -n, --no-verify                                                          "
                     + "              Disable checksum computation and verification.\n"
+                    + " --batch-max-delay=<micros>                                               "
+                    + "              The maximum time in microseconds the log unit holds a group\n"
+                    + "                                                                          "
+                    + "              of writes open before syncing it to disk [default: 200].\n"
                     + " -e, --enable-tls                                                         "
                     + "              Enable TLS.\n"
                     + " -u <keystore>, --keystore=<keystore>                                     "
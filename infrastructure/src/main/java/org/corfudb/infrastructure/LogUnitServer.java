@@ -10,8 +10,12 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.netty.channel.ChannelHandlerContext;
 
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -26,12 +30,15 @@ import org.corfudb.infrastructure.log.StreamLogFiles;
 import org.corfudb.protocols.wireprotocol.CorfuMsg;
 import org.corfudb.protocols.wireprotocol.CorfuMsgType;
 import org.corfudb.protocols.wireprotocol.CorfuPayloadMsg;
+import org.corfudb.protocols.wireprotocol.ExceptionMsg;
 import org.corfudb.protocols.wireprotocol.ILogData;
 import org.corfudb.protocols.wireprotocol.LogData;
 import org.corfudb.protocols.wireprotocol.MultipleReadRequest;
 import org.corfudb.protocols.wireprotocol.RangeWriteMsg;
 import org.corfudb.protocols.wireprotocol.ReadRequest;
 import org.corfudb.protocols.wireprotocol.ReadResponse;
+import org.corfudb.protocols.wireprotocol.StreamAddressRequest;
+import org.corfudb.protocols.wireprotocol.StreamAddressResponse;
 import org.corfudb.protocols.wireprotocol.TrimRequest;
 import org.corfudb.protocols.wireprotocol.WriteRequest;
 import org.corfudb.runtime.exceptions.DataCorruptionException;
@@ -61,6 +68,10 @@ import org.corfudb.util.Utils;
  * of the entry, then the metadata size, metadata and finally the entry itself. When the entry is
  * complete, a written
  * flag is set in the flags field.
+ *
+ * <p>Writes, reads and compactions complete asynchronously on the threads of the stream
+ * log, so the handlers never block the event loop on disk I/O. A read waits for the
+ * writes of its addresses that were accepted before it, and only serves durable entries.
  */
 @Slf4j
 public class LogUnitServer extends AbstractServer {
@@ -97,10 +108,23 @@ public class LogUnitServer extends AbstractServer {
     private final LoadingCache<Long, ILogData> dataCache;
     private final long maxCacheSize;
 
+    /**
+     * Entries evicted from the data cache are kept serialized off-heap in this tier,
+     * or null if the off-heap tier is disabled.
+     */
+    private final OffHeapLogDataCache offHeapCache;
+
     private final StreamLog streamLog;
 
     private final BatchWriter<Long, ILogData> batchWriter;
 
+    /**
+     * Writes and trims that were accepted but aren't durable yet, by address. Reads of
+     * these addresses wait for them, so a read never returns an entry that isn't durable,
+     * and a read sent after a write observes it.
+     */
+    private final Map<Long, CompletableFuture<Void>> pendingWrites = new ConcurrentHashMap<>();
+
     /**
      * Returns a new LogUnitServer.
      * @param serverContext context object providing settings and objects
@@ -123,19 +147,35 @@ public class LogUnitServer extends AbstractServer {
             streamLog = new StreamLogFiles(serverContext, (Boolean) opts.get("--no-verify"));
         }
 
-        batchWriter = new BatchWriter(streamLog);
+        long batchMaxDelay = BatchWriter.DEFAULT_MAX_DELAY_MICROS;
+        if (opts.get("--batch-max-delay") != null) {
+            batchMaxDelay = Long.parseLong((String) opts.get("--batch-max-delay"));
+        }
+
+        batchWriter = new BatchWriter(streamLog, batchMaxDelay);
 
         dataCache = Caffeine.<Long, ILogData>newBuilder()
                 .<Long, ILogData>weigher((k, v) -> ((LogData) v).getData() == null ? 1 : (
                         (LogData) v).getData().length)
                 .maximumWeight(maxCacheSize)
                 .removalListener(this::handleEviction)
-                .writer(batchWriter)
                 .build(this::handleRetrieval);
 
+        long offHeapCacheSize = 0;
+        if (opts.get("--cache-offheap-size") != null) {
+            offHeapCacheSize = Long.parseLong((String) opts.get("--cache-offheap-size"));
+        }
+
         MetricRegistry metrics = serverContext.getMetrics();
 //        MetricsUtils.addCacheGauges(metrics, metricsPrefix + "cache.", dataCache);
 
+        if (offHeapCacheSize > 0) {
+            offHeapCache = new OffHeapLogDataCache(offHeapCacheSize);
+            offHeapCache.registerMetrics(metrics, "logunit.offheap-cache.");
+        } else {
+            offHeapCache = null;
+        }
+
         Runnable task = () -> streamLog.compact();
         compactor = scheduler.scheduleAtFixedRate(task, 10, 45, TimeUnit.MINUTES);
     }
@@ -156,6 +196,26 @@ public class LogUnitServer extends AbstractServer {
         r.sendResponse(ctx, msg, CorfuMsgType.TRIM_MARK_RESPONSE.payloadMsg(streamLog.getTrimMark()));
     }
 
+    /**
+     * Service an incoming request for the addresses of a stream within a range.
+     */
+    @ServerHandler(type = CorfuMsgType.STREAM_ADDRESS_REQUEST)
+    public void handleStreamAddressRequest(CorfuPayloadMsg<StreamAddressRequest> msg,
+                                           ChannelHandlerContext ctx, IServerRouter r) {
+        StreamAddressRequest request = msg.getPayload();
+        log.trace("handleStreamAddressRequest: stream {} in [{}, {}]", request.getStream(),
+                request.getStart(), request.getEnd());
+        streamLog.getStreamAddressesAsync(request.getStream(), request.getStart(),
+                request.getEnd()).whenComplete((addresses, ex) -> {
+            if (ex == null) {
+                r.sendResponse(ctx, msg, CorfuMsgType.STREAM_ADDRESS_RESPONSE
+                        .payloadMsg(new StreamAddressResponse(addresses)));
+            } else {
+                sendServerException(msg, ctx, r, BatchWriter.unwrap(ex));
+            }
+        });
+    }
+
     /**
      * Service an incoming write request.
      */
@@ -164,113 +224,263 @@ public class LogUnitServer extends AbstractServer {
         log.debug("log write: global: {}, streams: {}, backpointers: {}", msg
                 .getPayload().getGlobalAddress(), msg.getPayload().getData().getBackpointerMap());
 
-        try {
-            dataCache.put(msg.getPayload().getGlobalAddress(), msg.getPayload().getData());
-            r.sendResponse(ctx, msg, CorfuMsgType.WRITE_OK.msg());
-
-        } catch (OverwriteException ex) {
-            r.sendResponse(ctx, msg, CorfuMsgType.ERROR_OVERWRITE.msg());
-        } catch (DataOutrankedException e) {
-            r.sendResponse(ctx, msg, CorfuMsgType.ERROR_DATA_OUTRANKED.msg());
-        } catch (ValueAdoptedException e) {
-            r.sendResponse(ctx, msg, CorfuMsgType.ERROR_VALUE_ADOPTED.payloadMsg(e
-                    .getReadResponse()));
-        }
+        writeAsync(msg.getPayload().getGlobalAddress(), (LogData) msg.getPayload().getData(),
+                msg, ctx, r);
     }
 
     @ServerHandler(type = CorfuMsgType.READ_REQUEST)
     private void read(CorfuPayloadMsg<ReadRequest> msg, ChannelHandlerContext ctx, IServerRouter r) {
         log.trace("read: {}", msg.getPayload().getRange());
-        ReadResponse rr = new ReadResponse();
-        try {
-            for (Long l = msg.getPayload().getRange().lowerEndpoint();
-                    l < msg.getPayload().getRange().upperEndpoint() + 1L; l++) {
-                ILogData e = dataCache.get(l);
-                if (e == null) {
-                    rr.put(l, LogData.getEmpty(l));
-                } else {
-                    rr.put(l, (LogData) e);
-                }
-            }
-            r.sendResponse(ctx, msg, CorfuMsgType.READ_RESPONSE.payloadMsg(rr));
-        } catch (DataCorruptionException e) {
-            r.sendResponse(ctx, msg, CorfuMsgType.ERROR_DATA_CORRUPTION.msg());
+        List<Long> addresses = new ArrayList<>();
+        for (Long l = msg.getPayload().getRange().lowerEndpoint();
+                l < msg.getPayload().getRange().upperEndpoint() + 1L; l++) {
+            addresses.add(l);
         }
+        readAsync(addresses, msg, ctx, r);
     }
 
     @ServerHandler(type = CorfuMsgType.MULTIPLE_READ_REQUEST)
     private void multiRead(CorfuPayloadMsg<MultipleReadRequest> msg, ChannelHandlerContext ctx, IServerRouter r) {
         log.trace("multiRead: {}", msg.getPayload().getAddresses());
+        readAsync(new ArrayList<>(msg.getPayload().getAddresses()), msg, ctx, r);
+    }
 
-        ReadResponse rr = new ReadResponse();
-        try {
-            for (Long l : msg.getPayload().getAddresses()) {
-                ILogData e = dataCache.get(l);
-                if (e == null) {
-                    rr.put(l, LogData.getEmpty(l));
+    @ServerHandler(type = CorfuMsgType.FILL_HOLE)
+    private void fillHole(CorfuPayloadMsg<TrimRequest> msg, ChannelHandlerContext ctx,
+        IServerRouter r) {
+        long address = msg.getPayload().getAddress();
+        writeAsync(address, LogData.getHole(address), msg, ctx, r);
+    }
+
+    /**
+     * Write an entry through the batch writer, and reply once it is durable.
+     */
+    private void writeAsync(long address, LogData entry, CorfuMsg msg,
+                            ChannelHandlerContext ctx, IServerRouter r) {
+        CompletableFuture<Void> pending = addPendingWrite(address);
+        batchWriter.writeAsync(address, entry).whenComplete((v, ex) -> {
+            Throwable cause = BatchWriter.unwrap(ex);
+            try {
+                if (cause == null) {
+                    dataCache.put(address, entry);
+                    invalidateOffHeap(address);
+                    r.sendResponse(ctx, msg, CorfuMsgType.WRITE_OK.msg());
+                } else if (cause instanceof OverwriteException) {
+                    r.sendResponse(ctx, msg, CorfuMsgType.ERROR_OVERWRITE.msg());
+                } else if (cause instanceof DataOutrankedException) {
+                    r.sendResponse(ctx, msg, CorfuMsgType.ERROR_DATA_OUTRANKED.msg());
+                } else if (cause instanceof ValueAdoptedException) {
+                    r.sendResponse(ctx, msg, CorfuMsgType.ERROR_VALUE_ADOPTED
+                            .payloadMsg(((ValueAdoptedException) cause).getReadResponse()));
                 } else {
-                    rr.put(l, (LogData) e);
+                    sendServerException(msg, ctx, r, cause);
                 }
+            } finally {
+                // Reads waiting for the write are served after it is acknowledged
+                completePendingWrite(address, pending);
+            }
+        });
+    }
+
+    /**
+     * Read a list of addresses, and reply with the entries in the order of the list once
+     * all the reads complete.
+     */
+    private void readAsync(List<Long> addresses, CorfuMsg msg, ChannelHandlerContext ctx,
+                           IServerRouter r) {
+        readEntries(addresses).whenComplete((entries, ex) -> {
+            Throwable cause = BatchWriter.unwrap(ex);
+            if (cause == null) {
+                ReadResponse rr = new ReadResponse();
+                for (Long l : addresses) {
+                    ILogData e = entries.get(l);
+                    rr.put(l, e == null ? LogData.getEmpty(l) : (LogData) e);
+                }
+                r.sendResponse(ctx, msg, CorfuMsgType.READ_RESPONSE.payloadMsg(rr));
+            } else if (cause instanceof DataCorruptionException) {
+                r.sendResponse(ctx, msg, CorfuMsgType.ERROR_DATA_CORRUPTION.msg());
+            } else {
+                sendServerException(msg, ctx, r, cause);
+            }
+        });
+    }
+
+    /**
+     * Read a list of addresses once their pending writes are durable. Cached entries are
+     * served right away, the others are read from the stream log in a single batch on its
+     * I/O threads.
+     *
+     * @param addresses the addresses to read
+     * @return a future of the entries by address, an unwritten address maps to null
+     */
+    private CompletableFuture<Map<Long, ILogData>> readEntries(List<Long> addresses) {
+        return pendingWritesOf(addresses).thenCompose(ignored -> {
+            Map<Long, ILogData> entries = new HashMap<>();
+            List<Long> misses = new ArrayList<>();
+            for (Long address : addresses) {
+                ILogData entry = getCached(address);
+                if (entry == null) {
+                    misses.add(address);
+                } else {
+                    entries.put(address, entry);
+                }
+            }
+            if (misses.isEmpty()) {
+                return CompletableFuture.completedFuture(entries);
+            }
+
+            Map<Long, CompletableFuture<Void>> awaited = new HashMap<>();
+            for (Long address : misses) {
+                awaited.put(address, pendingWrites.get(address));
+            }
+            return streamLog.readAllAsync(misses).thenCompose(read -> {
+                List<Long> raced = new ArrayList<>();
+                for (Long address : misses) {
+                    // An entry completed but not yet removed is the one already waited for
+                    CompletableFuture<Void> writes = pendingWrites.get(address);
+                    if (writes != null && (writes != awaited.get(address) || !writes.isDone())) {
+                        raced.add(address);
+                    } else {
+                        entries.put(address, cacheRetrieved(address, read.get(address)));
+                    }
+                }
+                if (raced.isEmpty()) {
+                    return CompletableFuture.completedFuture(entries);
+                }
+                // A write accepted during the read may have been read before it is durable,
+                // read these addresses again once it is
+                return readEntries(raced).thenApply(reread -> {
+                    entries.putAll(reread);
+                    return entries;
+                });
+            });
+        });
+    }
+
+    /**
+     * Register a write or trim of an address, which reads of the address wait for.
+     *
+     * @param address the address written
+     * @return the future to complete with {@link #completePendingWrite(long, CompletableFuture)}
+     *     once the operation is durable, or failed
+     */
+    private CompletableFuture<Void> addPendingWrite(long address) {
+        CompletableFuture<Void> pending = new CompletableFuture<>();
+        pendingWrites.merge(address, pending, CompletableFuture::allOf);
+        return pending;
+    }
+
+    private void completePendingWrite(long address, CompletableFuture<Void> pending) {
+        pending.complete(null);
+        pendingWrites.computeIfPresent(address, (k, writes) -> writes.isDone() ? null : writes);
+    }
+
+    /**
+     * Returns a future that completes once the pending writes of a list of addresses
+     * complete.
+     */
+    private CompletableFuture<Void> pendingWritesOf(List<Long> addresses) {
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (Long address : addresses) {
+            CompletableFuture<Void> writes = pendingWrites.get(address);
+            if (writes != null) {
+                pending.add(writes);
             }
-            r.sendResponse(ctx, msg, CorfuMsgType.READ_RESPONSE.payloadMsg(rr));
-        } catch (DataCorruptionException e) {
-            r.sendResponse(ctx, msg, CorfuMsgType.ERROR_DATA_CORRUPTION.msg());
         }
+        return pending.isEmpty() ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.allOf(pending.toArray(new CompletableFuture[pending.size()]));
     }
 
-    @ServerHandler(type = CorfuMsgType.FILL_HOLE)
-    private void fillHole(CorfuPayloadMsg<TrimRequest> msg, ChannelHandlerContext ctx,
-        IServerRouter r) {
-        try {
-            long address = msg.getPayload().getAddress();
-            dataCache.put(address, LogData.getHole(address));
-            r.sendResponse(ctx, msg, CorfuMsgType.WRITE_OK.msg());
-
-        } catch (OverwriteException e) {
-            r.sendResponse(ctx, msg, CorfuMsgType.ERROR_OVERWRITE.msg());
-        } catch (DataOutrankedException e) {
-            r.sendResponse(ctx, msg, CorfuMsgType.ERROR_DATA_OUTRANKED.msg());
-        } catch (ValueAdoptedException e) {
-
-            r.sendResponse(ctx, msg, CorfuMsgType.ERROR_VALUE_ADOPTED.payloadMsg(e
-                    .getReadResponse()));
+    /**
+     * Look up an address in the cache tiers, promoting an entry found off-heap.
+     *
+     * @param address the address to look up
+     * @return the cached entry, or null if the address isn't cached
+     */
+    private ILogData getCached(long address) {
+        ILogData cached = dataCache.getIfPresent(address);
+        if (cached == null && offHeapCache != null) {
+            LogData offHeap = offHeapCache.get(address);
+            if (offHeap != null) {
+                log.trace("Retrieved[{}] from off-heap cache", address);
+                cached = cacheRetrieved(address, offHeap);
+            }
         }
+        return cached;
+    }
+
+    /**
+     * Cache an entry retrieved from the stream log or the off-heap tier.
+     *
+     * @param address the address of the entry
+     * @param entry   the entry retrieved, or null if the address is unwritten
+     * @return the cached entry for the address
+     */
+    private ILogData cacheRetrieved(long address, ILogData entry) {
+        log.trace("Retrieved[{} : {}]", address, entry);
+        if (entry == null) {
+            return null;
+        }
+        // A write that completed during the read cached a newer entry, keep it
+        ILogData current = dataCache.asMap().putIfAbsent(address, entry);
+        return current == null ? entry : current;
     }
 
     @ServerHandler(type = CorfuMsgType.TRIM)
     private void trim(CorfuPayloadMsg<TrimRequest> msg, ChannelHandlerContext ctx, IServerRouter r) {
-        batchWriter.trim(msg.getPayload().getAddress());
-        //TODO(Maithem): should we return an error if the write fails
-        r.sendResponse(ctx, msg, CorfuMsgType.ACK.msg());
+        long address = msg.getPayload().getAddress();
+        CompletableFuture<Void> pending = addPendingWrite(address);
+        batchWriter.trimAsync(address).whenComplete((v, ex) -> {
+            invalidateOffHeap(address);
+            if (ex != null) {
+                log.warn("trim: failed to trim {}", address,
+                        BatchWriter.unwrap(ex));
+            }
+            try {
+                //TODO(Maithem): should we return an error if the write fails
+                r.sendResponse(ctx, msg, CorfuMsgType.ACK.msg());
+            } finally {
+                completePendingWrite(address, pending);
+            }
+        });
     }
 
     @ServerHandler(type = CorfuMsgType.PREFIX_TRIM)
     private void prefixTrim(CorfuPayloadMsg<TrimRequest> msg, ChannelHandlerContext ctx,
                             IServerRouter r) {
-        try {
-            batchWriter.prefixTrim(msg.getPayload().getAddress());
-            r.sendResponse(ctx, msg, CorfuMsgType.ACK.msg());
-        } catch (TrimmedException ex) {
-            r.sendResponse(ctx, msg, CorfuMsgType.ERROR_TRIMMED.msg());
-        }
+        batchWriter.prefixTrimAsync(msg.getPayload().getAddress()).whenComplete((v, ex) -> {
+            Throwable cause = BatchWriter.unwrap(ex);
+            if (offHeapCache != null) {
+                offHeapCache.invalidateUpTo(msg.getPayload().getAddress());
+            }
+            if (cause == null) {
+                r.sendResponse(ctx, msg, CorfuMsgType.ACK.msg());
+            } else if (cause instanceof TrimmedException) {
+                r.sendResponse(ctx, msg, CorfuMsgType.ERROR_TRIMMED.msg());
+            } else {
+                sendServerException(msg, ctx, r, cause);
+            }
+        });
     }
 
     @ServerHandler(type = CorfuMsgType.COMPACT_REQUEST)
     private void compact(CorfuMsg msg, ChannelHandlerContext ctx, IServerRouter r) {
-        try {
-            streamLog.compact();
-            r.sendResponse(ctx, msg, CorfuMsgType.ACK.msg());
-        } catch (RuntimeException ex) {
-            log.error("Internal Error");
+        CompletableFuture.runAsync(streamLog::compact, scheduler).whenComplete((v, ex) -> {
+            if (ex != null) {
+                log.error("Internal Error", BatchWriter.unwrap(ex));
+            }
             //TODO(Maithem) Need an internal error return type
             r.sendResponse(ctx, msg, CorfuMsgType.ACK.msg());
-        }
+        });
     }
 
     @ServerHandler(type = CorfuMsgType.FLUSH_CACHE)
     private void flushCache(CorfuMsg msg, ChannelHandlerContext ctx, IServerRouter r) {
         try {
             dataCache.invalidateAll();
+            if (offHeapCache != null) {
+                offHeapCache.invalidateAll();
+            }
         } catch (RuntimeException e) {
             log.error("Encountered error while flushing cache {}", e);
         }
@@ -285,8 +495,46 @@ public class LogUnitServer extends AbstractServer {
     private void rangeWrite(CorfuPayloadMsg<RangeWriteMsg> msg,
                                   ChannelHandlerContext ctx, IServerRouter r) {
         List<LogData> entries = msg.getPayload().getEntries();
-        batchWriter.bulkWrite(entries);
-        r.sendResponse(ctx, msg, CorfuMsgType.WRITE_OK.msg());
+        List<CompletableFuture<Void>> pending = new ArrayList<>(entries.size());
+        for (LogData entry : entries) {
+            pending.add(addPendingWrite(entry.getGlobalAddress()));
+        }
+        batchWriter.bulkWrite(entries).whenComplete((v, ex) -> {
+            Throwable cause = BatchWriter.unwrap(ex);
+            try {
+                if (cause == null) {
+                    r.sendResponse(ctx, msg, CorfuMsgType.WRITE_OK.msg());
+                } else if (cause instanceof OverwriteException) {
+                    r.sendResponse(ctx, msg, CorfuMsgType.ERROR_OVERWRITE.msg());
+                } else {
+                    sendServerException(msg, ctx, r, cause);
+                }
+            } finally {
+                for (int i = 0; i < entries.size(); i++) {
+                    completePendingWrite(entries.get(i).getGlobalAddress(), pending.get(i));
+                }
+            }
+        });
+    }
+
+    /**
+     * Drop a stale copy of an entry from the off-heap tier, if it's enabled.
+     */
+    private void invalidateOffHeap(long address) {
+        if (offHeapCache != null) {
+            offHeapCache.invalidate(address);
+        }
+    }
+
+    /**
+     * Reply with an unexpected exception raised while completing a request
+     * asynchronously, the same way the message handler reports unhandled exceptions.
+     */
+    private void sendServerException(CorfuMsg msg, ChannelHandlerContext ctx, IServerRouter r,
+                                     Throwable cause) {
+        log.error("Unhandled exception processing {} message", msg.getMsgType(), cause);
+        r.sendResponse(ctx, msg,
+                CorfuMsgType.ERROR_SERVER_EXCEPTION.payloadMsg(new ExceptionMsg(cause)));
     }
 
     /**
@@ -297,6 +545,9 @@ public class LogUnitServer extends AbstractServer {
     private void resetLogUnit(CorfuMsg msg, ChannelHandlerContext ctx, IServerRouter r) {
         streamLog.reset();
         dataCache.invalidateAll();
+        if (offHeapCache != null) {
+            offHeapCache.invalidateAll();
+        }
         r.sendResponse(ctx, msg, CorfuMsgType.ACK.msg());
     }
 
@@ -311,6 +562,13 @@ public class LogUnitServer extends AbstractServer {
      *     unwritten (null).
      */
     public synchronized ILogData handleRetrieval(long address) {
+        if (offHeapCache != null) {
+            LogData cached = offHeapCache.get(address);
+            if (cached != null) {
+                log.trace("Retrieved[{}] from off-heap cache", address);
+                return cached;
+            }
+        }
         LogData entry = streamLog.read(address);
         log.trace("Retrieved[{} : {}]", address, entry);
         return entry;
@@ -319,6 +577,12 @@ public class LogUnitServer extends AbstractServer {
 
     public synchronized void handleEviction(long address, ILogData entry, RemovalCause cause) {
         log.trace("Eviction[{}]: {}", address, cause);
+        // Removal notifications are delivered asynchronously, so skip the demotion if a
+        // newer entry for the address was cached in the meantime.
+        if (offHeapCache != null && cause == RemovalCause.SIZE
+                && dataCache.getIfPresent(address) == null) {
+            offHeapCache.put(address, entry);
+        }
         streamLog.release(address, (LogData) entry);
     }
 
@@ -330,6 +594,9 @@ public class LogUnitServer extends AbstractServer {
         compactor.cancel(true);
         scheduler.shutdownNow();
         batchWriter.close();
+        if (offHeapCache != null) {
+            offHeapCache.close();
+        }
     }
 
     @VisibleForTesting
@@ -337,6 +604,11 @@ public class LogUnitServer extends AbstractServer {
         return dataCache;
     }
 
+    @VisibleForTesting
+    OffHeapLogDataCache getOffHeapCache() {
+        return offHeapCache;
+    }
+
     @VisibleForTesting
     long getMaxCacheSize() {
         return maxCacheSize;
@@ -25,8 +25,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.corfudb.infrastructure.management.IDetector;
 import org.corfudb.infrastructure.management.PollReport;
 import org.corfudb.infrastructure.management.ReconfigurationEventHandler;
+import org.corfudb.protocols.wireprotocol.SequencerTailsRecoveryMsg;
 import org.corfudb.runtime.CorfuRuntime;
 import org.corfudb.runtime.exceptions.QuorumUnreachableException;
+import org.corfudb.runtime.view.Address;
 import org.corfudb.runtime.view.Layout;
 import org.corfudb.runtime.view.QuorumFuturesFactory;
 import org.corfudb.util.Sleep;
@@ -90,6 +92,10 @@ public class ManagementAgent {
      */
     private Future failureDetectorFuture = null;
     private Future healingDetectorFuture = null;
+    /**
+     * Future for periodic replication of the primary sequencer's snapshot.
+     */
+    private Future snapshotReplicationFuture = null;
     private boolean recovered = false;
 
     private final SingletonResource<CorfuRuntime> runtimeSingletonResource;
@@ -223,6 +229,20 @@ public class ManagementAgent {
             } catch (RejectedExecutionException err) {
                 log.error("Error scheduling failure detection task, {}", err);
             }
+
+            // Initiating periodic task to replicate the primary sequencer's snapshot.
+            long snapshotInterval = serverContext.getSequencerSnapshotInterval();
+            if (snapshotInterval > 0) {
+                try {
+                    detectionTasksScheduler.scheduleAtFixedRate(
+                            this::runSnapshotReplicationTask,
+                            snapshotInterval,
+                            snapshotInterval,
+                            TimeUnit.SECONDS);
+                } catch (RejectedExecutionException err) {
+                    log.error("Error scheduling snapshot replication task, {}", err);
+                }
+            }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
@@ -439,6 +459,58 @@ public class ManagementAgent {
         }
     }
 
+    /**
+     * Replicates the snapshot of the primary sequencer to the local data store, if this node
+     * is a backup sequencer. The snapshot is served to the reconfiguration which fails over to
+     * this or another backup sequencer, so that it scans the log from the snapshot on rather
+     * than from the trim mark.
+     * - This task is executed in intervals of the sequencer snapshot interval.
+     * - A snapshot is only replaced by a snapshot of a higher epoch, or of the same epoch and
+     * a higher global tail.
+     */
+    private void runSnapshotReplicationTask() {
+
+        if (snapshotReplicationFuture == null || snapshotReplicationFuture.isDone()) {
+            snapshotReplicationFuture = detectionTaskWorkers.submit(() -> {
+
+                Layout layout = serverContext.getManagementLayout();
+                if (!layout.getSequencers().contains(getLocalEndpoint())
+                        || layout.getSequencers().get(0).equals(getLocalEndpoint())) {
+                    return;
+                }
+
+                try {
+                    SequencerTailsRecoveryMsg snapshot = getCorfuRuntime().getLayoutView()
+                            .getRuntimeLayout(layout)
+                            .getPrimarySequencerClient()
+                            .getSnapshot()
+                            .get();
+                    if (snapshot.getGlobalTail() == Address.NON_ADDRESS
+                            || !isNewerSnapshot(snapshot, serverContext.getSequencerSnapshot())) {
+                        return;
+                    }
+                    serverContext.setSequencerSnapshot(snapshot);
+                    log.debug("Replicated sequencer snapshot, globalTail: {}, epoch: {}",
+                            snapshot.getGlobalTail(), snapshot.getReadyStateEpoch());
+                } catch (InterruptedException | ExecutionException e) {
+                    log.warn("Replicating sequencer snapshot failed: {}", e.toString());
+                }
+            });
+        } else {
+            log.debug("Cannot initiate new snapshot replication task. Replication in progress.");
+        }
+    }
+
+    private static boolean isNewerSnapshot(SequencerTailsRecoveryMsg snapshot,
+                                           SequencerTailsRecoveryMsg localSnapshot) {
+        if (localSnapshot == null
+                || snapshot.getReadyStateEpoch() > localSnapshot.getReadyStateEpoch()) {
+            return true;
+        }
+        return snapshot.getReadyStateEpoch().equals(localSnapshot.getReadyStateEpoch())
+                && snapshot.getGlobalTail() > localSnapshot.getGlobalTail();
+    }
+
     /**
      * We check if these servers are the same set of servers which are marked as unresponsive in
      * the layout.
@@ -1,9 +1,12 @@
 package org.corfudb.infrastructure;
 
+import com.codahale.metrics.Gauge;
+
 import io.netty.channel.ChannelHandlerContext;
 
 import java.lang.invoke.MethodHandles;
 import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 
 import javax.annotation.Nonnull;
@@ -13,6 +16,7 @@ import lombok.extern.slf4j.Slf4j;
 
 import org.corfudb.format.Types.NodeMetrics;
 
+import org.corfudb.infrastructure.log.StreamLogFiles;
 import org.corfudb.infrastructure.orchestrator.Orchestrator;
 
 import org.corfudb.protocols.wireprotocol.CorfuMsg;
@@ -273,11 +277,32 @@ public class ManagementServer extends AbstractServer {
      */
     @ServerHandler(type = CorfuMsgType.HEARTBEAT_REQUEST)
     public void handleHeartbeatRequest(CorfuMsg msg, ChannelHandlerContext ctx, IServerRouter r) {
-        // Currently builds a default instance of the model.
         // TODO: Collect metrics from Layout, Sequencer and LogUnit Servers.
-        NodeMetrics nodeMetrics = NodeMetrics.getDefaultInstance();
+        NodeMetrics.Builder nodeMetrics = NodeMetrics.newBuilder();
+        addScrubberMetrics(nodeMetrics);
         r.sendResponse(ctx, msg, new CorfuPayloadMsg<>(CorfuMsgType.HEARTBEAT_RESPONSE,
-                nodeMetrics.toByteArray()));
+                nodeMetrics.build().toByteArray()));
+    }
+
+    /**
+     * Adds the metrics of the log unit's scrubber, which are only registered when the log
+     * unit of this node persists its log.
+     *
+     * @param nodeMetrics the node metrics to add the scrubber metrics to
+     */
+    @SuppressWarnings("unchecked")
+    private void addScrubberMetrics(NodeMetrics.Builder nodeMetrics) {
+        Map<String, Gauge> gauges = ServerContext.getMetrics().getGauges();
+        Gauge<Double> progress = gauges.get(StreamLogFiles.SCRUB_PROGRESS_METRIC);
+        Gauge<Long> corruptRecords = gauges.get(StreamLogFiles.CORRUPT_RECORDS_METRIC);
+        Gauge<List<Long>> corruptAddresses = gauges.get(StreamLogFiles.CORRUPT_ADDRESSES_METRIC);
+        if (progress == null || corruptRecords == null || corruptAddresses == null) {
+            return;
+        }
+
+        nodeMetrics.setLogunitScrubProgress(progress.getValue())
+                .setLogunitCorruptRecords(corruptRecords.getValue())
+                .addAllLogunitCorruptAddresses(corruptAddresses.getValue());
     }
 
     /**
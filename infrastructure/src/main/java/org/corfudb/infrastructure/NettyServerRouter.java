@@ -1,12 +1,18 @@
 package org.corfudb.infrastructure;
 
+import com.google.common.annotations.VisibleForTesting;
+
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
 
+import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinWorkerThread;
@@ -76,6 +82,26 @@ public class NettyServerRouter extends ChannelInboundHandlerAdapter
                 e);
     }
 
+    /**
+     * Maximum number of messages handled by a batch. A batch is handed to a worker once the
+     * channel has no more messages to read, or once it reaches this size.
+     */
+    @VisibleForTesting
+    static final int MAX_BATCH_SIZE = 1024;
+
+    /**
+     * The batchable messages read from a channel, which weren't handed to a worker yet.
+     */
+    private static final AttributeKey<List<CorfuMsg>> pendingBatchAttrKey =
+            AttributeKey.valueOf("PendingBatch");
+
+    /**
+     * The last batch of a channel handed to a worker. The next batch of the channel only
+     * runs once it completes, so that the batches of a channel are handled in order.
+     */
+    private static final AttributeKey<CompletableFuture<Void>> lastBatchAttrKey =
+            AttributeKey.valueOf("LastBatch");
+
     protected final ExecutorService handlerWorkers =
             new ForkJoinPool(Runtime.getRuntime().availableProcessors() * 2,
                     new ServerThreadFactory(),
@@ -179,6 +205,10 @@ public class NettyServerRouter extends ChannelInboundHandlerAdapter
                         log.trace("Message routed to {}: {}", handler.getClass().getSimpleName(),
                                 msg);
                     }
+                    if (handler.isBatchable(m.getMsgType())) {
+                        addToBatch(ctx, m);
+                        return;
+                    }
                     handlerWorkers.submit(() -> {
                         try {
                             handler.handleMessage(m, ctx, this);
@@ -197,6 +227,112 @@ public class NettyServerRouter extends ChannelInboundHandlerAdapter
         }
     }
 
+    /**
+     * Hands the batch of messages read from the channel to a worker, once the channel has
+     * no more messages to read.
+     *
+     * @param ctx Channel handler context
+     */
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        submitBatch(ctx);
+        ctx.fireChannelReadComplete();
+    }
+
+    /**
+     * Adds a batchable message to the pending batch of its channel. This runs on the event
+     * loop of the channel, which owns the pending batch.
+     *
+     * @param ctx Channel handler context
+     * @param msg The message to add.
+     */
+    private void addToBatch(ChannelHandlerContext ctx, CorfuMsg msg) {
+        Attribute<List<CorfuMsg>> pending = ctx.channel().attr(pendingBatchAttrKey);
+        List<CorfuMsg> batch = pending.get();
+        if (batch == null) {
+            batch = new ArrayList<>();
+            pending.set(batch);
+        }
+        batch.add(msg);
+        if (batch.size() >= MAX_BATCH_SIZE) {
+            submitBatch(ctx);
+        }
+    }
+
+    /**
+     * Hands the pending batch of a channel to a worker. The worker handles the messages in
+     * the order they were read, and flushes all their responses at once. A batch runs after
+     * the previous batch of the channel, so a read split in several batches is still handled
+     * in arrival order.
+     *
+     * @param ctx Channel handler context
+     */
+    private void submitBatch(ChannelHandlerContext ctx) {
+        List<CorfuMsg> batch = ctx.channel().attr(pendingBatchAttrKey).getAndSet(null);
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+
+        IServerRouter batchRouter = new BatchRouter();
+        Runnable handleBatch = () -> {
+            for (CorfuMsg m : batch) {
+                try {
+                    handlerMap.get(m.getMsgType()).handleMessage(m, ctx, batchRouter);
+                } catch (Throwable t) {
+                    log.error("submitBatch: Handling {} failed due to {}:{}",
+                            m.getMsgType(),
+                            t.getClass().getSimpleName(),
+                            t.getMessage(),
+                            t);
+                }
+            }
+            ctx.flush();
+        };
+
+        // Like the pending batch, the last batch is only accessed from the event loop
+        Attribute<CompletableFuture<Void>> lastBatch = ctx.channel().attr(lastBatchAttrKey);
+        CompletableFuture<Void> previous = lastBatch.get();
+        if (previous == null || previous.isDone()) {
+            lastBatch.set(CompletableFuture.runAsync(handleBatch, handlerWorkers));
+        } else {
+            // The batch runs even if the previous one failed to flush
+            lastBatch.set(previous.handleAsync((r, e) -> {
+                handleBatch.run();
+                return null;
+            }, handlerWorkers));
+        }
+    }
+
+    /**
+     * Routes the responses of a batch of messages, without flushing them: the batch is
+     * flushed once all its messages were handled. Everything else is delegated to the
+     * {@link NettyServerRouter}.
+     */
+    private class BatchRouter implements IServerRouter {
+
+        @Override
+        public void sendResponse(ChannelHandlerContext ctx, CorfuMsg inMsg, CorfuMsg outMsg) {
+            outMsg.copyBaseFields(inMsg);
+            ctx.write(outMsg, ctx.voidPromise());
+            log.trace("Sent response: {}", outMsg);
+        }
+
+        @Override
+        public long getServerEpoch() {
+            return NettyServerRouter.this.getServerEpoch();
+        }
+
+        @Override
+        public void setServerEpoch(long newEpoch) {
+            NettyServerRouter.this.setServerEpoch(newEpoch);
+        }
+
+        @Override
+        public void addServer(AbstractServer server) {
+            NettyServerRouter.this.addServer(server);
+        }
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         log.error("Error in handling inbound message, {}", cause);
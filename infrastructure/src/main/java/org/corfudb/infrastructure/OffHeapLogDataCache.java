@@ -0,0 +1,295 @@
+package org.corfudb.infrastructure;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.collection.LongObjectHashMap;
+
+import java.util.Iterator;
+
+import javax.annotation.Nonnull;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.corfudb.protocols.wireprotocol.ILogData;
+import org.corfudb.protocols.wireprotocol.LogData;
+
+/**
+ * A second cache tier for the log unit that keeps serialized log entries outside
+ * of the Java heap.
+ *
+ * <p>Entries are stored in pooled direct buffers in their wire format and are indexed
+ * by a primitive long map, so a resident entry costs the heap only a small index record
+ * regardless of its payload size. The tier is bounded by the number of bytes it keeps
+ * resident and evicts with a second-chance (CLOCK) policy: an entry that was read since
+ * it was last considered for eviction is moved to the back of the queue instead.
+ */
+@Slf4j
+public class OffHeapLogDataCache implements AutoCloseable {
+
+    private static final int INITIAL_QUEUE_CAPACITY = 1024;
+
+    /**
+     * An entry resident in the cache.
+     */
+    private static class Entry {
+        final ByteBuf buffer;
+        boolean referenced = false;
+
+        Entry(ByteBuf buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    private final ByteBufAllocator allocator;
+
+    private final long maxBytes;
+
+    private final LongObjectHashMap<Entry> entries = new LongObjectHashMap<>();
+
+    /**
+     * Addresses in insertion order, used as the CLOCK hand. It can contain addresses
+     * that were already invalidated, those are skipped during eviction.
+     */
+    private long[] queue = new long[INITIAL_QUEUE_CAPACITY];
+    private int queueHead = 0;
+    private int queueSize = 0;
+
+    private long residentBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Returns a new off-heap cache.
+     *
+     * @param maxBytes maximum number of bytes kept resident
+     */
+    public OffHeapLogDataCache(long maxBytes) {
+        this(maxBytes, PooledByteBufAllocator.DEFAULT);
+    }
+
+    /**
+     * Returns a new off-heap cache.
+     *
+     * @param maxBytes  maximum number of bytes kept resident
+     * @param allocator allocator for the direct buffers that hold the entries
+     */
+    public OffHeapLogDataCache(long maxBytes, @Nonnull ByteBufAllocator allocator) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Off-heap cache size must be positive: "
+                    + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.allocator = allocator;
+    }
+
+    /**
+     * Serialize and cache a log entry, replacing any entry cached at the same address.
+     * Entries larger than the whole cache are not cached.
+     *
+     * @param address address of the entry
+     * @param entry   entry to cache
+     */
+    public synchronized void put(long address, @Nonnull ILogData entry) {
+        ByteBuf buffer = allocator.directBuffer();
+        try {
+            ((LogData) entry).doSerialize(buffer);
+            // Give back the slack left by the buffer growing while serializing
+            buffer.capacity(buffer.writerIndex());
+        } catch (RuntimeException e) {
+            buffer.release();
+            throw e;
+        }
+
+        if (buffer.capacity() > maxBytes) {
+            log.trace("put: entry at {} of {} bytes exceeds the cache size", address,
+                    buffer.capacity());
+            buffer.release();
+            return;
+        }
+
+        Entry previous = entries.put(address, new Entry(buffer));
+        if (previous == null) {
+            enqueue(address);
+        } else {
+            release(previous);
+        }
+        residentBytes += buffer.capacity();
+
+        while (residentBytes > maxBytes && evictOne()) {
+            // Keep evicting until the new entry fits
+        }
+    }
+
+    /**
+     * Return the entry cached at an address.
+     *
+     * @param address address of the entry
+     * @return a deserialized copy of the entry, or null if it isn't cached
+     */
+    public synchronized LogData get(long address) {
+        Entry entry = entries.get(address);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        entry.referenced = true;
+        return new LogData(entry.buffer.duplicate());
+    }
+
+    /**
+     * Drop the entry cached at an address.
+     *
+     * @param address address of the entry
+     */
+    public synchronized void invalidate(long address) {
+        Entry entry = entries.remove(address);
+        if (entry != null) {
+            release(entry);
+            compactQueue();
+        }
+    }
+
+    /**
+     * Drop all entries at or below an address.
+     *
+     * @param address the address to invalidate up to (inclusive)
+     */
+    public synchronized void invalidateUpTo(long address) {
+        Iterator<LongObjectHashMap.PrimitiveEntry<Entry>> iterator = entries.entries().iterator();
+        while (iterator.hasNext()) {
+            LongObjectHashMap.PrimitiveEntry<Entry> entry = iterator.next();
+            if (entry.key() <= address) {
+                release(entry.value());
+                iterator.remove();
+            }
+        }
+        compactQueue();
+    }
+
+    /**
+     * Drop all entries.
+     */
+    public synchronized void invalidateAll() {
+        for (Entry entry : entries.values()) {
+            release(entry);
+        }
+        entries.clear();
+        queueHead = 0;
+        queueSize = 0;
+    }
+
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * The ratio of lookups that found their entry, or 1.0 if there were no lookups.
+     */
+    public synchronized double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    /**
+     * Register gauges for the cache with a metrics registry.
+     *
+     * @param metrics registry to register the gauges with
+     * @param name    prefix for the gauge names
+     */
+    public void registerMetrics(@Nonnull MetricRegistry metrics, @Nonnull String name) {
+        try {
+            metrics.register(name + "resident-bytes", (Gauge<Long>) this::getResidentBytes);
+            metrics.register(name + "cache-size", (Gauge<Integer>) this::getSize);
+            metrics.register(name + "evictions", (Gauge<Long>) this::getEvictionCount);
+            metrics.register(name + "hit-rate", (Gauge<Double>) this::getHitRate);
+        } catch (IllegalArgumentException e) {
+            // Re-registering metrics during test runs, not a problem
+        }
+    }
+
+    @Override
+    public void close() {
+        invalidateAll();
+    }
+
+    private void release(Entry entry) {
+        residentBytes -= entry.buffer.capacity();
+        entry.buffer.release();
+    }
+
+    private boolean evictOne() {
+        while (queueSize > 0) {
+            long address = dequeue();
+            Entry entry = entries.get(address);
+            if (entry == null) {
+                // Already invalidated
+                continue;
+            }
+            if (entry.referenced) {
+                entry.referenced = false;
+                enqueue(address);
+                continue;
+            }
+            entries.remove(address);
+            release(entry);
+            evictions++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Drop invalidated addresses from the queue once they dominate it, so that
+     * invalidations don't grow the queue while the cache is below its size limit.
+     */
+    private void compactQueue() {
+        if (queueSize <= INITIAL_QUEUE_CAPACITY || queueSize <= 2 * entries.size()) {
+            return;
+        }
+        long[] compacted = new long[Math.max(INITIAL_QUEUE_CAPACITY, 2 * entries.size())];
+        int size = 0;
+        for (int i = 0; i < queueSize; i++) {
+            long address = queue[(queueHead + i) % queue.length];
+            if (entries.containsKey(address)) {
+                compacted[size++] = address;
+            }
+        }
+        queue = compacted;
+        queueHead = 0;
+        queueSize = size;
+    }
+
+    private void enqueue(long address) {
+        if (queueSize == queue.length) {
+            long[] grown = new long[queue.length * 2];
+            for (int i = 0; i < queueSize; i++) {
+                grown[i] = queue[(queueHead + i) % queue.length];
+            }
+            queue = grown;
+            queueHead = 0;
+        }
+        queue[(queueHead + queueSize) % queue.length] = address;
+        queueSize++;
+    }
+
+    private long dequeue() {
+        long address = queue[queueHead];
+        queueHead = (queueHead + 1) % queue.length;
+        queueSize--;
+        return address;
+    }
+}
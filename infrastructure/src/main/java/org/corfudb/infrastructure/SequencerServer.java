@@ -2,20 +2,30 @@ package org.corfudb.infrastructure;
 
 import static org.corfudb.protocols.wireprotocol.TokenType.TX_ABORT_SEQ_OVERFLOW;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.netty.channel.ChannelHandlerContext;
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -67,6 +77,21 @@ import org.corfudb.util.Utils;
  * commits, the sequencer updates the tails of all the streams and the cache
  * of conflict parameters.
  *
+ * <p>Token requests are served concurrently. The global tail is bumped without locking,
+ * and the updates of a stream tail are serialized by a lock striped by stream ID, held
+ * from the allocation of the token to the update of the tail, so that backpointers are
+ * issued in address order. A transaction additionally holds the stripes of the streams
+ * it read from, so that its conflict check and its allocation are atomic with respect
+ * to every other write to those streams. A query of a stream tail holds its stripe too,
+ * so it never misses a token already reflected in the global tail. Trims, resets and
+ * snapshots hold every stripe. Requests on unrelated streams don't contend.
+ *
+ * <p>While it is ready, the sequencer periodically persists a snapshot of the global tail and
+ * the stream tails to its data store (see {@link ServerContext#getSequencerSnapshot()}). The
+ * snapshot is served to the management agents of the backup sequencers, which replicate it,
+ * so that a failover only has to scan the log from the tail of the latest snapshot to
+ * rebuild the stream tails.
+ *
  * <p>Created by mwei on 12/8/15.
  */
 @Slf4j
@@ -90,7 +115,18 @@ public class SequencerServer extends AbstractServer {
     private final AtomicLong globalLogTail = new AtomicLong(Address
             .getMinAddress());
 
-    private long trimMark = Address.NON_ADDRESS;
+    private volatile long trimMark = Address.NON_ADDRESS;
+
+    /**
+     * Number of stripes of {@link SequencerServer::streamLocks}.
+     */
+    private static final int STREAM_LOCK_STRIPES = 1024;
+
+    /**
+     * Locks striped by stream ID, which serialize the allocations that update the tail of
+     * a stream. The global tail itself is bumped without locking.
+     */
+    private final Striped<Lock> streamLocks = Striped.lock(STREAM_LOCK_STRIPES);
 
     /**
      * - {@link SequencerServer::streamTailToGlobalTailMap}:
@@ -103,17 +139,49 @@ public class SequencerServer extends AbstractServer {
     /**
      * TX conflict-resolution information:
      *
-     * {@link SequencerServer::conflictToGlobalTailCache}:
-     * a cache of recent conflict keys and their latest global-log
-     * position.
+     * {@link SequencerServer::conflictWindow}:
+     * a bounded window of recent conflict keys, 128-bit hashes of a stream ID and a
+     * conflict parameter, and their latest global-log position.
      *
      * {@link SequencerServer::maxConflictWildcard} :
-     * a "wildcard" representing the maximal update timestamp of
-     * all the confict keys which were evicted from the cache
+     * a "wildcard" watermark representing the maximal update timestamp of
+     * all the confict keys which were evicted from the window. Keys are evicted
+     * oldest first, so only transactions whose snapshot precedes the watermark
+     * abort on a key missing from the window.
      */
-    private long maxConflictWildcard = Address.NOT_FOUND;
+    private final AtomicLong maxConflictWildcard = new AtomicLong(Address.NOT_FOUND);
+
+    private final ConflictWindow conflictWindow;
 
-    private final Cache<String, Long> conflictToGlobalTailCache;
+    public static final String TX_COMMITS_METRIC = "sequencer.tx.commits";
+    public static final String TX_ABORTS_CONFLICT_METRIC = "sequencer.tx.aborts.conflict";
+    public static final String TX_ABORTS_OVERFLOW_METRIC = "sequencer.tx.aborts.overflow";
+    public static final String TX_ABORTS_TRIM_METRIC = "sequencer.tx.aborts.trim";
+    public static final String CONFLICT_WINDOW_SIZE_METRIC = "sequencer.conflict-window.size";
+    public static final String CONFLICT_WINDOW_WATERMARK_METRIC =
+            "sequencer.conflict-window.watermark";
+
+    /**
+     * Transaction resolutions, by outcome: commits, aborts on a conflicting update, aborts
+     * on a key evicted from the conflict window, and aborts on a trimmed snapshot.
+     */
+    private final Meter txCommits;
+    private final Meter txAbortsConflict;
+    private final Meter txAbortsOverflow;
+    private final Meter txAbortsTrim;
+
+    /**
+     * Schedules the snapshots of the sequencer state.
+     */
+    private final ScheduledExecutorService scheduler =
+            Executors.newScheduledThreadPool(
+                    1,
+                    new ThreadFactoryBuilder()
+                            .setDaemon(true)
+                            .setNameFormat("Sequencer-Snapshot-%d")
+                            .build());
+
+    private ScheduledFuture<?> snapshotter;
 
     /**
      * Handler for this server.
@@ -130,7 +198,8 @@ public class SequencerServer extends AbstractServer {
     @Override
     public boolean isServerReadyToHandleMsg(CorfuMsg msg) {
         if ((readyStateEpoch != serverContext.getServerEpoch())
-                && (!msg.getMsgType().equals(CorfuMsgType.BOOTSTRAP_SEQUENCER))) {
+                && (!msg.getMsgType().equals(CorfuMsgType.BOOTSTRAP_SEQUENCER))
+                && (!msg.getMsgType().equals(CorfuMsgType.SEQUENCER_SNAPSHOT_REQUEST))) {
             log.warn("Rejecting msg at sequencer : sequencerStateEpoch:{}, serverEpoch:{}, "
                     + "msg:{}", readyStateEpoch, serverContext.getServerEpoch(), msg);
             return false;
@@ -138,6 +207,15 @@ public class SequencerServer extends AbstractServer {
         return true;
     }
 
+    /**
+     * Token requests are batched: the requests read from a connection in one pass are served
+     * in arrival order by a single worker, and their responses are flushed once.
+     */
+    @Override
+    public boolean isBatchable(CorfuMsgType type) {
+        return type == CorfuMsgType.TOKEN_REQ;
+    }
+
     /**
      * Returns a new SequencerServer.
      * @param serverContext context object providing parameters and objects
@@ -159,29 +237,45 @@ public class SequencerServer extends AbstractServer {
 
         }
 
-        conflictToGlobalTailCache = Caffeine.newBuilder()
-                .maximumSize(cacheSize)
-                .removalListener((String k, Long v, RemovalCause cause) -> {
-                    if (!RemovalCause.REPLACED.equals(cause)) {
-                        log.trace("Updating maxConflictWildcard. Old value = '{}', new value='{}'"
-                                        + " conflictParam = '{}'. Removal cause = '{}'",
-                                maxConflictWildcard, v, k, cause);
-                        maxConflictWildcard = Math.max(v, maxConflictWildcard);
-                    }
-                })
-                .recordStats()
-                .build();
+        conflictWindow = new ConflictWindow(cacheSize, v -> {
+            log.trace("Updating maxConflictWildcard. Old value = '{}', new value='{}'",
+                    maxConflictWildcard.get(), v);
+            maxConflictWildcard.accumulateAndGet(v, Math::max);
+        });
+
+        txCommits = ServerContext.getMetrics().meter(TX_COMMITS_METRIC);
+        txAbortsConflict = ServerContext.getMetrics().meter(TX_ABORTS_CONFLICT_METRIC);
+        txAbortsOverflow = ServerContext.getMetrics().meter(TX_ABORTS_OVERFLOW_METRIC);
+        txAbortsTrim = ServerContext.getMetrics().meter(TX_ABORTS_TRIM_METRIC);
+        ServerContext.getMetrics().remove(CONFLICT_WINDOW_SIZE_METRIC);
+        ServerContext.getMetrics().register(CONFLICT_WINDOW_SIZE_METRIC,
+                (Gauge<Long>) conflictWindow::size);
+        ServerContext.getMetrics().remove(CONFLICT_WINDOW_WATERMARK_METRIC);
+        ServerContext.getMetrics().register(CONFLICT_WINDOW_WATERMARK_METRIC,
+                (Gauge<Long>) maxConflictWildcard::get);
+
+        long snapshotInterval = serverContext.getSequencerSnapshotInterval();
+        if (snapshotInterval > 0) {
+            snapshotter = scheduler.scheduleAtFixedRate(this::takeSnapshot,
+                    snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+        }
     }
 
     /**
-    * Get the conflict hash code for a stream ID and conflict param.
+    * Get the conflict key for a stream ID and conflict param.
     *
+    * @param txInfo        The resolution info the param comes from.
     * @param streamId      The stream ID.
     * @param conflictParam The conflict parameter.
-    * @return A conflict hash code.
+    * @return A 128-bit conflict key, the param itself if the client pre-hashed it.
     */
-    private String getConflictHashCode(UUID streamId, byte[] conflictParam) {
-        return streamId.toString() + Utils.bytesToHex(conflictParam);
+    private byte[] getConflictKey(TxResolutionInfo txInfo, UUID streamId,
+                                  byte[] conflictParam) {
+        if (txInfo.isPreHashed()
+                && conflictParam.length == TxResolutionInfo.CONFLICT_HASH_SIZE) {
+            return conflictParam;
+        }
+        return TxResolutionInfo.hashConflictParam(streamId, conflictParam);
     }
 
     /**
@@ -224,39 +318,38 @@ public class SequencerServer extends AbstractServer {
                 // if not present, check against the wildcard
                 for (byte[] conflictParam : conflictParamSet) {
 
-                    String conflictKeyHash = getConflictHashCode(entry.getKey(),
+                    byte[] conflictKeyHash = getConflictKey(txInfo, entry.getKey(),
                             conflictParam);
-                    Long v = conflictToGlobalTailCache.getIfPresent(conflictKeyHash);
+                    long v = conflictWindow.get(conflictKeyHash);
 
                     log.trace("Commit-ck[{}] conflict-key[{}](ts={})", txInfo, conflictParam, v);
 
-                    if (v != null && v > txSnapshotTimestamp) {
+                    if (v != ConflictWindow.ABSENT && v > txSnapshotTimestamp) {
                         log.debug("ABORT[{}] conflict-key[{}](ts={})", txInfo, conflictParam, v);
                         conflictKey.set(conflictParam);
                         response.set(TokenType.TX_ABORT_CONFLICT);
                         break;
                     }
 
-                    if (txSnapshotTimestamp < maxConflictWildcard) {
+                    // a key missing from the window may have been evicted after an update
+                    // later than the snapshot, unless the snapshot follows the watermark
+                    final long wildcard = maxConflictWildcard.get();
+                    if (v == ConflictWindow.ABSENT && txSnapshotTimestamp < wildcard) {
                         log.debug("ABORT[{}] snapshot-ts[{}] WILDCARD ts=[{}]",
-                                txInfo, txSnapshotTimestamp, maxConflictWildcard);
+                                txInfo, txSnapshotTimestamp, wildcard);
                         response.set(TX_ABORT_SEQ_OVERFLOW);
                         break;
                     }
                 }
             } else { // otherwise, check for conflict based on streams updates
+                // the caller holds the stripe of the stream, so its tail can't move
                 UUID streamId = entry.getKey();
-                streamTailToGlobalTailMap.compute(streamId, (k, v) -> {
-                    if (v == null) {
-                        return null;
-                    }
-                    if (v > txSnapshotTimestamp) {
-                        log.debug("ABORT[{}] conflict-stream[{}](ts={})",
-                                txInfo, Utils.toReadableId(streamId), v);
-                        response.set(TokenType.TX_ABORT_CONFLICT);
-                    }
-                    return v;
-                });
+                Long v = streamTailToGlobalTailMap.get(streamId);
+                if (v != null && v > txSnapshotTimestamp) {
+                    log.debug("ABORT[{}] conflict-stream[{}](ts={})",
+                            txInfo, Utils.toReadableId(streamId), v);
+                    response.set(TokenType.TX_ABORT_CONFLICT);
+                }
             }
         }
 
@@ -288,8 +381,19 @@ public class SequencerServer extends AbstractServer {
         if (req.getStreams().size() == 1) {
             UUID streamId = req.getStreams().iterator().next();
 
-            if (streamTailToGlobalTailMap.get(streamId) != null) {
-                maxStreamGlobalTail = streamTailToGlobalTailMap.get(streamId);
+            // An allocation bumps the global tail before it updates the stream tail, under
+            // the stripe of the stream. Holding the stripe makes the query wait for any such
+            // allocation, so a stream tail is never older than a global tail read before it.
+            Lock lock = streamLocks.get(streamId);
+            Long streamTail;
+            lock.lock();
+            try {
+                streamTail = streamTailToGlobalTailMap.get(streamId);
+            } finally {
+                lock.unlock();
+            }
+            if (streamTail != null) {
+                maxStreamGlobalTail = streamTail;
             }
         }
 
@@ -306,17 +410,21 @@ public class SequencerServer extends AbstractServer {
     public synchronized void trimCache(CorfuPayloadMsg<Long> msg,
                                        ChannelHandlerContext ctx, IServerRouter r) {
         log.info("trimCache: Starting cache eviction");
-        if (trimMark < msg.getPayload()) {
-            // Advance the trim mark, if the new trim request has a higher trim mark.
-            trimMark = msg.getPayload();
-        }
-
-        long entries = 0;
-        for (Map.Entry<String, Long> entry : conflictToGlobalTailCache.asMap().entrySet()) {
-            if (entry.getValue() < trimMark) {
-                conflictToGlobalTailCache.invalidate(entry.getKey());
-                entries++;
+        // A transaction checks the trim mark before it looks up its conflict keys, under the
+        // stripes of its streams. Holding every stripe keeps a trim from evicting the keys in
+        // between, which would let a transaction miss a conflict.
+        long entries;
+        List<Lock> locks = getAllStreamLocks();
+        lockAll(locks);
+        try {
+            if (trimMark < msg.getPayload()) {
+                // Advance the trim mark, if the new trim request has a higher trim mark.
+                trimMark = msg.getPayload();
             }
+
+            entries = conflictWindow.trim(trimMark);
+        } finally {
+            unlockAll(locks);
         }
         log.info("trimCache: Evicted {} entries", entries);
         r.sendResponse(ctx, msg, CorfuMsgType.ACK.msg());
@@ -353,18 +461,31 @@ public class SequencerServer extends AbstractServer {
         // Note, this is correct, but conservative (may lead to false abort).
         // It is necessary because we reset the sequencer.
         //
-        if (initialToken > globalLogTail.get()) {
-            globalLogTail.set(initialToken);
-            maxConflictWildcard = initialToken - 1;
-            conflictToGlobalTailCache.invalidateAll();
+        // Raw tokens are allocated without locking, so the tail is only advanced if no
+        // allocation moved it past the new start tail. Holding every stripe excludes all the
+        // other allocations.
+        List<Lock> locks = getAllStreamLocks();
+        lockAll(locks);
+        try {
+            long tail = globalLogTail.get();
+            while (initialToken > tail && !globalLogTail.compareAndSet(tail, initialToken)) {
+                tail = globalLogTail.get();
+            }
 
-            // Clear the existing map as it could have been populated by an earlier reset.
-            streamTailToGlobalTailMap.clear();
-            streamTailToGlobalTailMap.putAll(streamTails);
-        }
+            if (initialToken > tail) {
+                maxConflictWildcard.set(initialToken - 1);
+                conflictWindow.clear();
+
+                // Clear the existing map as it could have been populated by an earlier reset.
+                streamTailToGlobalTailMap.clear();
+                streamTailToGlobalTailMap.putAll(streamTails);
+            }
 
-        // Mark the sequencer as ready after the tails have been populated.
-        readyStateEpoch = readyEpoch;
+            // Mark the sequencer as ready after the tails have been populated.
+            readyStateEpoch = readyEpoch;
+        } finally {
+            unlockAll(locks);
+        }
 
         log.info("Sequencer reset with token = {}, streamTailToGlobalTailMap = {},"
                         + " readyStateEpoch = {}",
@@ -372,12 +493,63 @@ public class SequencerServer extends AbstractServer {
         r.sendResponse(ctx, msg, CorfuMsgType.ACK.msg());
     }
 
+    /**
+     * Takes a snapshot of the global tail and of the stream tails, and persists it to the data
+     * store. The snapshot is consistent: holding every stripe excludes the allocations that
+     * update stream tails, so every stream token below the snapshot's global tail is in its
+     * stream tails.
+     *
+     * <p>Nothing is persisted until the sequencer is bootstrapped at the current epoch, so that
+     * a backup sequencer keeps the snapshot it replicated from the primary.
+     */
+    @VisibleForTesting
+    public void takeSnapshot() {
+        SequencerTailsRecoveryMsg snapshot;
+        List<Lock> locks = getAllStreamLocks();
+        lockAll(locks);
+        try {
+            if (readyStateEpoch != serverContext.getServerEpoch()) {
+                return;
+            }
+            snapshot = new SequencerTailsRecoveryMsg(globalLogTail.get(),
+                    new HashMap<>(streamTailToGlobalTailMap), readyStateEpoch);
+        } finally {
+            unlockAll(locks);
+        }
+
+        try {
+            serverContext.setSequencerSnapshot(snapshot);
+            log.debug("takeSnapshot: persisted snapshot, globalTail = {}, streams = {}, "
+                    + "epoch = {}", snapshot.getGlobalTail(), snapshot.getStreamTails().size(),
+                    snapshot.getReadyStateEpoch());
+        } catch (RuntimeException e) {
+            log.error("takeSnapshot: failed to persist snapshot", e);
+        }
+    }
+
+    /**
+     * Service an incoming request for the latest snapshot of the sequencer state, which is
+     * either the snapshot of this sequencer or the one replicated from the primary sequencer.
+     * The request is served even if the sequencer isn't ready.
+     */
+    @ServerHandler(type = CorfuMsgType.SEQUENCER_SNAPSHOT_REQUEST)
+    public void snapshotRequest(CorfuMsg msg, ChannelHandlerContext ctx, IServerRouter r) {
+        SequencerTailsRecoveryMsg snapshot = serverContext.getSequencerSnapshot();
+        if (snapshot == null) {
+            snapshot = new SequencerTailsRecoveryMsg(Address.NON_ADDRESS,
+                    Collections.emptyMap(), Address.NON_ADDRESS);
+        }
+        r.sendResponse(ctx, msg, CorfuMsgType.SEQUENCER_SNAPSHOT_RESPONSE.payloadMsg(snapshot));
+    }
+
     /**
      * Service an incoming token request.
+     *
+     * <p>Requests are served concurrently, see {@link SequencerServer} for the locking.
      */
     @ServerHandler(type = CorfuMsgType.TOKEN_REQ)
-    public synchronized void tokenRequest(CorfuPayloadMsg<TokenRequest> msg,
-                                          ChannelHandlerContext ctx, IServerRouter r) {
+    public void tokenRequest(CorfuPayloadMsg<TokenRequest> msg,
+                             ChannelHandlerContext ctx, IServerRouter r) {
         TokenRequest req = msg.getPayload();
 
         // dispatch request handler according to request type
@@ -395,7 +567,7 @@ public class SequencerServer extends AbstractServer {
                 return;
 
             default:
-                handleAllocation(msg, ctx, r);
+                handleStreamToken(msg, ctx, r);
                 return;
         }
     }
@@ -419,6 +591,30 @@ public class SequencerServer extends AbstractServer {
 
     }
 
+    /**
+     * this method serves log-tokens for writes to one or more streams.
+     * it holds the stripes of the streams while the tokens are allocated,
+     * and sends the response once they are released.
+     *
+     * @param msg corfu message containing stream token
+     * @param ctx netty ChannelHandlerContext
+     * @param r   server router
+     */
+    private void handleStreamToken(CorfuPayloadMsg<TokenRequest> msg,
+                                   ChannelHandlerContext ctx, IServerRouter r) {
+        final TokenRequest req = msg.getPayload();
+
+        List<Lock> locks = getStreamLocks(req.getStreams());
+        TokenResponse response;
+        lockAll(locks);
+        try {
+            response = handleAllocation(req, r.getServerEpoch());
+        } finally {
+            unlockAll(locks);
+        }
+        r.sendResponse(ctx, msg, CorfuMsgType.TOKEN_RES.payloadMsg(response));
+    }
+
     /**
      * this method serves token-requests for transaction-commit entries.
      *
@@ -428,6 +624,10 @@ public class SequencerServer extends AbstractServer {
      * - if the transaction may commit,
      * then a normal allocation of log position(s) is pursued.
      *
+     * <p>the stripes of the streams the transaction reads and writes are held from the
+     * conflict check to the allocation, so that no write to those streams can be ordered
+     * between the two.
+     *
      * @param msg corfu message containing transaction token
      * @param ctx netty ChannelHandlerContext
      * @param r   server router
@@ -436,28 +636,64 @@ public class SequencerServer extends AbstractServer {
                                ChannelHandlerContext ctx, IServerRouter r) {
         final long serverEpoch = r.getServerEpoch();
         final TokenRequest req = msg.getPayload();
-
-        // Since Java does not allow an easy way for a function to return multiple values, this
-        // variable is passed to the consumer that will use it to indicate to us if/what key was
-        // responsible for an aborted transaction.
-        AtomicReference<byte[]> conflictKey = new AtomicReference(TokenResponse.NO_CONFLICT_KEY);
-
-        // in the TK_TX request type, the sequencer is utilized for transaction conflict-resolution.
-        // Token allocation is conditioned on commit.
-        // First, we check if the transaction can commit.
-        TokenType tokenType = txnCanCommit(req.getTxnResolution(), conflictKey);
-        if (tokenType != TokenType.NORMAL) {
-            // If the txn aborts, then DO NOT hand out a token.
-            Token token = new Token(Address.ABORTED, serverEpoch);
-            r.sendResponse(ctx, msg, CorfuMsgType.TOKEN_RES.payloadMsg(new TokenResponse(tokenType,
-                    conflictKey.get(), token, Collections.emptyMap())));
-            return;
+        final TxResolutionInfo txInfo = req.getTxnResolution();
+
+        Set<UUID> streams = new HashSet<>(req.getStreams());
+        streams.addAll(txInfo.getConflictSet().keySet());
+        streams.addAll(txInfo.getWriteConflictParams().keySet());
+
+        List<Lock> locks = getStreamLocks(streams);
+        TokenResponse response;
+        lockAll(locks);
+        try {
+            // Since Java does not allow an easy way for a function to return multiple values,
+            // this variable is passed to the consumer that will use it to indicate to us
+            // if/what key was responsible for an aborted transaction.
+            AtomicReference<byte[]> conflictKey =
+                    new AtomicReference(TokenResponse.NO_CONFLICT_KEY);
+
+            // in the TK_TX request type, the sequencer is utilized for transaction
+            // conflict-resolution. Token allocation is conditioned on commit.
+            // First, we check if the transaction can commit.
+            TokenType tokenType = txnCanCommit(txInfo, conflictKey);
+            markTxResolution(tokenType);
+            if (tokenType != TokenType.NORMAL) {
+                // If the txn aborts, then DO NOT hand out a token.
+                Token token = new Token(Address.ABORTED, serverEpoch);
+                response = new TokenResponse(tokenType, conflictKey.get(), token,
+                        Collections.emptyMap());
+            } else {
+                // if we get here, this means the transaction can commit.
+                // handleAllocation() does the actual allocation of log position(s)
+                // and returns the reponse
+                response = handleAllocation(req, serverEpoch);
+            }
+        } finally {
+            unlockAll(locks);
         }
+        r.sendResponse(ctx, msg, CorfuMsgType.TOKEN_RES.payloadMsg(response));
+    }
 
-        // if we get here, this means the transaction can commit.
-        // handleAllocation() does the actual allocation of log position(s)
-        // and returns the reponse
-        handleAllocation(msg, ctx, r);
+    /**
+     * Counts the outcome of a transaction resolution.
+     */
+    private void markTxResolution(TokenType tokenType) {
+        switch (tokenType) {
+            case NORMAL:
+                txCommits.mark();
+                break;
+            case TX_ABORT_CONFLICT:
+                txAbortsConflict.mark();
+                break;
+            case TX_ABORT_SEQ_OVERFLOW:
+                txAbortsOverflow.mark();
+                break;
+            case TX_ABORT_SEQ_TRIM:
+                txAbortsTrim.mark();
+                break;
+            default:
+                break;
+        }
     }
 
     /**
@@ -465,15 +701,13 @@ public class SequencerServer extends AbstractServer {
      * it also maintains stream-tails, returns a map of stream-tails for backpointers,
      * and maintains a conflict-parameters map.
      *
-     * @param msg corfu message containing allocation
-     * @param ctx netty ChannelHandlerContext
-     * @param r   server router
+     * <p>the caller must hold the stripes of the streams of the request.
+     *
+     * @param req         the token request
+     * @param serverEpoch the epoch of the token
+     * @return the token response
      */
-    private void handleAllocation(CorfuPayloadMsg<TokenRequest> msg,
-                                  ChannelHandlerContext ctx, IServerRouter r) {
-        final long serverEpoch = r.getServerEpoch();
-        final TokenRequest req = msg.getPayload();
-
+    private TokenResponse handleAllocation(TokenRequest req, long serverEpoch) {
         // extend the tail of the global log by the requested # of tokens
         // currentTail is the first available position in the global log
         long currentTail = globalLogTail.getAndAdd(req.getNumTokens());
@@ -487,46 +721,81 @@ public class SequencerServer extends AbstractServer {
         for (UUID id : req.getStreams()) {
 
             // step 1. and 2. (comment above)
-            streamTailToGlobalTailMap.compute(id, (k, v) -> {
-                if (v == null) {
-                    backPointerMap.put(k, Address.NON_EXIST);
-                    return newTail - 1;
-                } else {
-                    backPointerMap.put(k, v);
-                    return newTail - 1;
-                }
-            });
+            Long v = streamTailToGlobalTailMap.put(id, newTail - 1);
+            backPointerMap.put(id, v == null ? Address.NON_EXIST : v);
         }
 
         // update the cache of conflict parameters
-        if (req.getTxnResolution() != null) {
-            req.getTxnResolution().getWriteConflictParams().entrySet()
+        final TxResolutionInfo txInfo = req.getTxnResolution();
+        if (txInfo != null) {
+            txInfo.getWriteConflictParams().entrySet()
                     .stream()
                     // for each entry
                     .forEach(txEntry ->
                             // and for each conflict param
                             txEntry.getValue().stream().forEach(conflictParam ->
                                     // insert an entry with the new timestamp
-                                    // using the hash code based on the param
+                                    // using the key based on the param
                                     // and the stream id.
-                                    conflictToGlobalTailCache.put(
-                                            getConflictHashCode(txEntry
+                                    conflictWindow.put(
+                                            getConflictKey(txInfo, txEntry
                                                     .getKey(), conflictParam),
                                             newTail - 1)));
         }
 
-        log.trace("token {} backpointers {}",
-                currentTail, backPointerMap.build());
+        ImmutableMap<UUID, Long> backPointers = backPointerMap.build();
+        log.trace("token {} backpointers {}", currentTail, backPointers);
         // return the token response with the new global tail
         // and the streams backpointers
         Token token = new Token(currentTail, serverEpoch);
-        r.sendResponse(ctx, msg, CorfuMsgType.TOKEN_RES.payloadMsg(new TokenResponse(
-                TokenType.NORMAL, TokenResponse.NO_CONFLICT_KEY, token,
-                backPointerMap.build())));
+        return new TokenResponse(TokenType.NORMAL, TokenResponse.NO_CONFLICT_KEY, token,
+                backPointers);
+    }
+
+    /**
+     * Returns the stripes of a set of streams, in the order they must be locked.
+     */
+    private List<Lock> getStreamLocks(Set<UUID> streams) {
+        if (streams.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Lock> locks = new ArrayList<>(streams.size());
+        streamLocks.bulkGet(streams).forEach(locks::add);
+        return locks;
+    }
+
+    /**
+     * Returns every stripe of {@link SequencerServer::streamLocks}, in lock order.
+     */
+    private List<Lock> getAllStreamLocks() {
+        List<Lock> locks = new ArrayList<>(streamLocks.size());
+        for (int i = 0; i < streamLocks.size(); i++) {
+            locks.add(streamLocks.getAt(i));
+        }
+        return locks;
+    }
+
+    private static void lockAll(List<Lock> locks) {
+        locks.forEach(Lock::lock);
+    }
+
+    private static void unlockAll(List<Lock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        if (snapshotter != null) {
+            snapshotter.cancel(true);
+        }
+        scheduler.shutdownNow();
     }
 
     @VisibleForTesting
-    public Cache<String, Long> getConflictToGlobalTailCache() {
-        return conflictToGlobalTailCache;
+    public ConflictWindow getConflictWindow() {
+        return conflictWindow;
     }
 }
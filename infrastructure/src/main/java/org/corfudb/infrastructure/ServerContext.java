@@ -14,6 +14,7 @@ import lombok.Setter;
 
 import lombok.extern.slf4j.Slf4j;
 import org.corfudb.comm.ChannelImplementation;
+import org.corfudb.protocols.wireprotocol.SequencerTailsRecoveryMsg;
 import org.corfudb.runtime.CorfuRuntime;
 import org.corfudb.runtime.CorfuRuntime.CorfuRuntimeParameters;
 import org.corfudb.runtime.exceptions.WrongEpochException;
@@ -62,6 +63,12 @@ public class ServerContext implements AutoCloseable {
     private static final String KEY_TAIL_SEGMENT = "CURRENT";
     private static final String PREFIX_STARTING_ADDRESS = "STARTING_ADDRESS";
     private static final String KEY_STARTING_ADDRESS = "CURRENT";
+    private static final String PREFIX_LOG_SEGMENT_RECORDS = "LOG_SEGMENT_RECORDS";
+    private static final String KEY_LOG_SEGMENT_RECORDS = "CURRENT";
+    private static final String PREFIX_LOG_DIRS = "LOG_DIRS";
+    private static final String KEY_LOG_DIRS = "CURRENT";
+    private static final String PREFIX_SEQUENCER_SNAPSHOT = "SEQUENCER_SNAPSHOT";
+    private static final String KEY_SEQUENCER_SNAPSHOT = "CURRENT";
 
     // Management Server
     private static final String PREFIX_MANAGEMENT = "MANAGEMENT";
@@ -76,6 +83,9 @@ public class ServerContext implements AutoCloseable {
     public static final Duration SMALL_INTERVAL = Duration.ofMillis(60_000);
     public static final Duration SHUTDOWN_TIMER = Duration.ofSeconds(5);
 
+    /** Default interval in seconds between snapshots of the sequencer state. */
+    public static final long DEFAULT_SEQUENCER_SNAPSHOT_INTERVAL = 10;
+
 
     @Getter
     private final Map<String, Object> serverConfig;
@@ -383,6 +393,61 @@ public class ServerContext implements AutoCloseable {
         dataStore.put(Long.class, PREFIX_STARTING_ADDRESS, KEY_STARTING_ADDRESS, startingAddress);
     }
 
+    /**
+     * Returns the number of records per log segment the log was created with.
+     *
+     * @return the number of records per segment, or null if the log wasn't created yet
+     */
+    public Integer getLogSegmentRecords() {
+        return dataStore.get(Integer.class, PREFIX_LOG_SEGMENT_RECORDS, KEY_LOG_SEGMENT_RECORDS);
+    }
+
+    public void setLogSegmentRecords(int logSegmentRecords) {
+        dataStore.put(Integer.class, PREFIX_LOG_SEGMENT_RECORDS, KEY_LOG_SEGMENT_RECORDS,
+                logSegmentRecords);
+    }
+
+    /**
+     * Returns the directories the log segments are striped over, separated by commas.
+     *
+     * @return the log directories, or null if the log wasn't created yet
+     */
+    public String getLogDirs() {
+        return dataStore.get(String.class, PREFIX_LOG_DIRS, KEY_LOG_DIRS);
+    }
+
+    public void setLogDirs(String logDirs) {
+        dataStore.put(String.class, PREFIX_LOG_DIRS, KEY_LOG_DIRS, logDirs);
+    }
+
+    /**
+     * Returns the latest snapshot of the sequencer state, taken by the local sequencer or
+     * replicated from the primary sequencer.
+     *
+     * @return the snapshot, or null if no snapshot was persisted
+     */
+    public SequencerTailsRecoveryMsg getSequencerSnapshot() {
+        return dataStore.get(SequencerTailsRecoveryMsg.class, PREFIX_SEQUENCER_SNAPSHOT,
+                KEY_SEQUENCER_SNAPSHOT);
+    }
+
+    public void setSequencerSnapshot(SequencerTailsRecoveryMsg snapshot) {
+        dataStore.put(SequencerTailsRecoveryMsg.class, PREFIX_SEQUENCER_SNAPSHOT,
+                KEY_SEQUENCER_SNAPSHOT, snapshot);
+    }
+
+    /**
+     * Returns the interval between snapshots of the sequencer state, which is also the
+     * interval at which backup sequencers replicate the snapshot of the primary.
+     *
+     * @return the interval in seconds, or 0 if snapshots are disabled
+     */
+    public long getSequencerSnapshotInterval() {
+        Object interval = serverConfig.get("--sequencer-snapshot-interval");
+        return interval == null ? DEFAULT_SEQUENCER_SNAPSHOT_INTERVAL
+                : Long.parseLong((String) interval);
+    }
+
     /**
      * Sets the management layout in the persistent datastore.
      *
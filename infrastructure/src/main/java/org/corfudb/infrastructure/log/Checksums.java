@@ -0,0 +1,121 @@
+package org.corfudb.infrastructure.log;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * CRC32C checksums of log records.
+ *
+ * <p>From Java 9 on, the JDK's {@code java.util.zip.CRC32C} is an intrinsic that uses the
+ * CRC instructions of the processor, and it checksums direct and mapped buffers in place.
+ * The log is built for Java 8, so the class is looked up when this class is loaded and
+ * used when the runtime has it. Otherwise checksums fall back to Guava's table-driven
+ * CRC32C, which computes the same values.
+ */
+@Slf4j
+final class Checksums {
+
+    private static final int COPY_CHUNK_SIZE = 8 * 1024;
+
+    /**
+     * Creates a {@code java.util.zip.CRC32C}, or null if the runtime doesn't have it.
+     */
+    private static final MethodHandle NEW_CRC32C;
+
+    /**
+     * {@code Checksum.update(ByteBuffer)}, or null if the runtime doesn't have it.
+     */
+    private static final MethodHandle UPDATE_BUFFER;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        MethodHandle newCrc32c = null;
+        MethodHandle updateBuffer = null;
+        try {
+            newCrc32c = lookup.findConstructor(Class.forName("java.util.zip.CRC32C"),
+                    MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Checksum.class));
+            updateBuffer = lookup.findVirtual(Checksum.class, "update",
+                    MethodType.methodType(void.class, ByteBuffer.class));
+        } catch (ReflectiveOperationException e) {
+            log.info("Checksums: java.util.zip.CRC32C is not available, using Guava");
+            newCrc32c = null;
+            updateBuffer = null;
+        }
+        NEW_CRC32C = newCrc32c;
+        UPDATE_BUFFER = updateBuffer;
+    }
+
+    private Checksums() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Returns true if the checksums are computed by the JDK's intrinsic.
+     */
+    static boolean isIntrinsic() {
+        return NEW_CRC32C != null;
+    }
+
+    static int crc32c(byte[] bytes) {
+        return crc32c(bytes, 0, bytes.length);
+    }
+
+    static int crc32c(byte[] bytes, int offset, int length) {
+        if (NEW_CRC32C == null) {
+            return Hashing.crc32c().hashBytes(bytes, offset, length).asInt();
+        }
+        Checksum crc = newCrc32c();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Checksums the remaining bytes of a buffer, without changing its position.
+     *
+     * @param buffer a heap, direct or mapped buffer
+     * @return the CRC32C of the remaining bytes
+     */
+    static int crc32c(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return crc32c(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                    buffer.remaining());
+        }
+
+        ByteBuffer source = buffer.duplicate();
+        if (NEW_CRC32C != null) {
+            Checksum crc = newCrc32c();
+            try {
+                UPDATE_BUFFER.invokeExact(crc, source);
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+            return (int) crc.getValue();
+        }
+
+        Hasher hasher = Hashing.crc32c().newHasher();
+        byte[] chunk = new byte[Math.min(COPY_CHUNK_SIZE, source.remaining())];
+        while (source.hasRemaining()) {
+            int length = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, length);
+            hasher.putBytes(chunk, 0, length);
+        }
+        return hasher.hash().asInt();
+    }
+
+    private static Checksum newCrc32c() {
+        try {
+            return (Checksum) NEW_CRC32C.invokeExact();
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package org.corfudb.infrastructure.log;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.annotation.Nullable;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import org.corfudb.format.Types.CompressedSegmentIndex;
+import org.corfudb.format.Types.Metadata;
+import org.corfudb.runtime.exceptions.DataCorruptionException;
+
+/**
+ * The records of a sealed segment, stored compressed.
+ *
+ * <p>The segment file is split, from its first record to its end, into blocks of about
+ * {@link #BLOCK_SIZE} bytes that start on record boundaries, so that a record is always
+ * contained in a single block. Each block is deflated independently. The compressed file
+ * holds the blocks, followed by a {@link CompressedSegmentIndex} (preceded by its
+ * metadata), and ends with the offset of the index.
+ *
+ * <p>Compression doesn't change the offsets of the records in the segment, so the
+ * segment index still locates the records: a record is read by inflating the block that
+ * contains its offset. The last inflated block is kept, so that a scan of the segment
+ * inflates every block once.
+ */
+@Slf4j
+class CompressedSegment implements AutoCloseable {
+
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    private static final int FOOTER_SIZE = Long.BYTES;
+
+    private final FileChannel channel;
+
+    /**
+     * Size of the segment file that was compressed.
+     */
+    @Getter
+    private final long segmentSize;
+
+    private final long[] segmentOffsets;
+    private final long[] fileOffsets;
+    private final int[] compressedLengths;
+    private final int[] lengths;
+
+    private int cachedBlock = -1;
+    private byte[] cachedBlockData;
+
+    private CompressedSegment(FileChannel channel, CompressedSegmentIndex index) {
+        this.channel = channel;
+        this.segmentSize = index.getSegmentSize();
+        this.segmentOffsets = index.getSegmentOffsetList().stream()
+                .mapToLong(Long::longValue).toArray();
+        this.fileOffsets = index.getFileOffsetList().stream()
+                .mapToLong(Long::longValue).toArray();
+        this.compressedLengths = index.getCompressedLengthList().stream()
+                .mapToInt(Integer::intValue).toArray();
+        this.lengths = index.getLengthList().stream()
+                .mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Opens a compressed segment file.
+     *
+     * @param path path of the compressed segment file
+     * @return the compressed segment
+     * @throws DataCorruptionException if the block index of the file is corrupted
+     */
+    static CompressedSegment open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, EnumSet.of(StandardOpenOption.READ));
+        try {
+            long size = channel.size();
+            if (size < FOOTER_SIZE + StreamLogFiles.METADATA_SIZE) {
+                throw new DataCorruptionException();
+            }
+
+            ByteBuffer footer = readFully(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            long maxIndexOffset = size - FOOTER_SIZE - StreamLogFiles.METADATA_SIZE;
+            if (indexOffset < 0 || indexOffset > maxIndexOffset) {
+                throw new DataCorruptionException();
+            }
+
+            Metadata metadata = Metadata.parseFrom(readFully(channel, indexOffset,
+                    StreamLogFiles.METADATA_SIZE).array());
+            long payloadOffset = indexOffset + StreamLogFiles.METADATA_SIZE;
+            if (metadata.getLength() < 0
+                    || payloadOffset + metadata.getLength() > size - FOOTER_SIZE) {
+                throw new DataCorruptionException();
+            }
+
+            byte[] payload = readFully(channel, payloadOffset, metadata.getLength()).array();
+            if (StreamLogFiles.getChecksum(payload) != metadata.getPayloadChecksum()) {
+                throw new DataCorruptionException();
+            }
+
+            return new CompressedSegment(channel, CompressedSegmentIndex.parseFrom(payload));
+        } catch (InvalidProtocolBufferException e) {
+            channel.close();
+            throw new DataCorruptionException();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Compresses a segment file.
+     *
+     * @param segment       channel to read the segment file from
+     * @param dataOffset    offset of the first byte after the segment header
+     * @param recordOffsets offsets of the live records of the segment, in ascending order
+     * @param segmentSize   size of the segment file to compress
+     * @param target        path to write the compressed segment to
+     * @param rateLimiter   limits the rate at which the segment is read, or null
+     */
+    static void write(FileChannel segment, long dataOffset, long[] recordOffsets,
+                      long segmentSize, Path target, @Nullable RateLimiter rateLimiter)
+            throws IOException {
+        CompressedSegmentIndex.Builder index = CompressedSegmentIndex.newBuilder()
+                .setSegmentSize(segmentSize);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+        try (FileChannel fc = FileChannel.open(target,
+                EnumSet.of(StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE))) {
+            long blockStart = dataOffset;
+            int next = 0;
+            while (blockStart < segmentSize) {
+                // Extend the block to the first record that starts past the block size
+                while (next < recordOffsets.length
+                        && recordOffsets[next] - blockStart < BLOCK_SIZE) {
+                    next++;
+                }
+                long blockEnd = next < recordOffsets.length ? recordOffsets[next] : segmentSize;
+                int length = (int) (blockEnd - blockStart);
+
+                if (rateLimiter != null) {
+                    rateLimiter.acquire(length);
+                }
+
+                byte[] block = readFully(segment, blockStart, length).array();
+                deflater.reset();
+                deflater.setInput(block);
+                deflater.finish();
+
+                byte[] compressed = new byte[BLOCK_SIZE];
+                long fileOffset = fc.position();
+                int compressedLength = 0;
+                while (!deflater.finished()) {
+                    int deflated = deflater.deflate(compressed);
+                    writeFully(fc, ByteBuffer.wrap(compressed, 0, deflated));
+                    compressedLength += deflated;
+                }
+
+                index.addSegmentOffset(blockStart)
+                        .addFileOffset(fileOffset)
+                        .addCompressedLength(compressedLength)
+                        .addLength(length);
+                blockStart = blockEnd;
+            }
+
+            long indexOffset = fc.position();
+            writeFully(fc, StreamLogFiles.getByteBufferWithMetaData(index.build()));
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+            footer.putLong(indexOffset);
+            footer.flip();
+            writeFully(fc, footer);
+            fc.force(true);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Offset of the first byte after the segment header, i.e. the segment file can be
+     * truncated to this offset once the segment is compressed.
+     */
+    long getDataOffset() {
+        return segmentOffsets.length == 0 ? segmentSize : segmentOffsets[0];
+    }
+
+    /**
+     * Reads a range of the segment file from its compressed blocks.
+     *
+     * @param offset offset of the range in the segment file
+     * @param length length of the range, the range can't span multiple records
+     * @return a buffer holding the range
+     */
+    synchronized ByteBuffer read(long offset, int length) throws IOException {
+        int block = Arrays.binarySearch(segmentOffsets, offset);
+        if (block < 0) {
+            block = -block - 2;
+        }
+        if (block < 0 || offset + length > segmentOffsets[block] + lengths[block]) {
+            throw new DataCorruptionException();
+        }
+
+        if (block != cachedBlock) {
+            cachedBlockData = inflateBlock(block);
+            cachedBlock = block;
+        }
+
+        // Blocks are never modified once inflated, readers can alias them
+        return ByteBuffer.wrap(cachedBlockData, (int) (offset - segmentOffsets[block]), length)
+                .slice();
+    }
+
+    /**
+     * Writes the compressed blocks back to the segment file, at their original offsets.
+     *
+     * @param segment channel of the segment file
+     */
+    synchronized void restore(FileChannel segment) throws IOException {
+        for (int block = 0; block < segmentOffsets.length; block++) {
+            ByteBuffer data = ByteBuffer.wrap(inflateBlock(block));
+            while (data.hasRemaining()) {
+                segment.write(data, segmentOffsets[block] + data.position());
+            }
+        }
+        segment.force(true);
+    }
+
+    private byte[] inflateBlock(int block) throws IOException {
+        byte[] compressed = readFully(channel, fileOffsets[block], compressedLengths[block])
+                .array();
+        byte[] data = new byte[lengths[block]];
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int inflated = inflater.inflate(data);
+            if (inflated != data.length || !inflater.finished()) {
+                throw new DataCorruptionException();
+            }
+        } catch (DataFormatException e) {
+            log.error("inflateBlock: block {} is corrupted", block, e);
+            throw new DataCorruptionException();
+        } finally {
+            inflater.end();
+        }
+
+        return data;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long offset, int length)
+            throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, offset + buf.position()) < 0) {
+                throw new DataCorruptionException();
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Error closing compressed segment channel: {}", e.toString());
+        }
+    }
+}
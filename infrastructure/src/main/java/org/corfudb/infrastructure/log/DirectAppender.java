@@ -0,0 +1,248 @@
+package org.corfudb.infrastructure.log;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.annotation.Nullable;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Appends records to a segment file with direct I/O, so that appended records don't go
+ * through the page cache and don't evict the pages of the records that are read.
+ *
+ * <p>Direct I/O writes whole blocks, at block aligned offsets, from block aligned buffers.
+ * The appender keeps the last, partially filled, block of the segment file in memory. An
+ * append writes that block followed by the records, padded with zeros to the next block
+ * boundary. The padding is overwritten by the next append, and truncated when the
+ * appender is closed. If the log unit crashes, the padding is truncated when the segment
+ * is scanned, like a partially written record.
+ *
+ * <p>Direct I/O is only available from Java 10 on, through
+ * {@code com.sun.nio.file.ExtendedOpenOption.DIRECT}. The log is built for Java 8, so the
+ * option is looked up when this class is loaded.
+ */
+@Slf4j
+class DirectAppender implements AutoCloseable {
+
+    /**
+     * The alignment of direct writes, a multiple of the logical block size of the disks.
+     */
+    static final int BLOCK_SIZE = 4096;
+
+    private static final byte[] PADDING = new byte[BLOCK_SIZE];
+
+    /**
+     * The direct I/O open option, or null if the runtime doesn't have it.
+     */
+    @Nullable
+    private static final OpenOption DIRECT;
+
+    /**
+     * {@code ByteBuffer.alignedSlice(int)}, or null if the runtime doesn't have it.
+     */
+    @Nullable
+    private static final MethodHandle ALIGNED_SLICE;
+
+    static {
+        OpenOption direct = null;
+        MethodHandle alignedSlice = null;
+        try {
+            Class<?> extendedOptions = Class.forName("com.sun.nio.file.ExtendedOpenOption");
+            for (Object option : extendedOptions.getEnumConstants()) {
+                if (((Enum<?>) option).name().equals("DIRECT")) {
+                    direct = (OpenOption) option;
+                }
+            }
+            alignedSlice = MethodHandles.publicLookup().findVirtual(ByteBuffer.class,
+                    "alignedSlice", MethodType.methodType(ByteBuffer.class, int.class));
+        } catch (ReflectiveOperationException e) {
+            log.debug("DirectAppender: direct I/O is not available", e);
+        }
+        DIRECT = alignedSlice == null ? null : direct;
+        ALIGNED_SLICE = alignedSlice;
+    }
+
+    /**
+     * The channel that writes to the segment file with direct I/O.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The write channel of the segment, it's positioned at the end of the appended
+     * records and is used to truncate the padding.
+     */
+    private final FileChannel segment;
+
+    /**
+     * The end of the appended records in the segment file.
+     */
+    @Getter
+    private long position;
+
+    /**
+     * Holds the last block of the segment file, followed by the records being appended.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Number of bytes of the last block, at the start of the buffer.
+     */
+    private int tailLength;
+
+    /**
+     * Returns an appender that writes to a channel, from the end of a segment file.
+     *
+     * @param channel channel that writes to the segment file
+     * @param segment the write channel of the segment, positioned at the end of its
+     *                records
+     */
+    DirectAppender(FileChannel channel, FileChannel segment) throws IOException {
+        this.channel = channel;
+        this.segment = segment;
+        this.position = segment.position();
+        this.tailLength = (int) (position % BLOCK_SIZE);
+        this.buffer = allocate(BLOCK_SIZE);
+
+        // Load the last block, it's written again by the next append
+        buffer.limit(tailLength);
+        while (buffer.hasRemaining()) {
+            if (segment.read(buffer, position - tailLength + buffer.position()) < 0) {
+                throw new IOException("Segment file is shorter than its records");
+            }
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Returns true if the runtime supports direct I/O.
+     */
+    static boolean isSupported() {
+        return DIRECT != null;
+    }
+
+    /**
+     * Opens an appender for a segment file.
+     *
+     * @param path    path of the segment file
+     * @param segment the write channel of the segment, positioned at the end of its
+     *                records
+     * @return the appender, or null if the runtime or the file system of the segment
+     *     doesn't support direct I/O
+     */
+    @Nullable
+    static DirectAppender open(Path path, FileChannel segment) throws IOException {
+        if (DIRECT == null) {
+            return null;
+        }
+
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.WRITE, DIRECT);
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("open: direct I/O isn't supported for {}: {}", path, e.toString());
+            return null;
+        }
+
+        try {
+            return new DirectAppender(channel, segment);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends records to the segment file. The records are consumed, like they would be
+     * by a channel write.
+     *
+     * @param records the records to append, in order
+     */
+    void append(ByteBuffer[] records) throws IOException {
+        int length = 0;
+        for (ByteBuffer record : records) {
+            length += record.remaining();
+        }
+
+        int end = tailLength + length;
+        int size = (end + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+        if (size > buffer.capacity()) {
+            ByteBuffer larger = allocate(size);
+            buffer.clear();
+            buffer.limit(tailLength);
+            larger.put(buffer);
+            buffer = larger;
+        }
+
+        buffer.clear();
+        buffer.position(tailLength);
+        for (ByteBuffer record : records) {
+            buffer.put(record.duplicate());
+        }
+        buffer.put(PADDING, 0, size - end);
+        buffer.flip();
+
+        long blockStart = position - tailLength;
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, blockStart + buffer.position());
+            }
+        } catch (IOException e) {
+            // Drop the partially written records, like a failed buffered write
+            segment.truncate(position);
+            segment.force(true);
+            throw e;
+        }
+
+        for (ByteBuffer record : records) {
+            record.position(record.limit());
+        }
+
+        // Keep the new last block at the start of the buffer
+        int newTailLength = end % BLOCK_SIZE;
+        buffer.limit(end);
+        buffer.position(end - newTailLength);
+        buffer.compact();
+        tailLength = newTailLength;
+        position += length;
+        segment.position(position);
+    }
+
+    /**
+     * Truncates the padding of the last block and closes the direct channel. The segment
+     * is appended to through its write channel from then on.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (segment.isOpen() && segment.size() > position) {
+                segment.truncate(position);
+                segment.position(position);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static ByteBuffer allocate(int size) {
+        if (ALIGNED_SLICE == null) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        try {
+            ByteBuffer aligned = (ByteBuffer) ALIGNED_SLICE.invokeExact(
+                    ByteBuffer.allocateDirect(size + BLOCK_SIZE), BLOCK_SIZE);
+            aligned.limit(size);
+            return aligned.slice();
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package org.corfudb.infrastructure.log;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -116,6 +118,19 @@ public class InMemoryStreamLog implements StreamLog, StreamLogWithRankedAddressS
         return logCache.get(address);
     }
 
+    @Override
+    public List<Long> getStreamAddresses(UUID streamId, long start, long end) {
+        List<Long> addresses = new ArrayList<>();
+        for (long address = Math.max(start, startingAddress);
+             address <= Math.min(end, globalTail.get()); address++) {
+            LogData entry = logCache.get(address);
+            if (entry != null && !trimmed.contains(address) && entry.containsStream(streamId)) {
+                addresses.add(address);
+            }
+        }
+        return addresses;
+    }
+
     @Override
     public void sync(boolean force){
         //no-op
@@ -0,0 +1,143 @@
+package org.corfudb.infrastructure.log;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Maps the addresses of a segment to their {@link AddressMetaData}.
+ *
+ * <p>A segment holds a contiguous range of addresses, so instead of a map of boxed
+ * addresses to metadata objects, the metadata is kept in primitive arrays indexed by
+ * (address - first address of the segment). Metadata objects are only materialized on
+ * lookup. Updates are serialized by the segment write lock, a {@link StampedLock} makes
+ * every lookup observe the offset, length and checksum of a single update.
+ */
+class SegmentAddressMap {
+
+    private static final int ABSENT = -1;
+
+    private final long firstAddress;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[] checksums;
+    private int size = 0;
+
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Returns an empty map for a range of addresses.
+     *
+     * @param firstAddress first address of the segment
+     * @param capacity     number of addresses in the segment
+     */
+    SegmentAddressMap(long firstAddress, int capacity) {
+        this.firstAddress = firstAddress;
+        this.offsets = new long[capacity];
+        this.lengths = new int[capacity];
+        this.checksums = new int[capacity];
+        Arrays.fill(lengths, ABSENT);
+    }
+
+    private int indexOf(long address) {
+        long index = address - firstAddress;
+        if (index < 0 || index >= lengths.length) {
+            return ABSENT;
+        }
+        return (int) index;
+    }
+
+    /**
+     * Returns the metadata for an address, or null if the address isn't in the map.
+     */
+    public AddressMetaData get(long address) {
+        int index = indexOf(address);
+        if (index == ABSENT) {
+            return null;
+        }
+
+        long stamp = lock.tryOptimisticRead();
+        int length = lengths[index];
+        long offset = offsets[index];
+        int checksum = checksums[index];
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                length = lengths[index];
+                offset = offsets[index];
+                checksum = checksums[index];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        return length == ABSENT ? null : new AddressMetaData(checksum, length, offset);
+    }
+
+    public boolean containsKey(long address) {
+        return get(address) != null;
+    }
+
+    /**
+     * Maps an address to its metadata, replacing the metadata the address had.
+     *
+     * @throws IllegalArgumentException if the address doesn't belong to the segment
+     */
+    public void put(long address, AddressMetaData metaData) {
+        int index = indexOf(address);
+        if (index == ABSENT) {
+            throw new IllegalArgumentException("Address " + address
+                    + " is not in the segment starting at " + firstAddress);
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            if (lengths[index] == ABSENT) {
+                size++;
+            }
+            offsets[index] = metaData.offset;
+            checksums[index] = metaData.checksum;
+            lengths[index] = metaData.length;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void putAll(Map<Long, AddressMetaData> entries) {
+        for (Map.Entry<Long, AddressMetaData> entry : entries.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the addresses in the map, in ascending order.
+     */
+    public long[] addresses() {
+        long stamp = lock.readLock();
+        try {
+            long[] addresses = new long[size];
+            int next = 0;
+            for (int index = 0; index < lengths.length; index++) {
+                if (lengths[index] != ABSENT) {
+                    addresses[next++] = firstAddress + index;
+                }
+            }
+            return addresses;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
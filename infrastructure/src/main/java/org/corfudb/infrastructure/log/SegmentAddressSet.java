@@ -0,0 +1,98 @@
+package org.corfudb.infrastructure.log;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A set of the addresses of a segment (i.e. trimmed or pending trim addresses).
+ *
+ * <p>A segment holds a contiguous range of addresses, so the set is a bitmap with a
+ * bit per address of the segment rather than a set of boxed addresses.
+ */
+class SegmentAddressSet {
+
+    private static final int ADDRESS_PER_WORD_SHIFT = 6;
+
+    private final long firstAddress;
+    private final int capacity;
+    private final AtomicLongArray words;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Returns an empty set for a range of addresses.
+     *
+     * @param firstAddress first address of the segment
+     * @param capacity     number of addresses in the segment
+     */
+    SegmentAddressSet(long firstAddress, int capacity) {
+        this.firstAddress = firstAddress;
+        this.capacity = capacity;
+        this.words = new AtomicLongArray((capacity + Long.SIZE - 1) >>> ADDRESS_PER_WORD_SHIFT);
+    }
+
+    private int indexOf(long address) {
+        long index = address - firstAddress;
+        if (index < 0 || index >= capacity) {
+            return -1;
+        }
+        return (int) index;
+    }
+
+    /**
+     * Adds an address to the set.
+     *
+     * @return true if the address wasn't in the set
+     * @throws IllegalArgumentException if the address doesn't belong to the segment
+     */
+    public boolean add(long address) {
+        int index = indexOf(address);
+        if (index < 0) {
+            throw new IllegalArgumentException("Address " + address
+                    + " is not in the segment starting at " + firstAddress);
+        }
+
+        int word = index >>> ADDRESS_PER_WORD_SHIFT;
+        long bit = 1L << index;
+        while (true) {
+            long current = words.get(word);
+            if ((current & bit) != 0) {
+                return false;
+            }
+            if (words.compareAndSet(word, current, current | bit)) {
+                size.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    public boolean contains(long address) {
+        int index = indexOf(address);
+        return index >= 0 && (words.get(index >>> ADDRESS_PER_WORD_SHIFT) & (1L << index)) != 0;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns a copy of the set as a set of boxed addresses.
+     */
+    public Set<Long> toSet() {
+        Set<Long> addresses = new HashSet<>();
+        for (int word = 0; word < words.length(); word++) {
+            long bits = words.get(word);
+            while (bits != 0) {
+                int bit = Long.numberOfTrailingZeros(bits);
+                addresses.add(firstAddress + ((long) word << ADDRESS_PER_WORD_SHIFT) + bit);
+                bits &= bits - 1;
+            }
+        }
+        return addresses;
+    }
+}
@@ -4,13 +4,11 @@ import lombok.Data;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The global log is partition into segments, each segment contains a range of consecutive
@@ -38,24 +36,129 @@ class SegmentHandle {
     @NonNull
     String fileName;
 
-    private Map<Long, AddressMetaData> knownAddresses = new ConcurrentHashMap();
-    private Set<Long> trimmedAddresses = Collections.newSetFromMap(new ConcurrentHashMap<>());
-    private Set<Long> pendingTrims = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private SegmentAddressMap knownAddresses;
+    private SegmentAddressSet trimmedAddresses;
+    private SegmentAddressSet pendingTrims;
+    private SegmentStreamIndex streamIndex = new SegmentStreamIndex();
     private volatile int refCount = 0;
+    private boolean closeOnRelease = false;
 
+    /**
+     * True if an index file that matches the current segment file has been persisted.
+     */
+    private volatile boolean indexed = false;
+
+    /**
+     * The compressed records of the segment, or null if the segment isn't compressed.
+     * The records of a compressed segment are read from it rather than from the segment
+     * file, which only keeps the header.
+     */
+    private volatile CompressedSegment compressedSegment;
+
+    /**
+     * Appends to the segment with direct I/O, or null if the segment is appended to
+     * through its write channel.
+     */
+    private DirectAppender directAppender;
+
+    private volatile boolean closed = false;
+
+    /**
+     * When the handle was last looked up, in {@link System#nanoTime()} time.
+     */
+    private volatile long lastAccess = System.nanoTime();
+
+    /**
+     * Returns a handle for a segment.
+     *
+     * @param segment            the segment number
+     * @param recordsPerSegment  number of addresses in a segment
+     * @param writeChannel       channel for appending to the segment file
+     * @param readChannel        channel for reading the segment file
+     * @param trimmedChannel     channel of the trimmed addresses file
+     * @param pendingTrimChannel channel of the pending trims file
+     * @param fileName           path of the segment file
+     */
+    SegmentHandle(long segment, int recordsPerSegment, @NonNull FileChannel writeChannel,
+                  @NonNull FileChannel readChannel, @NonNull FileChannel trimmedChannel,
+                  @NonNull FileChannel pendingTrimChannel, @NonNull String fileName) {
+        this.segment = segment;
+        this.writeChannel = writeChannel;
+        this.readChannel = readChannel;
+        this.trimmedChannel = trimmedChannel;
+        this.pendingTrimChannel = pendingTrimChannel;
+        this.fileName = fileName;
+
+        long firstAddress = segment * recordsPerSegment;
+        knownAddresses = new SegmentAddressMap(firstAddress, recordsPerSegment);
+        trimmedAddresses = new SegmentAddressSet(firstAddress, recordsPerSegment);
+        pendingTrims = new SegmentAddressSet(firstAddress, recordsPerSegment);
+    }
 
     public synchronized void retain() {
         refCount++;
     }
 
+    /**
+     * Retains the handle, unless it's closed or will be closed once released, i.e. it has
+     * been replaced or removed from the open segments.
+     *
+     * @return true if the handle was retained
+     */
+    public synchronized boolean tryRetain() {
+        if (closed || closeOnRelease) {
+            return false;
+        }
+        refCount++;
+        return true;
+    }
+
     public synchronized void release() {
         if (refCount == 0) {
             throw new IllegalStateException("refCount cannot be less than 0, segment " + segment);
         }
         refCount--;
+        if (closeOnRelease && refCount == 0) {
+            close();
+        }
     }
 
-    public void close() {
+    /**
+     * Prevents the handle from being retained if it isn't referenced, so that it can be
+     * removed from the open segments and closed.
+     *
+     * @return true if the handle can no longer be retained
+     */
+    public synchronized boolean tryRetire() {
+        if (closed || closeOnRelease || refCount != 0) {
+            return false;
+        }
+        closeOnRelease = true;
+        return true;
+    }
+
+    /**
+     * Closes the handle once it's no longer referenced, i.e. immediately if it isn't
+     * referenced, or when the last reference is released.
+     */
+    public synchronized void closeWhenReleased() {
+        if (refCount == 0) {
+            close();
+        } else {
+            closeOnRelease = true;
+        }
+    }
+
+    public synchronized void close() {
+        if (directAppender != null) {
+            try {
+                directAppender.close();
+            } catch (IOException e) {
+                log.warn("Error closing direct appender of {}: {}", fileName, e.toString());
+            }
+            directAppender = null;
+        }
+
         Set<FileChannel> channels =
                 new HashSet(Arrays.asList(writeChannel, readChannel, trimmedChannel, pendingTrimChannel));
         for (FileChannel channel : channels) {
@@ -68,8 +171,13 @@ class SegmentHandle {
             }
         }
 
+        if (compressedSegment != null) {
+            compressedSegment.close();
+        }
+
         knownAddresses = null;
         trimmedAddresses = null;
         pendingTrims = null;
+        closed = true;
     }
 }
\ No newline at end of file
@@ -0,0 +1,123 @@
+package org.corfudb.infrastructure.log;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.LongPredicate;
+
+import org.corfudb.format.Types.SegmentIndex;
+import org.corfudb.format.Types.StreamIndex;
+
+/**
+ * Maps the streams written in a segment to their addresses within the segment.
+ *
+ * <p>The addresses of a stream are kept in a sorted primitive array. Addresses are mostly
+ * written in ascending order, so adding one is usually an append to the array. The index
+ * is persisted in the {@link SegmentIndex} of the segment.
+ */
+class SegmentStreamIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The addresses of a stream, the first size entries of the array are in use.
+     */
+    private static class Addresses {
+        long[] addresses = new long[INITIAL_CAPACITY];
+        int size = 0;
+
+        void add(long address) {
+            int index = size == 0 || addresses[size - 1] < address
+                    ? -size - 1 : Arrays.binarySearch(addresses, 0, size, address);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            if (size == addresses.length) {
+                addresses = Arrays.copyOf(addresses, size * 2);
+            }
+            System.arraycopy(addresses, index, addresses, index + 1, size - index);
+            addresses[index] = address;
+            size++;
+        }
+    }
+
+    private final Map<UUID, Addresses> streams = new HashMap<>();
+
+    /**
+     * Records that an address holds entries of some streams.
+     *
+     * @param address address of the entry
+     * @param streamIds the streams the entry belongs to
+     */
+    public synchronized void put(long address, Iterable<UUID> streamIds) {
+        for (UUID streamId : streamIds) {
+            streams.computeIfAbsent(streamId, id -> new Addresses()).add(address);
+        }
+    }
+
+    /**
+     * Returns the addresses of a stream within a range, in ascending order.
+     *
+     * @param streamId the stream
+     * @param start    first address of the range (inclusive)
+     * @param end      last address of the range (inclusive)
+     */
+    public synchronized long[] get(UUID streamId, long start, long end) {
+        Addresses stream = streams.get(streamId);
+        if (stream == null || start > end) {
+            return new long[0];
+        }
+        int from = Arrays.binarySearch(stream.addresses, 0, stream.size, start);
+        from = from < 0 ? -from - 1 : from;
+        int to = Arrays.binarySearch(stream.addresses, 0, stream.size, end);
+        to = to < 0 ? -to - 1 : to + 1;
+        return Arrays.copyOfRange(stream.addresses, from, to);
+    }
+
+    public synchronized int size() {
+        return streams.size();
+    }
+
+    /**
+     * Adds the index to a segment index, omitting some addresses.
+     *
+     * @param index   the segment index to add the streams to
+     * @param exclude addresses that shouldn't be persisted (i.e. addresses that are
+     *                removed from the segment)
+     */
+    public synchronized void writeTo(SegmentIndex.Builder index, LongPredicate exclude) {
+        for (Map.Entry<UUID, Addresses> entry : streams.entrySet()) {
+            StreamIndex.Builder stream = StreamIndex.newBuilder()
+                    .setStreamMsb(entry.getKey().getMostSignificantBits())
+                    .setStreamLsb(entry.getKey().getLeastSignificantBits());
+            Addresses addresses = entry.getValue();
+            for (int i = 0; i < addresses.size; i++) {
+                if (!exclude.test(addresses.addresses[i])) {
+                    stream.addAddress(addresses.addresses[i]);
+                }
+            }
+            if (stream.getAddressCount() > 0) {
+                index.addStreams(stream);
+            }
+        }
+        index.setStreamsIndexed(true);
+    }
+
+    /**
+     * Loads the streams of a persisted segment index.
+     *
+     * @param index the segment index to load the streams from
+     */
+    public synchronized void readFrom(SegmentIndex index) {
+        for (StreamIndex stream : index.getStreamsList()) {
+            Addresses addresses = streams.computeIfAbsent(
+                    new UUID(stream.getStreamMsb(), stream.getStreamLsb()),
+                    id -> new Addresses());
+            for (long address : stream.getAddressList()) {
+                addresses.add(address);
+            }
+        }
+    }
+}
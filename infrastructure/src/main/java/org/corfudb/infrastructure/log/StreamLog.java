@@ -2,12 +2,22 @@ package org.corfudb.infrastructure.log;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import org.corfudb.protocols.wireprotocol.LogData;
 
 /**
  * An interface definition that specifies an api to interact with a StreamLog.
  *
+ * <p>The async variant of the batch read returns a future instead of blocking the caller.
+ * Its default implementation runs the read on the calling thread, which is only
+ * suitable for logs that don't do I/O; a log backed by disks runs it on its own I/O
+ * threads instead. Writes are grouped and synced by the
+ * {@link org.corfudb.infrastructure.BatchWriter}, which runs them on its own thread.
+ *
  * <p>Created by maithem on 7/15/16.
  */
 
@@ -36,6 +46,35 @@ public interface StreamLog {
      */
     LogData read(long address);
 
+    /**
+     * Read the entries at a list of addresses in a single batch, which lets the log
+     * order and merge the reads.
+     *
+     * @param addresses addresses to read from the log, in any order
+     * @return the entries that exist, keyed by their addresses in ascending order
+     */
+    default Map<Long, LogData> readAll(List<Long> addresses) {
+        Map<Long, LogData> entries = new TreeMap<>();
+        for (long address : addresses) {
+            LogData entry = read(address);
+            if (entry != null) {
+                entries.put(address, entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Get the addresses of a stream within a range of the address space, trimmed
+     * addresses are omitted.
+     *
+     * @param streamId the stream to get the addresses of
+     * @param start    first address of the range (inclusive)
+     * @param end      last address of the range (inclusive)
+     * @return the addresses of the stream, in ascending order
+     */
+    List<Long> getStreamAddresses(UUID streamId, long start, long end);
+
     /**
      * Mark a StreamLog address as trimmed.
      * @param address  address to trim from the log
@@ -70,6 +109,31 @@ public interface StreamLog {
      */
     void sync(boolean force) throws IOException;
 
+    /**
+     * Read the entries at a list of addresses without blocking the caller.
+     *
+     * @param addresses addresses to read from the log, in any order
+     * @return a future for the entries that exist, keyed by their addresses
+     */
+    default CompletableFuture<Map<Long, LogData>> readAllAsync(List<Long> addresses) {
+        return CompletableFuture.supplyAsync(() -> readAll(addresses), Runnable::run);
+    }
+
+    /**
+     * Get the addresses of a stream within a range of the address space without blocking
+     * the caller.
+     *
+     * @param streamId the stream to get the addresses of
+     * @param start    first address of the range (inclusive)
+     * @param end      last address of the range (inclusive)
+     * @return a future for the addresses of the stream, in ascending order
+     */
+    default CompletableFuture<List<Long>> getStreamAddressesAsync(UUID streamId, long start,
+                                                                  long end) {
+        return CompletableFuture.supplyAsync(() -> getStreamAddresses(streamId, start, end),
+                Runnable::run);
+    }
+
     /**
      * Close the stream log.
      */
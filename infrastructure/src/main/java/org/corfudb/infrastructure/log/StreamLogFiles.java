@@ -1,11 +1,16 @@
 package org.corfudb.infrastructure.log;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.AbstractMessage;
-import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UnsafeByteOperations;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
@@ -16,31 +21,59 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
 
+import lombok.Data;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import org.apache.commons.io.FileUtils;
@@ -48,6 +81,7 @@ import org.corfudb.format.Types;
 import org.corfudb.format.Types.LogEntry;
 import org.corfudb.format.Types.LogHeader;
 import org.corfudb.format.Types.Metadata;
+import org.corfudb.format.Types.SegmentIndex;
 import org.corfudb.format.Types.TrimEntry;
 import org.corfudb.infrastructure.ServerContext;
 import org.corfudb.protocols.logprotocol.CheckpointEntry;
@@ -75,18 +109,171 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
             .build()
             .getSerializedSize();
     public static int VERSION = 2;
+    /**
+     * The default number of records per segment, for logs created without
+     * --log-segment-records.
+     */
     public static int RECORDS_PER_LOG_FILE = 10000;
+    private static final int BYTES_PER_MB = 1024 * 1024;
+    private static final long EXECUTOR_SHUTDOWN_TIMEOUT_SECONDS = 10;
+    private static final int DEFAULT_IO_THREADS = 4;
+    private static final long IO_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * A batched read merges two records into a single read when at most this many bytes
+     * separate them, and as long as the merged read stays under {@link #MAX_MERGED_READ}.
+     */
+    private static final int MAX_MERGED_READ_GAP = 64 * 1024;
+    private static final int MAX_MERGED_READ = 1024 * 1024;
+
+    public static final String MERGED_READS_METRIC = "logunit.reads.merged";
+    private final Meter mergedReads;
+    private static final long DEFAULT_SCRUB_INTERVAL_MINUTES = 60;
+
+    /**
+     * The number of corrupt addresses reported by the {@link #CORRUPT_ADDRESSES_METRIC}
+     * gauge, the lowest ones are reported.
+     */
+    static final int MAX_REPORTED_CORRUPT_ADDRESSES = 100;
     public static int TRIM_THRESHOLD = (int) (.25 * RECORDS_PER_LOG_FILE);
     public final String logDir;
+
+    /**
+     * The directories the segments are striped over, segment n is stored in directory
+     * n modulo the number of directories. The first directory is {@link #logDir}, the
+     * others are given by --log-dirs and are expected to be on other disks.
+     */
+    @Getter
+    private final List<String> logDirs;
     private final boolean noVerify;
     private final ServerContext serverContext;
     private final AtomicLong globalTail = new AtomicLong(0L);
-    private Map<String, SegmentHandle> writeChannels;
-    private Set<FileChannel> channelsToSync;
+    private volatile Map<String, SegmentHandle> writeChannels;
+
+    /**
+     * The handles of recently accessed segments, indexed by segment number modulo
+     * {@link #HOT_HANDLES}. Segment handles are looked up without locking the log, the
+     * cache spares the lookups of hot segments from building the segment file path and
+     * searching the open segments for it.
+     */
+    private static final int HOT_HANDLES = 16;
+    private final AtomicReferenceArray<SegmentHandle> hotHandles =
+            new AtomicReferenceArray<>(HOT_HANDLES);
+
+    /**
+     * The maximum number of open segments, or 0 if it isn't limited. Each open segment
+     * holds four file channels, so the least recently used segments behind the tail are
+     * closed when there are more, and are opened again when they're accessed.
+     */
+    private final int maxOpenSegments;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final Set<Long> evictedSegments = ConcurrentHashMap.newKeySet();
+
+    public static final String OPEN_SEGMENTS_METRIC = "logunit.segments.open";
+    public static final String SEGMENT_REOPENS_METRIC = "logunit.segments.reopens";
+    private final Meter segmentReopens;
+
+    /**
+     * The channels written since the last sync, per log directory.
+     */
+    private final List<Set<FileChannel>> channelsToSync;
     private MultiReadWriteLock segmentLocks = new MultiReadWriteLock();
     private long lastSegment;
     private volatile long startingAddress;
 
+    /**
+     * Number of addresses in a segment. It's fixed when the log is created, segments
+     * are located by address so it can't change without rewriting the log.
+     */
+    @Getter
+    private final int recordsPerSegment;
+
+    /**
+     * Minimum number of pending trims for a sealed segment to be compacted.
+     */
+    private final int trimThreshold;
+
+    /**
+     * Number of segments created ahead of the tail segment, so that appends don't
+     * create files.
+     */
+    private final int segmentsToPreallocate;
+
+    private final ExecutorService preallocator;
+
+    /**
+     * Run the async operations on the disk of each log directory, so that their callers
+     * (i.e. the Netty event loop) never block on disk I/O, and a slow disk doesn't delay
+     * the operations on the other disks.
+     */
+    private final List<ThreadPoolExecutor> ioExecutors = new ArrayList<>();
+
+    /**
+     * Syncs the log directories in parallel when there are several of them, or null.
+     */
+    private final ExecutorService syncExecutor;
+
+    /**
+     * True if segments are appended to with direct I/O until they're sealed, see
+     * {@link DirectAppender}. It's turned off if the log directories don't support it.
+     */
+    private volatile boolean directIo;
+
+    /**
+     * True if cold sealed segments are compressed by the compaction pass.
+     */
+    private final boolean compressSegments;
+
+    /**
+     * Handles that were replaced by the handle of their compressed segment. The segment
+     * file can only be truncated once the replaced handle is closed, since its readers
+     * read the records from the segment file.
+     */
+    private final Map<String, SegmentHandle> uncompressedHandles = new ConcurrentHashMap<>();
+
+    /**
+     * Serializes sparse compactions, which only lock the log to swap in a segment.
+     */
+    private final Object compactionLock = new Object();
+
+    /**
+     * Limits the rate in bytes per second at which segments are rewritten by sparse
+     * compaction, or null if the rate isn't limited.
+     */
+    private final RateLimiter compactionRateLimiter;
+
+    public static final String RECOVERY_PROGRESS_METRIC = "logunit.recovery.progress";
+    private final AtomicInteger recoveredSegments = new AtomicInteger();
+    private final AtomicInteger segmentsToRecover = new AtomicInteger();
+
+    /**
+     * True if record checksums are verified when records are read from disk and by the
+     * scrubber, rather than when a segment is opened.
+     */
+    private final boolean verifyOnRead;
+
+    /**
+     * Periodically verifies the sealed segments in the background, every
+     * --log-scrub-interval minutes.
+     */
+    private final ScheduledExecutorService scrubber;
+
+    /**
+     * Limits the rate in bytes per second at which the scrubber reads segments, or null
+     * if the rate isn't limited.
+     */
+    private final RateLimiter scrubRateLimiter;
+
+    public static final String SCRUB_PROGRESS_METRIC = "logunit.scrubber.progress";
+    public static final String CORRUPT_RECORDS_METRIC = "logunit.corrupt-records";
+    public static final String CORRUPT_ADDRESSES_METRIC = "logunit.corrupt-addresses";
+    public static final String CORRUPT_SEGMENTS_METRIC = "logunit.corrupt-segments";
+    private final AtomicInteger scrubbedSegments = new AtomicInteger();
+    private final AtomicInteger segmentsToScrub = new AtomicInteger();
+    private final AtomicLong corruptRecords = new AtomicLong();
+    private final AtomicLong corruptSegments = new AtomicLong();
+    private final NavigableSet<Long> corruptAddresses = new ConcurrentSkipListSet<>();
+
     /**
      * Returns a file-based stream log object.
      * @param serverContext  Context object that provides server state such as epoch,
@@ -95,26 +282,226 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
      */
     public StreamLogFiles(ServerContext serverContext, boolean noVerify) {
         logDir = serverContext.getServerConfig().get("--log-path") + File.separator + "log";
-        File dir = new File(logDir);
-        if (!dir.exists()) {
-            dir.mkdirs();
+        this.noVerify = noVerify;
+        this.serverContext = serverContext;
+        logDirs = initializeLogDirs();
+        channelsToSync = new ArrayList<>();
+        for (String path : logDirs) {
+            File dir = new File(path);
+            if (!dir.exists()) {
+                dir.mkdirs();
+            }
+            channelsToSync.add(ConcurrentHashMap.newKeySet());
         }
 
         writeChannels = new ConcurrentHashMap();
-        channelsToSync = new HashSet<>();
-        this.noVerify = noVerify;
-        this.serverContext = serverContext;
-        verifyLogs();
-        // Starting address initialization should happen before
-        // initializing the tail segment (i.e. initializeMaxGlobalAddress)
+
+        String maxOpen = (String) serverContext.getServerConfig()
+                .get("--log-max-open-segments");
+        maxOpenSegments = maxOpen == null ? 0 : Integer.parseInt(maxOpen);
+        ServerContext.getMetrics().remove(OPEN_SEGMENTS_METRIC);
+        ServerContext.getMetrics().register(OPEN_SEGMENTS_METRIC,
+                (Gauge<Integer>) () -> writeChannels.size());
+        ServerContext.getMetrics().remove(SEGMENT_REOPENS_METRIC);
+        segmentReopens = ServerContext.getMetrics().meter(SEGMENT_REOPENS_METRIC);
+        ServerContext.getMetrics().remove(MERGED_READS_METRIC);
+        mergedReads = ServerContext.getMetrics().meter(MERGED_READS_METRIC);
+
+        compactionRateLimiter = getRateLimiter("--compaction-rate");
+        scrubRateLimiter = getRateLimiter("--log-scrub-rate");
+
+        compressSegments = Boolean.TRUE.equals(serverContext.getServerConfig()
+                .get("--log-segment-compression"));
+        directIo = Boolean.TRUE.equals(serverContext.getServerConfig().get("--log-direct-io"));
+        if (directIo && !DirectAppender.isSupported()) {
+            log.warn("StreamLogFiles: direct I/O requires Java 10 or later, appending through"
+                    + " the page cache");
+            directIo = false;
+        }
+        verifyOnRead = !noVerify && Boolean.TRUE.equals(serverContext.getServerConfig()
+                .get("--log-lazy-verify"));
+
+        recordsPerSegment = initializeRecordsPerSegment();
+        trimThreshold = recordsPerSegment / 4;
+
+        String preallocate = (String) serverContext.getServerConfig()
+                .get("--log-segment-preallocate");
+        segmentsToPreallocate = preallocate == null ? 0 : Integer.parseInt(preallocate);
+        preallocator = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("LogUnit-Segment-Preallocator-%d")
+                .build());
+
+        String ioThreads = (String) serverContext.getServerConfig().get("--log-io-threads");
+        int ioThreadCount = ioThreads == null ? DEFAULT_IO_THREADS : Integer.parseInt(ioThreads);
+        for (int disk = 0; disk < logDirs.size(); disk++) {
+            ThreadPoolExecutor ioExecutor = new ThreadPoolExecutor(ioThreadCount,
+                    ioThreadCount, IO_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+                            .setDaemon(true)
+                            .setNameFormat("LogUnit-IO-" + disk + "-%d")
+                            .build());
+            ioExecutor.allowCoreThreadTimeOut(true);
+            ioExecutors.add(ioExecutor);
+        }
+        syncExecutor = logDirs.size() == 1 ? null
+                : Executors.newFixedThreadPool(logDirs.size(), new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("LogUnit-Sync-%d")
+                        .build());
+
+        // Starting address initialization should happen before recovering the
+        // segments and initializing the tail segment (i.e. initializeMaxGlobalAddress)
         initializeStartingAddress();
+        // The recovery keeps the tail segment open, it's the last segment once recovered
+        lastSegment = serverContext.getTailSegment();
+        recoverLogs();
         initializeMaxGlobalAddress();
+        evictColdSegments();
 
         // This can happen if a prefix trim happens on
         // addresses that haven't been written
         if (getGlobalTail() < getTrimMark()) {
             syncTailSegment(getTrimMark() - 1);
         }
+
+        preallocateSegments(lastSegment);
+
+        ServerContext.getMetrics().remove(SCRUB_PROGRESS_METRIC);
+        ServerContext.getMetrics().register(SCRUB_PROGRESS_METRIC,
+                (Gauge<Double>) this::getScrubProgress);
+        ServerContext.getMetrics().remove(CORRUPT_RECORDS_METRIC);
+        ServerContext.getMetrics().register(CORRUPT_RECORDS_METRIC,
+                (Gauge<Long>) corruptRecords::get);
+        ServerContext.getMetrics().remove(CORRUPT_ADDRESSES_METRIC);
+        ServerContext.getMetrics().register(CORRUPT_ADDRESSES_METRIC,
+                (Gauge<List<Long>>) this::getCorruptAddresses);
+        ServerContext.getMetrics().remove(CORRUPT_SEGMENTS_METRIC);
+        ServerContext.getMetrics().register(CORRUPT_SEGMENTS_METRIC,
+                (Gauge<Long>) corruptSegments::get);
+
+        scrubber = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("LogUnit-Scrubber-%d")
+                .build());
+        String scrubInterval = (String) serverContext.getServerConfig()
+                .get("--log-scrub-interval");
+        long scrubIntervalMinutes = scrubInterval != null ? Long.parseLong(scrubInterval)
+                : verifyOnRead ? DEFAULT_SCRUB_INTERVAL_MINUTES : 0;
+        if (scrubIntervalMinutes > 0) {
+            // An exception would cancel the subsequent scrubs
+            Runnable task = () -> {
+                try {
+                    scrub();
+                } catch (RuntimeException e) {
+                    log.error("scrub: failed to scrub the log", e);
+                }
+            };
+            scrubber.scheduleWithFixedDelay(task, scrubIntervalMinutes,
+                    scrubIntervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Returns a rate limiter for a rate option in MB/s, or null if the option isn't set
+     * or the rate is 0.
+     */
+    private RateLimiter getRateLimiter(String option) {
+        String rate = (String) serverContext.getServerConfig().get(option);
+        if (rate != null && Double.parseDouble(rate) > 0) {
+            return RateLimiter.create(Double.parseDouble(rate) * BYTES_PER_MB);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the directories the segments of the log are striped over. A new log is
+     * created with {@link #logDir} followed by the directories of --log-dirs, an existing
+     * log keeps the directories it was created with, since a segment is located by its
+     * number.
+     */
+    private List<String> initializeLogDirs() {
+        List<String> configured = new ArrayList<>();
+        configured.add(logDir);
+        String extraDirs = (String) serverContext.getServerConfig().get("--log-dirs");
+        if (extraDirs != null) {
+            for (String path : extraDirs.split(",")) {
+                if (!path.trim().isEmpty() && !configured.contains(path.trim())) {
+                    configured.add(path.trim());
+                }
+            }
+        }
+
+        String persisted = serverContext.getLogDirs();
+        if (persisted == null) {
+            serverContext.setLogDirs(String.join(",", configured));
+            return configured;
+        }
+
+        List<String> dirs = Arrays.asList(persisted.split(","));
+        if (!dirs.equals(configured)) {
+            log.warn("initializeLogDirs: Log was created with directories {},"
+                    + " ignoring configured {}", dirs, configured);
+        }
+        return dirs;
+    }
+
+    /**
+     * Returns the number of records per segment of the log. A new log is created with
+     * the configured number, an existing log keeps the number it was created with. The
+     * segments of a log created before the number was persisted hold RECORDS_PER_LOG_FILE
+     * records.
+     */
+    private int initializeRecordsPerSegment() {
+        String configured = (String) serverContext.getServerConfig().get("--log-segment-records");
+        int configuredRecords = configured == null ? RECORDS_PER_LOG_FILE
+                : Integer.parseInt(configured);
+        if (configuredRecords <= 0) {
+            throw new IllegalArgumentException("Records per segment must be positive: "
+                    + configuredRecords);
+        }
+
+        Integer persisted = serverContext.getLogSegmentRecords();
+        if (persisted == null) {
+            int records = listSegmentFiles().isEmpty() ? configuredRecords : RECORDS_PER_LOG_FILE;
+            if (records != configuredRecords) {
+                log.warn("initializeRecordsPerSegment: existing log has {} records per segment,"
+                        + " ignoring configured {}", records, configuredRecords);
+            }
+            serverContext.setLogSegmentRecords(records);
+            return records;
+        }
+
+        if (persisted != configuredRecords) {
+            log.warn("initializeRecordsPerSegment: log was created with {} records per segment,"
+                    + " ignoring configured {}", persisted, configuredRecords);
+        }
+        return persisted;
+    }
+
+    /**
+     * Creates the files of the segments that follow a segment in the background.
+     *
+     * @param segment the tail segment
+     */
+    private void preallocateSegments(long segment) {
+        for (long next = segment + 1; next <= segment + segmentsToPreallocate; next++) {
+            final long nextSegment = next;
+            try {
+                preallocator.execute(() -> {
+                    try {
+                        writeChannels.computeIfAbsent(getSegmentFilePath(nextSegment),
+                                filePath -> openSegmentHandle(filePath, nextSegment));
+                    } catch (RuntimeException e) {
+                        log.warn("preallocateSegments: failed to preallocate segment {}",
+                                nextSegment, e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                log.trace("preallocateSegments: log is closed, not preallocating {}",
+                        nextSegment);
+            }
+        }
     }
 
     public static String getPendingTrimsFilePath(String segmentPath) {
@@ -125,6 +512,14 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
         return segmentPath + ".trimmed";
     }
 
+    public static String getSegmentIndexFilePath(String segmentPath) {
+        return segmentPath + ".index";
+    }
+
+    public static String getCompressedFilePath(String segmentPath) {
+        return segmentPath + ".compressed";
+    }
+
     /**
      * Write the header for a Corfu log file.
      *
@@ -147,20 +542,15 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
     }
 
     public static Metadata getMetadata(AbstractMessage message) {
-        return Metadata.newBuilder()
-                .setPayloadChecksum(getChecksum(message.toByteArray()))
-                .setLengthChecksum(getChecksum(message.getSerializedSize()))
-                .setLength(message.getSerializedSize())
-                .build();
+        return getMetadata(message.toByteArray());
     }
 
-    public static ByteBuffer getByteBuffer(Metadata metadata, AbstractMessage message) {
-        ByteBuffer buf = ByteBuffer.allocate(metadata.getSerializedSize()
-                + message.getSerializedSize());
-        buf.put(metadata.toByteArray());
-        buf.put(message.toByteArray());
-        buf.flip();
-        return buf;
+    static Metadata getMetadata(byte[] payload) {
+        return Metadata.newBuilder()
+                .setPayloadChecksum(getChecksum(payload))
+                .setLengthChecksum(getChecksum(payload.length))
+                .setLength(payload.length)
+                .build();
     }
 
     public static ByteBuffer getByteBufferWithMetaData(AbstractMessage message) {
@@ -180,12 +570,7 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
      * @return       checksum of bytes
      */
     public static int getChecksum(byte[] bytes) {
-        Hasher hasher = Hashing.crc32c().newHasher();
-        for (byte a : bytes) {
-            hasher.putByte(a);
-        }
-
-        return hasher.hash().asInt();
+        return Checksums.crc32c(bytes);
     }
 
     static int getChecksum(long num) {
@@ -208,10 +593,11 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
         // an atomic operation, it is possible to set an incorrect tail segment. In
         // that case we will need to scan more than one segment
         globalTail.getAndUpdate(maxTail -> address > maxTail ? address : maxTail);
-        long segment = address / RECORDS_PER_LOG_FILE;
+        long segment = address / recordsPerSegment;
         if (lastSegment < segment) {
             serverContext.setTailSegment(segment);
             lastSegment = segment;
+            preallocateSegments(segment);
         }
     }
 
@@ -227,6 +613,7 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
             long newStartingAddress = address + 1;
             serverContext.setStartingAddress(newStartingAddress);
             startingAddress = newStartingAddress;
+            corruptAddresses.headSet(newStartingAddress).clear();
             syncTailSegment(address);
             log.debug("Trimmed prefix, new starting address {}", newStartingAddress);
         }
@@ -245,12 +632,12 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
 
     private void initializeMaxGlobalAddress() {
         long tailSegment = serverContext.getTailSegment();
-        long addressInTailSegment = (tailSegment * RECORDS_PER_LOG_FILE) + 1;
+        long addressInTailSegment = (tailSegment * recordsPerSegment) + 1;
         SegmentHandle sh = getSegmentHandleForAddress(addressInTailSegment);
 
         try {
 
-            for (long address : sh.getKnownAddresses().keySet()) {
+            for (long address : sh.getKnownAddresses().addresses()) {
                 globalTail.getAndUpdate(maxTail -> address > maxTail
                         ? address : maxTail);
             }
@@ -262,54 +649,402 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
         lastSegment = tailSegment;
     }
 
-    private void verifyLogs() {
-        String[] extension = {"log"};
-        File dir = new File(logDir);
+    /**
+     * Verifies the header of every segment file and loads the address space of the
+     * segments that haven't been prefix trimmed. Segments are processed in parallel on
+     * a pool bounded by the number of processors, recovery progress is published
+     * through the {@link #RECOVERY_PROGRESS_METRIC} gauge.
+     *
+     * <p>Errors are reported in segment order regardless of the order in which the
+     * segments were processed. An invalid header fails the recovery with the error
+     * of the lowest failing segment, a segment whose address space can't be loaded
+     * is only logged and is loaded again (and fails) when it's accessed.
+     *
+     * <p>No more than --log-max-open-segments segments are kept open, the others are
+     * closed once their address space is loaded.
+     */
+    private void recoverLogs() {
+        Set<File> files = listSegmentFiles();
+        if (files.isEmpty()) {
+            return;
+        }
 
-        if (dir.exists()) {
-            Collection<File> files = FileUtils.listFiles(dir, extension, true);
+        long firstLiveSegment = startingAddress / recordsPerSegment;
+        recoveredSegments.set(0);
+        segmentsToRecover.set(files.size());
+        ServerContext.getMetrics().remove(RECOVERY_PROGRESS_METRIC);
+        ServerContext.getMetrics().register(RECOVERY_PROGRESS_METRIC,
+                (Gauge<Double>) this::getRecoveryProgress);
 
+        int parallelism = Math.min(Runtime.getRuntime().availableProcessors(), files.size());
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        List<SegmentRecovery> results = new ArrayList<>();
+        try {
+            List<Callable<SegmentRecovery>> tasks = new ArrayList<>();
             for (File file : files) {
-                try (FileInputStream fsIn = new FileInputStream(file)) {
-                    FileChannel fc = fsIn.getChannel();
-                    LogHeader header = parseHeader(fc);
-                    fc.close();
-                    fsIn.close();
-
-                    if (header == null) {
-                        log.warn("verifyLogs: Ignoring partially written header in {}", file.getAbsoluteFile());
-                        continue;
-                    }
+                tasks.add(() -> recoverSegment(file, firstLiveSegment));
+            }
+            for (Future<SegmentRecovery> result : pool.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdown();
+        }
 
-                    if (header.getVersion() != VERSION) {
-                        String msg = String.format("Log version %s for %s should match "
-                                + "the logunit log version %s",
-                                header.getVersion(), file.getAbsoluteFile(), VERSION);
-                        throw new RuntimeException(msg);
-                    }
+        results.sort(Comparator.comparing(SegmentRecovery::getSegment,
+                Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(SegmentRecovery::getFileName));
+        RuntimeException fatal = null;
+        for (SegmentRecovery result : results) {
+            if (result.getInvalidHeader() != null) {
+                if (fatal == null) {
+                    fatal = result.getInvalidHeader();
+                } else {
+                    fatal.addSuppressed(result.getInvalidHeader());
+                }
+            } else if (result.getLoadFailure() != null) {
+                log.error("recoverLogs: Failed to load the address space of {}",
+                        result.getFileName(), result.getLoadFailure());
+            }
+        }
 
-                    if (!noVerify && !header.getVerifyChecksum()) {
-                        String msg = String.format("Log file %s not generated with "
-                                + "checksums, can't verify!", file.getAbsoluteFile());
-                        throw new RuntimeException(msg);
+        if (fatal != null) {
+            throw fatal;
+        }
+
+        log.info("recoverLogs: Recovered {} segment files with parallelism {}",
+                files.size(), parallelism);
+    }
+
+    /**
+     * The outcome of recovering a single segment file.
+     */
+    @Data
+    private static class SegmentRecovery {
+        private final String fileName;
+        /** The segment number, or null if the file isn't named after a segment. */
+        private final Long segment;
+        private RuntimeException invalidHeader;
+        private Exception loadFailure;
+    }
+
+    private SegmentRecovery recoverSegment(File file, long firstLiveSegment) {
+        Long segment = getSegmentNumber(file);
+        SegmentRecovery result = new SegmentRecovery(file.getName(), segment);
+        try {
+            result.setInvalidHeader(verifyHeader(file));
+
+            if (result.getInvalidHeader() == null && segment != null
+                    && segment >= firstLiveSegment) {
+                String filePath = getSegmentFilePath(segment);
+                if (!new File(filePath).equals(file)) {
+                    throw new IllegalStateException("Segment file " + file + " isn't in its"
+                            + " log directory, expected " + filePath);
+                }
+                try {
+                    SegmentHandle sh = writeChannels.computeIfAbsent(filePath,
+                            path -> openSegmentHandle(path, segment));
+                    // Past the cap, a segment behind the tail is closed once it's loaded and
+                    // opened again when it's accessed
+                    if (maxOpenSegments > 0 && writeChannels.size() > maxOpenSegments
+                            && segment < lastSegment && sh.tryRetire()) {
+                        writeChannels.remove(filePath, sh);
+                        evictedSegments.add(segment);
+                        sh.close();
                     }
+                } catch (RuntimeException e) {
+                    result.setLoadFailure(e);
+                }
+            }
+        } catch (IOException e) {
+            result.setInvalidHeader(new RuntimeException(e.getMessage(), e));
+        } catch (RuntimeException e) {
+            result.setInvalidHeader(e);
+        }
 
-                } catch (IOException e) {
-                    throw new RuntimeException(e.getMessage(), e);
+        int recovered = recoveredSegments.incrementAndGet();
+        log.debug("recoverSegment: Recovered {} ({}/{})", file.getName(), recovered,
+                segmentsToRecover.get());
+        return result;
+    }
+
+    /**
+     * Checks that a segment file was written with the current log version and with
+     * checksums when they are verified.
+     *
+     * @param file segment file to check
+     * @return the error that describes an invalid header, or null if the header is valid
+     */
+    private RuntimeException verifyHeader(File file) throws IOException {
+        LogHeader header;
+        try (FileInputStream fsIn = new FileInputStream(file)) {
+            header = parseHeader(fsIn.getChannel());
+        }
+
+        if (header == null) {
+            log.warn("verifyLogs: Ignoring partially written header in {}",
+                    file.getAbsoluteFile());
+            return null;
+        }
+
+        if (header.getVersion() != VERSION) {
+            String msg = String.format("Log version %s for %s should match "
+                            + "the logunit log version %s",
+                    header.getVersion(), file.getAbsoluteFile(), VERSION);
+            return new RuntimeException(msg);
+        }
+
+        if (!noVerify && !header.getVerifyChecksum()) {
+            String msg = String.format("Log file %s not generated with "
+                    + "checksums, can't verify!", file.getAbsoluteFile());
+            return new RuntimeException(msg);
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the segment number of a segment file, or null if the file isn't named
+     * after a segment.
+     */
+    private static Long getSegmentNumber(File file) {
+        try {
+            return Long.parseLong(file.getName().split("\\.")[0]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The fraction of segment files processed by the last recovery, 1.0 once the
+     * recovery completed.
+     */
+    public double getRecoveryProgress() {
+        int total = segmentsToRecover.get();
+        return total == 0 ? 1.0 : (double) recoveredSegments.get() / total;
+    }
+
+    /**
+     * The fraction of segments processed by the current scrub, 1.0 once the scrub
+     * completed.
+     */
+    public double getScrubProgress() {
+        int total = segmentsToScrub.get();
+        return total == 0 ? 1.0 : (double) scrubbedSegments.get() / total;
+    }
+
+    /**
+     * The number of records that failed checksum verification since the log was opened.
+     */
+    public long getCorruptRecordCount() {
+        return corruptRecords.get();
+    }
+
+    /**
+     * The number of segments the scrubber failed to verify, because they couldn't be
+     * opened or read, since the log was opened.
+     */
+    public long getCorruptSegmentCount() {
+        return corruptSegments.get();
+    }
+
+    /**
+     * The lowest addresses, up to {@link #MAX_REPORTED_CORRUPT_ADDRESSES} of them, whose
+     * records failed verification and haven't been trimmed since.
+     */
+    public List<Long> getCorruptAddresses() {
+        return corruptAddresses.tailSet(startingAddress).stream()
+                .limit(MAX_REPORTED_CORRUPT_ADDRESSES)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Verifies the checksums of the records of every sealed segment, reading at most
+     * --log-scrub-rate MB/s. Progress is reported through the
+     * {@link #SCRUB_PROGRESS_METRIC} gauge, and the records that fail verification through
+     * the {@link #CORRUPT_RECORDS_METRIC} and {@link #CORRUPT_ADDRESSES_METRIC} gauges. A
+     * segment that can't be opened or read is counted by the {@link #CORRUPT_SEGMENTS_METRIC}
+     * gauge, and the other segments are still verified.
+     *
+     * @return the addresses of the records that failed verification, in ascending order
+     */
+    public List<Long> scrub() {
+        long firstLiveSegment = startingAddress / recordsPerSegment;
+        Set<Long> liveSegments = writeChannels.values().stream()
+                .map(SegmentHandle::getSegment)
+                .collect(Collectors.toSet());
+        liveSegments.addAll(evictedSegments);
+        List<Long> segments = liveSegments.stream()
+                .filter(segment -> segment >= firstLiveSegment)
+                .sorted()
+                .collect(Collectors.toList());
+        scrubbedSegments.set(0);
+        segmentsToScrub.set(segments.size());
+
+        List<Long> corrupt = new ArrayList<>();
+        int failedSegments = 0;
+        for (long segment : segments) {
+            SegmentHandle sh = null;
+            try {
+                sh = getOpenSegmentHandle(segment);
+                if (sh == null && evictedSegments.contains(segment)) {
+                    // Evicted segments are opened again to be verified, which fails if
+                    // their address space is corrupted
+                    sh = getSegmentHandleForAddress(segment * recordsPerSegment);
                 }
+                if (sh != null && isSealed(sh)) {
+                    scrubSegment(sh, corrupt);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("scrub: failed to scrub segment {}", segment, e);
+                corruptSegments.incrementAndGet();
+                failedSegments++;
+            } finally {
+                // A segment without a handle was removed by a prefix trim
+                if (sh != null) {
+                    sh.release();
+                }
+                scrubbedSegments.incrementAndGet();
             }
         }
+
+        log.info("scrub: verified {} segments, {} corrupt records, {} corrupt segments",
+                segments.size(), corrupt.size(), failedSegments);
+        return corrupt;
+    }
+
+    private void scrubSegment(SegmentHandle sh, List<Long> corrupt) throws IOException {
+        FileChannel fc = sh.getReadChannel();
+        for (long address : sh.getKnownAddresses().addresses()) {
+            AddressMetaData metaData = sh.getKnownAddresses().get(address);
+            if (metaData == null || sh.getPendingTrims().contains(address)) {
+                continue;
+            }
+
+            if (scrubRateLimiter != null) {
+                scrubRateLimiter.acquire(metaData.length);
+            }
+
+            try {
+                verifyRecord(address, metaData, readRecordBuffer(sh, fc, metaData));
+            } catch (DataCorruptionException e) {
+                corrupt.add(address);
+            }
+        }
+    }
+
+    /**
+     * Returns the handle of a segment if it's open, without opening it.
+     *
+     * @param segment the segment number
+     * @return the retained handle of the segment, or null if it's not open
+     */
+    private SegmentHandle getOpenSegmentHandle(long segment) {
+        String filePath = getSegmentFilePath(segment);
+        while (true) {
+            SegmentHandle handle = writeChannels.get(filePath);
+            if (handle == null || handle.tryRetain()) {
+                return handle;
+            }
+            Thread.yield();
+        }
     }
 
     @Override
     public void sync(boolean force) throws IOException {
-        if (force) {
-            for (FileChannel ch : channelsToSync) {
-                ch.force(true);
+        if (syncExecutor == null) {
+            log.debug("Sync'd {} channels", syncChannels(channelsToSync.get(0), force));
+            return;
+        }
+
+        // The disks are synced in parallel, each disk only waits for its own fsyncs
+        List<Future<Integer>> disks = new ArrayList<>();
+        for (Set<FileChannel> channels : channelsToSync) {
+            if (!channels.isEmpty()) {
+                disks.add(syncExecutor.submit(() -> syncChannels(channels, force)));
+            }
+        }
+
+        int synced = 0;
+        IOException failure = null;
+        for (Future<Integer> disk : disks) {
+            try {
+                synced += disk.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while syncing the log");
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof IOException)) {
+                    throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+                }
+                if (failure == null) {
+                    failure = (IOException) e.getCause();
+                } else {
+                    failure.addSuppressed(e.getCause());
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+        log.debug("Sync'd {} channels on {} disks", synced, disks.size());
+    }
+
+    /**
+     * Syncs the channels of a log directory.
+     *
+     * @param channels the channels written since the last sync of the directory
+     * @param force    if false, the channels are only marked as synced
+     * @return the number of synced channels
+     */
+    private int syncChannels(Set<FileChannel> channels, boolean force) throws IOException {
+        int synced = 0;
+        Iterator<FileChannel> iterator = channels.iterator();
+        while (iterator.hasNext()) {
+            FileChannel ch = iterator.next();
+            // A channel written concurrently is added back, and synced by the next sync
+            iterator.remove();
+            // Channels of a segment swapped out by compaction are forced on close
+            if (force && ch.isOpen()) {
+                try {
+                    ch.force(true);
+                } catch (IOException e) {
+                    channels.add(ch);
+                    throw e;
+                }
+                synced++;
             }
         }
-        log.debug("Sync'd {} channels", channelsToSync.size());
-        channelsToSync.clear();
+        return synced;
+    }
+
+    /**
+     * Adds a channel of a segment to the channels synced by the next sync.
+     */
+    private void addChannelToSync(SegmentHandle sh, FileChannel channel) {
+        channelsToSync.get(getLogDirIndex(sh.getSegment())).add(channel);
+    }
+
+    /**
+     * Returns the index of the directory that stores a segment in {@link #logDirs}.
+     */
+    private int getLogDirIndex(long segment) {
+        return (int) (segment % logDirs.size());
+    }
+
+    /**
+     * Returns the executor for the I/O of the disk that stores an address.
+     *
+     * @param address an address of the log
+     */
+    private ExecutorService getIoExecutor(long address) {
+        return ioExecutors.get(getLogDirIndex(address / recordsPerSegment));
     }
 
     @Override
@@ -332,7 +1067,7 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
             entry.writeDelimitedTo(outputStream);
             outputStream.flush();
             handle.getPendingTrims().add(address);
-            channelsToSync.add(handle.getPendingTrimChannel());
+            addChannelToSync(handle, handle.getPendingTrimChannel());
         } catch (IOException e) {
             log.warn("Exception while writing a trim entry {} : {}", address, e.toString());
         } finally {
@@ -341,11 +1076,23 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
     }
 
     @Override
-    public synchronized void compact() {
+    public void compact() {
         if (startingAddress == 0) {
-            spaseCompact();
+            // Sparse compaction only locks the log while swapping in a compacted segment
+            synchronized (compactionLock) {
+                spaseCompact();
+            }
         } else {
-            trimPrefix();
+            synchronized (this) {
+                trimPrefix();
+            }
+        }
+
+        if (compressSegments) {
+            synchronized (compactionLock) {
+                compressSealedSegments();
+                reclaimCompressedSegments();
+            }
         }
     }
 
@@ -357,7 +1104,7 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
     private void trimPrefix() {
         // Trim all segments up till the segment that contains the starting address
         // (i.e. trim only complete segments)
-        long endSegment = (startingAddress / RECORDS_PER_LOG_FILE) - 1;
+        long endSegment = (startingAddress / recordsPerSegment) - 1;
 
         if (endSegment <= 0) {
             log.debug("Only one segment detected, ignoring trim");
@@ -383,63 +1130,139 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
     private void spaseCompact() {
         //TODO(Maithem) Open all segment handlers?
         for (SegmentHandle sh : writeChannels.values()) {
-            Set<Long> pending = new HashSet(sh.getPendingTrims());
-            Set<Long> trimmed = sh.getTrimmedAddresses();
-
-            if (sh.getKnownAddresses().size() + trimmed.size() != RECORDS_PER_LOG_FILE) {
-                log.info("Log segment still not complete, skipping");
+            // Retained so that the segment isn't evicted while it's compacted
+            if (!sh.tryRetain()) {
                 continue;
             }
 
-            pending.removeAll(trimmed);
+            try {
+                Set<Long> pending = sh.getPendingTrims().toSet();
+                Set<Long> trimmed = sh.getTrimmedAddresses().toSet();
 
-            //what if pending size  == knownaddresses size ?
-            if (pending.size() < TRIM_THRESHOLD) {
-                log.trace("Thresh hold not exceeded. Ratio {} threshold {}",
-                            pending.size(), TRIM_THRESHOLD);
-                return; // TODO - should not return if compact on ranked address space is necessary
-            }
+                if (!isSealed(sh)) {
+                    log.info("Log segment still not complete, skipping");
+                    continue;
+                }
+
+                pending.removeAll(trimmed);
+
+                //what if pending size  == knownaddresses size ?
+                if (pending.size() < trimThreshold) {
+                    log.trace("Thresh hold not exceeded. Ratio {} threshold {}",
+                                pending.size(), trimThreshold);
+                    continue;
+                }
 
-            try {
                 log.info("Starting compaction, pending entries size {}", pending.size());
-                trimLogFile(sh.getFileName(), pending);
+                compactSegment(sh, pending);
             } catch (IOException e) {
                 log.error("Compact operation failed for file {}, {}", sh.getFileName(), e);
+            } finally {
+                sh.release();
             }
         }
     }
 
-    private void trimLogFile(String filePath, Set<Long> pendingTrim) throws IOException {
-        try (FileChannel fc = FileChannel.open(FileSystems.getDefault().getPath(filePath + ".copy"),
-                EnumSet.of(StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE,
-                        StandardOpenOption.CREATE, StandardOpenOption.SPARSE))) {
+    /**
+     * Rewrites a sealed segment without its pending trims, and swaps the rewritten
+     * segment in.
+     *
+     * <p>Records are copied one at a time from a snapshot of the segment's address space
+     * without holding the segment lock, at most at the configured compaction rate. The
+     * index and the trimmed addresses of the rewritten segment are prepared next to it,
+     * so the segment write lock is only held to check that the segment didn't change
+     * since the snapshot, rename the prepared files into place and load the new handle
+     * from its index. If the segment changed, it's compacted again on the next run.
+     *
+     * @param sh          handle of a sealed segment
+     * @param pendingTrim addresses to remove from the segment
+     */
+    private void compactSegment(SegmentHandle sh, Set<Long> pendingTrim) throws IOException {
+        final String filePath = sh.getFileName();
+        final long segment = sh.getSegment();
+        final Path copyPath = Paths.get(filePath + ".copy");
+        final Path copyIndexPath = Paths.get(getSegmentIndexFilePath(filePath) + ".copy");
+        final Path copyTrimmedPath = Paths.get(getTrimmedFilePath(filePath) + ".copy");
 
-            CompactedEntry log = getCompactedEntries(filePath, pendingTrim);
+        // Segments are compacted from the segment file
+        if (sh.getCompressedSegment() != null) {
+            restoreSegment(sh);
+        }
 
-            LogHeader header = log.getLogHeader();
-            Collection<LogEntry> compacted = log.getEntries();
+        long snapshotSize;
+        long[] addresses;
+        try (MultiReadWriteLock.AutoCloseableLock ignored =
+                     segmentLocks.acquireReadLock(segment)) {
+            snapshotSize = sh.getWriteChannel().size();
+            addresses = sh.getKnownAddresses().addresses();
+        }
+
+        LogHeader header;
+        try (FileChannel headerCh = getChannel(filePath, true)) {
+            header = parseHeader(headerCh);
+        }
 
+        SegmentIndex.Builder index = SegmentIndex.newBuilder();
+        try (FileChannel fc = FileChannel.open(copyPath,
+                EnumSet.of(StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.SPARSE))) {
             writeHeader(fc, header.getVersion(), header.getVerifyChecksum());
 
-            for (LogEntry entry : compacted) {
+            for (long address : addresses) {
+                if (pendingTrim.contains(address)) {
+                    continue;
+                }
+
+                AddressMetaData metaData = sh.getKnownAddresses().get(address);
+                int recordSize = METADATA_SIZE + metaData.length;
+                if (compactionRateLimiter != null) {
+                    compactionRateLimiter.acquire(recordSize);
+                }
 
-                ByteBuffer record = getByteBufferWithMetaData(entry);
-                ByteBuffer recordBuf = ByteBuffer.allocate(record.capacity());
+                ByteBuffer record = ByteBuffer.allocate(recordSize);
+                long recordOffset = metaData.offset - METADATA_SIZE;
+                while (record.hasRemaining()) {
+                    if (sh.getReadChannel().read(record,
+                            recordOffset + record.position()) < 0) {
+                        throw new DataCorruptionException();
+                    }
+                }
 
-                recordBuf.put(record.array());
-                recordBuf.flip();
+                if (!noVerify && metaData.checksum != Checksums.crc32c(record.array(),
+                        METADATA_SIZE, recordSize - METADATA_SIZE)) {
+                    log.error("Checksum mismatch detected while trying to read address {}",
+                            address);
+                    throw new DataCorruptionException();
+                }
 
-                fc.write(recordBuf);
+                record.flip();
+                long payloadOffset = fc.position() + METADATA_SIZE;
+                safeWrite(fc, record);
+                index.addAddress(address)
+                        .addOffset(payloadOffset)
+                        .addLength(metaData.length)
+                        .addChecksum(metaData.checksum);
             }
 
             fc.force(true);
+            index.setSegmentSize(fc.size());
+        }
+        final long[] snapshotAddresses = addresses;
+        sh.getStreamIndex().writeTo(index, address -> pendingTrim.contains(address)
+                || Arrays.binarySearch(snapshotAddresses, address) < 0);
+
+        try (FileChannel fc = FileChannel.open(copyIndexPath,
+                EnumSet.of(StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE))) {
+            fc.write(getByteBufferWithMetaData(index.build()));
+            fc.force(true);
         }
 
-        try (FileChannel fc2 = FileChannel.open(FileSystems.getDefault()
-                        .getPath(getTrimmedFilePath(filePath)),
+        Files.copy(Paths.get(getTrimmedFilePath(filePath)), copyTrimmedPath,
+                StandardCopyOption.REPLACE_EXISTING);
+        try (FileChannel fc = FileChannel.open(copyTrimmedPath,
                 EnumSet.of(StandardOpenOption.APPEND))) {
-            try (OutputStream outputStream = Channels.newOutputStream(fc2)) {
-                // Todo(Maithem) How do we verify that the compacted file is correct?
+            try (OutputStream outputStream = Channels.newOutputStream(fc)) {
                 for (Long address : pendingTrim) {
                     TrimEntry entry = TrimEntry.newBuilder()
                             .setChecksum(getChecksum(address))
@@ -448,75 +1271,219 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
                     entry.writeDelimitedTo(outputStream);
                 }
                 outputStream.flush();
-                fc2.force(true);
+                fc.force(true);
             }
         }
 
-        Files.move(Paths.get(filePath + ".copy"), Paths.get(filePath),
-                StandardCopyOption.ATOMIC_MOVE);
+        swapCompactedSegment(sh, snapshotSize, copyPath, copyIndexPath, copyTrimmedPath);
+    }
+
+    private synchronized void swapCompactedSegment(SegmentHandle sh, long snapshotSize,
+                                                   Path copyPath, Path copyIndexPath,
+                                                   Path copyTrimmedPath) throws IOException {
+        final String filePath = sh.getFileName();
+        final long start = System.nanoTime();
 
-        // Force the reload of the new segment
-        writeChannels.remove(filePath);
+        try (MultiReadWriteLock.AutoCloseableLock ignored =
+                     segmentLocks.acquireWriteLock(sh.getSegment())) {
+            if (writeChannels.get(filePath) != sh
+                    || sh.getWriteChannel().size() != snapshotSize) {
+                log.info("compactSegment: {} changed while being compacted, skipping", filePath);
+                Files.deleteIfExists(copyPath);
+                Files.deleteIfExists(copyIndexPath);
+                Files.deleteIfExists(copyTrimmedPath);
+                return;
+            }
+
+            // The trimmed addresses are moved first, a crash before the segment is
+            // moved can't make the trimmed addresses writable again
+            Files.move(copyTrimmedPath, Paths.get(getTrimmedFilePath(filePath)),
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.move(copyIndexPath, Paths.get(getSegmentIndexFilePath(filePath)),
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.move(copyPath, Paths.get(filePath), StandardCopyOption.ATOMIC_MOVE);
+
+            writeChannels.put(filePath, openSegmentHandle(filePath, sh.getSegment()));
+        }
+
+        // Readers that still hold the old handle keep reading the old file
+        sh.closeWhenReleased();
+        log.info("compactSegment: swapped in compacted {} in {}us", filePath,
+                TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
     }
 
-    private CompactedEntry getCompactedEntries(String filePath,
-                                               Set<Long> pendingTrim) throws IOException {
+    /**
+     * Compresses the sealed segments that are behind the tail segment and have no pending
+     * trims, i.e. segments that are only expected to be read from now on.
+     */
+    private void compressSealedSegments() {
+        for (SegmentHandle sh : writeChannels.values()) {
+            // Retained so that the segment isn't evicted while it's compressed
+            if (!sh.tryRetain()) {
+                continue;
+            }
 
-        FileChannel fc = getChannel(filePath, true);
+            try {
+                if (sh.getCompressedSegment() != null || sh.getSegment() >= lastSegment
+                        || !sh.isIndexed() || !isSealed(sh)) {
+                    continue;
+                }
 
-        // Skip the header
-        ByteBuffer headerMetadataBuf = ByteBuffer.allocate(METADATA_SIZE);
-        fc.read(headerMetadataBuf);
-        headerMetadataBuf.flip();
+                // The pending trims file keeps the trims that compaction already applied
+                Set<Long> pending = sh.getPendingTrims().toSet();
+                pending.removeIf(sh.getTrimmedAddresses()::contains);
+                if (!pending.isEmpty()) {
+                    continue;
+                }
 
-        Metadata headerMetadata = Metadata.parseFrom(headerMetadataBuf.array());
-        ByteBuffer headerBuf = ByteBuffer.allocate(headerMetadata.getLength());
-        fc.read(headerBuf);
-        headerBuf.flip();
+                compressSegment(sh);
+            } catch (IOException e) {
+                log.error("compressSealedSegments: failed to compress {}", sh.getFileName(), e);
+            } finally {
+                sh.release();
+            }
+        }
+    }
 
-        ByteBuffer o = ByteBuffer.allocate((int) fc.size() - (int) fc.position());
-        fc.read(o);
-        fc.close();
-        o.flip();
+    /**
+     * Compresses a sealed segment and swaps in a handle that reads the compressed segment.
+     *
+     * <p>Like compaction, the segment is compressed from a snapshot without holding the
+     * segment lock, the lock is only held to swap in the new handle. The segment file is
+     * truncated later, once the replaced handle is closed.
+     *
+     * @param sh handle of a sealed and indexed segment
+     */
+    private void compressSegment(SegmentHandle sh) throws IOException {
+        final String filePath = sh.getFileName();
+        final Path tmpPath = Paths.get(getCompressedFilePath(filePath) + ".tmp");
 
-        LinkedHashMap<Long, LogEntry> compacted = new LinkedHashMap<>();
+        long snapshotSize;
+        long[] recordOffsets;
+        try (MultiReadWriteLock.AutoCloseableLock ignored =
+                     segmentLocks.acquireReadLock(sh.getSegment())) {
+            snapshotSize = sh.getWriteChannel().size();
+            long[] addresses = sh.getKnownAddresses().addresses();
+            recordOffsets = new long[addresses.length];
+            for (int i = 0; i < addresses.length; i++) {
+                recordOffsets[i] = sh.getKnownAddresses().get(addresses[i]).offset
+                        - METADATA_SIZE;
+            }
+        }
+        Arrays.sort(recordOffsets);
 
-        while (o.hasRemaining()) {
-            byte[] metadataBuf = new byte[METADATA_SIZE];
-            o.get(metadataBuf);
+        long dataOffset = getDataOffset(filePath);
+        if (dataOffset >= snapshotSize) {
+            return;
+        }
 
-            try {
-                Metadata metadata = Metadata.parseFrom(metadataBuf);
+        CompressedSegment.write(sh.getReadChannel(), dataOffset, recordOffsets, snapshotSize,
+                tmpPath, compactionRateLimiter);
+        swapCompressedSegment(sh, snapshotSize, tmpPath);
+    }
 
-                byte[] logEntryBuf = new byte[metadata.getLength()];
+    private synchronized void swapCompressedSegment(SegmentHandle sh, long snapshotSize,
+                                                    Path tmpPath) throws IOException {
+        final String filePath = sh.getFileName();
 
-                o.get(logEntryBuf);
+        try (MultiReadWriteLock.AutoCloseableLock ignored =
+                     segmentLocks.acquireWriteLock(sh.getSegment())) {
+            if (writeChannels.get(filePath) != sh || !sh.isIndexed()
+                    || sh.getWriteChannel().size() != snapshotSize) {
+                log.info("compressSegment: {} changed while being compressed, skipping",
+                        filePath);
+                Files.deleteIfExists(tmpPath);
+                return;
+            }
 
-                LogEntry entry = LogEntry.parseFrom(logEntryBuf);
+            Files.move(tmpPath, Paths.get(getCompressedFilePath(filePath)),
+                    StandardCopyOption.ATOMIC_MOVE);
+            writeChannels.put(filePath, openSegmentHandle(filePath, sh.getSegment()));
+            uncompressedHandles.put(filePath, sh);
+        }
 
-                if (!noVerify) {
-                    if (metadata.getPayloadChecksum() != getChecksum(entry.toByteArray())) {
-                        log.error("Checksum mismatch detected while trying to read address {}",
-                                    entry.getGlobalAddress());
-                        throw new DataCorruptionException();
-                    }
-                }
+        sh.closeWhenReleased();
+        log.info("compressSegment: compressed {} of {} bytes", filePath, snapshotSize);
+    }
+
+    /**
+     * Truncates the segment files of compressed segments to their header, once no handle
+     * reads the records from the segment file anymore.
+     */
+    private void reclaimCompressedSegments() {
+        uncompressedHandles.values().removeIf(SegmentHandle::isClosed);
 
-                if (!pendingTrim.contains(entry.getGlobalAddress())) {
-                    compacted.put(entry.getGlobalAddress(), entry);
+        for (SegmentHandle sh : writeChannels.values()) {
+            CompressedSegment compressed = sh.getCompressedSegment();
+            if (compressed == null || uncompressedHandles.containsKey(sh.getFileName())
+                    || !sh.tryRetain()) {
+                continue;
+            }
+
+            try (MultiReadWriteLock.AutoCloseableLock ignored =
+                         segmentLocks.acquireWriteLock(sh.getSegment())) {
+                if (sh.getCompressedSegment() == compressed
+                        && sh.getWriteChannel().size() > compressed.getDataOffset()) {
+                    sh.getWriteChannel().truncate(compressed.getDataOffset());
+                    sh.getWriteChannel().force(true);
+                    log.debug("reclaimCompressedSegments: truncated {}", sh.getFileName());
                 }
+            } catch (IOException e) {
+                log.error("reclaimCompressedSegments: failed to truncate {}",
+                        sh.getFileName(), e);
+            } finally {
+                sh.release();
+            }
+        }
+    }
 
-            } catch (InvalidProtocolBufferException e) {
-                throw new DataCorruptionException();
+    /**
+     * Writes the records of a compressed segment back to the segment file and drops the
+     * compressed segment. A compressed segment can't be modified, so it's restored before
+     * it's written to or compacted.
+     *
+     * @param sh handle of the segment
+     */
+    private void restoreSegment(SegmentHandle sh) throws IOException {
+        try (MultiReadWriteLock.AutoCloseableLock ignored =
+                     segmentLocks.acquireWriteLock(sh.getSegment())) {
+            CompressedSegment compressed = sh.getCompressedSegment();
+            if (compressed == null) {
+                return;
             }
+
+            compressed.restore(sh.getWriteChannel());
+            sh.getWriteChannel().position(compressed.getSegmentSize());
+            sh.setCompressedSegment(null);
+            compressed.close();
+            Files.deleteIfExists(Paths.get(getCompressedFilePath(sh.getFileName())));
         }
 
-        LogHeader header = LogHeader.parseFrom(headerBuf.array());
-        return new CompactedEntry(header, compacted.values());
+        log.info("restoreSegment: restored compressed segment {}", sh.getFileName());
+    }
+
+    /**
+     * Returns the size the segment file had when its address space was last written,
+     * i.e. the size of the segment before it was compressed.
+     */
+    private long getSegmentSize(SegmentHandle sh) throws IOException {
+        CompressedSegment compressed = sh.getCompressedSegment();
+        return compressed == null ? sh.getWriteChannel().size() : compressed.getSegmentSize();
+    }
+
+    /**
+     * Returns the offset of the first record of a segment file, i.e. the size of its header.
+     */
+    private long getDataOffset(String filePath) throws IOException {
+        try (FileChannel ch = getChannel(filePath, true)) {
+            parseHeader(ch);
+            return ch.position();
+        }
     }
 
     private LogData getLogData(LogEntry entry) {
-        ByteBuf data = Unpooled.wrappedBuffer(entry.getData().toByteArray());
+        // LogData copies the payload, so wrap the protobuf bytes instead of copying them twice
+        ByteBuf data = Unpooled.wrappedBuffer(entry.getData().asReadOnlyByteBuffer());
         LogData logData = new LogData(org.corfudb.protocols.wireprotocol
                 .DataType.typeMap.get((byte) entry.getDataType().getNumber()), data);
 
@@ -680,7 +1647,7 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
             return null;
         }
 
-        if (!noVerify) {
+        if (!noVerify && !verifyOnRead) {
             if (metadata.getPayloadChecksum() != getChecksum(buffer.array())) {
                 log.error("Checksum mismatch detected while trying to read file {}",
                         ch);
@@ -718,8 +1685,30 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
             return;
         }
 
+        if (loadSegmentIndex(sh)) {
+            // Position the channel at the end of the segment so that it's ready to accept writes
+            fc.position(fc.size());
+            return;
+        }
+
+        if (sh.getCompressedSegment() != null) {
+            // The records of a compressed segment can only be scanned from the segment file
+            log.warn("readAddressSpace: no valid index for compressed {}", sh.getFileName());
+            restoreSegment(sh);
+            fc.position(0);
+            parseHeader(fc);
+        }
+
         while (fc.size() - fc.position() > 0) {
             long channelOffset = fc.position();
+            if (isPadding(fc)) {
+                log.warn("readAddressSpace: truncating the padding of a direct append in {}",
+                        sh.getFileName());
+                fc.truncate(channelOffset);
+                fc.force(true);
+                return;
+            }
+
             Metadata metadata = parseMetadata(fc);
             LogEntry entry = parseEntry(fc, metadata);
 
@@ -741,6 +1730,151 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
             sh.getKnownAddresses().put(entry.getGlobalAddress(),
                     new AddressMetaData(metadata.getPayloadChecksum(),
                             metadata.getLength(), channelOffset + METADATA_SIZE));
+            sh.getStreamIndex().put(entry.getGlobalAddress(), entry.getStreamsList().stream()
+                    .map(UUID::fromString)
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * Returns true if the rest of a segment file is the zero padding of a direct append,
+     * i.e. less than a block of zeros. A record never starts with a zero byte.
+     *
+     * @param fc channel positioned after the last record that was read
+     */
+    private static boolean isPadding(FileChannel fc) throws IOException {
+        long remaining = fc.size() - fc.position();
+        if (remaining >= DirectAppender.BLOCK_SIZE) {
+            return false;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate((int) remaining);
+        while (buf.hasRemaining()) {
+            if (fc.read(buf, fc.position() + buf.position()) < 0) {
+                break;
+            }
+        }
+        for (int i = 0; i < buf.position(); i++) {
+            if (buf.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Persists the index of a sealed segment, so that subsequent opens of the segment
+     * don't have to scan it. The index is written to a temporary file which is atomically
+     * renamed, a crash can't leave a partially written index behind.
+     *
+     * @param sh segment handle of a sealed segment
+     */
+    private void writeSegmentIndex(SegmentHandle sh) throws IOException {
+        try (MultiReadWriteLock.AutoCloseableLock ignored =
+                     segmentLocks.acquireWriteLock(sh.getSegment())) {
+            if (sh.getDirectAppender() != null) {
+                // Truncates the padding of the last direct append, a sealed segment is
+                // no longer appended to
+                sh.getDirectAppender().close();
+                sh.setDirectAppender(null);
+            }
+
+            SegmentIndex.Builder index = SegmentIndex.newBuilder()
+                    .setSegmentSize(sh.getWriteChannel().size());
+
+            for (long address : sh.getKnownAddresses().addresses()) {
+                AddressMetaData metaData = sh.getKnownAddresses().get(address);
+                index.addAddress(address)
+                        .addOffset(metaData.offset)
+                        .addLength(metaData.length)
+                        .addChecksum(metaData.checksum);
+            }
+            sh.getStreamIndex().writeTo(index,
+                    address -> !sh.getKnownAddresses().containsKey(address));
+
+            String indexPath = getSegmentIndexFilePath(sh.getFileName());
+            String tmpIndexPath = indexPath + ".tmp";
+            try (FileChannel fc = FileChannel.open(Paths.get(tmpIndexPath),
+                    EnumSet.of(StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE,
+                            StandardOpenOption.CREATE))) {
+                fc.write(getByteBufferWithMetaData(index.build()));
+                fc.force(true);
+            }
+
+            Files.move(Paths.get(tmpIndexPath), Paths.get(indexPath),
+                    StandardCopyOption.ATOMIC_MOVE);
+            sh.setIndexed(true);
+        }
+
+        log.debug("writeSegmentIndex: indexed {} addresses of {}",
+                sh.getKnownAddresses().size(), sh.getFileName());
+    }
+
+    /**
+     * Invalidates the persisted index of a segment, this needs to happen before a
+     * sealed segment is modified.
+     *
+     * @param sh segment handle to invalidate the index for
+     */
+    private void invalidateSegmentIndex(SegmentHandle sh) throws IOException {
+        if (sh.isIndexed()) {
+            Files.deleteIfExists(Paths.get(getSegmentIndexFilePath(sh.getFileName())));
+            sh.setIndexed(false);
+        }
+    }
+
+    /**
+     * Loads the address space of a segment from its index file.
+     *
+     * @param sh segment handle to load the address space into
+     * @return true if the address space was loaded, false if the segment doesn't have
+     *     an index, or the index is stale or corrupted, in which case the segment
+     *     needs to be scanned
+     */
+    private boolean loadSegmentIndex(SegmentHandle sh) throws IOException {
+        File indexFile = new File(getSegmentIndexFilePath(sh.getFileName()));
+        if (!indexFile.exists()) {
+            return false;
+        }
+
+        SegmentIndex index;
+        try (FileChannel fc = getChannel(indexFile.getAbsolutePath(), true)) {
+            Metadata metadata = parseMetadata(fc);
+            ByteBuffer buf = metadata == null ? null : getPayloadForMetadata(fc, metadata);
+            if (buf == null || metadata.getPayloadChecksum() != getChecksum(buf.array())) {
+                log.warn("loadSegmentIndex: Ignoring corrupted index {}", indexFile);
+                return false;
+            }
+            index = SegmentIndex.parseFrom(buf.array());
+        } catch (DataCorruptionException | InvalidProtocolBufferException e) {
+            log.warn("loadSegmentIndex: Ignoring corrupted index {}", indexFile);
+            return false;
+        }
+
+        if (index.getSegmentSize() != getSegmentSize(sh) || !index.getStreamsIndexed()) {
+            log.warn("loadSegmentIndex: Ignoring stale index {}", indexFile);
+            return false;
+        }
+
+        for (int i = 0; i < index.getAddressCount(); i++) {
+            sh.getKnownAddresses().put(index.getAddress(i),
+                    new AddressMetaData(index.getChecksum(i), index.getLength(i),
+                            index.getOffset(i)));
+        }
+        sh.getStreamIndex().readFrom(index);
+
+        sh.setIndexed(true);
+        return true;
+    }
+
+    /**
+     * Persists the segment index if the segment has just been sealed.
+     *
+     * @param sh segment handle to check
+     */
+    private void indexIfSealed(SegmentHandle sh) throws IOException {
+        if (!sh.isIndexed() && isSealed(sh)) {
+            writeSegmentIndex(sh);
         }
     }
 
@@ -760,15 +1894,90 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
             return null;
         }
 
+        ByteBuffer record = readRecordBuffer(sh, fc, metaData);
+        if (verifyOnRead) {
+            verifyRecord(address, metaData, record);
+        }
+
         try {
-            ByteBuffer entryBuf = ByteBuffer.allocate(metaData.length);
-            fc.read(entryBuf, metaData.offset);
-            return getLogData(LogEntry.parseFrom(entryBuf.array()));
+            return getLogData(parseLogEntry(record));
         } catch (InvalidProtocolBufferException e) {
             throw new DataCorruptionException();
         }
     }
 
+    /**
+     * Read the serialized log entry of a record.
+     *
+     * @param sh       handle of the segment of the record
+     * @param fc       read channel of the segment, obtained before the record metadata
+     * @param metaData metadata of the record
+     * @return a buffer holding the serialized log entry
+     */
+    private ByteBuffer readRecordBuffer(SegmentHandle sh, FileChannel fc,
+                                        AddressMetaData metaData) throws IOException {
+        if (sh.getCompressedSegment() != null) {
+            try (MultiReadWriteLock.AutoCloseableLock ignored =
+                         segmentLocks.acquireReadLock(sh.getSegment())) {
+                // The segment can be restored while the lock isn't held
+                CompressedSegment compressed = sh.getCompressedSegment();
+                if (compressed != null) {
+                    return compressed.read(metaData.offset, metaData.length);
+                }
+            }
+        }
+
+        ByteBuffer entryBuf = ByteBuffer.allocate(metaData.length);
+        while (entryBuf.hasRemaining()
+                && fc.read(entryBuf, metaData.offset + entryBuf.position()) >= 0) {
+            // Keep reading until the record is filled or the end of the file
+        }
+        entryBuf.flip();
+        return entryBuf;
+    }
+
+    /**
+     * Verify the checksum of a record read from disk.
+     *
+     * @param address  address of the record
+     * @param metaData metadata of the record
+     * @param record   the serialized log entry of the record
+     * @throws DataCorruptionException if the checksum doesn't match
+     */
+    private void verifyRecord(long address, AddressMetaData metaData, ByteBuffer record) {
+        if (Checksums.crc32c(record) != metaData.checksum) {
+            corruptRecords.incrementAndGet();
+            corruptAddresses.add(address);
+            log.error("Checksum mismatch detected while trying to read address {}", address);
+            throw new DataCorruptionException();
+        }
+    }
+
+    /**
+     * Parse a log entry whose payload aliases the input instead of being copied out of
+     * it, so the payload is copied once, into the LogData built from the entry.
+     *
+     * @param record heap buffer holding a single serialized log entry
+     * @return the parsed log entry
+     */
+    private LogEntry parseLogEntry(ByteBuffer record) throws IOException {
+        CodedInputStream input = CodedInputStream.newInstance(record);
+        input.enableAliasing(true);
+        return LogEntry.parseFrom(input);
+    }
+
+    /**
+     * A segment is sealed when every address in its range has been either written
+     * or trimmed, after that point the segment only changes through compaction.
+     *
+     * @param sh segment handle to check
+     * @return true if the segment is sealed
+     */
+    private boolean isSealed(SegmentHandle sh) {
+        return sh.getKnownAddresses().size() + sh.getTrimmedAddresses().size()
+                == recordsPerSegment;
+    }
+
     private @Nullable FileChannel getChannel(String filePath, boolean readOnly) throws IOException {
         try {
 
@@ -799,39 +2008,139 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
      * @return The FileChannel for that address.
      */
     @VisibleForTesting
-    synchronized SegmentHandle getSegmentHandleForAddress(long address) {
-        String filePath = logDir + File.separator;
-        long segment = address / RECORDS_PER_LOG_FILE;
-        filePath += segment;
-        filePath += ".log";
+    SegmentHandle getSegmentHandleForAddress(long address) {
+        long segment = address / recordsPerSegment;
+        int slot = (int) (segment & (HOT_HANDLES - 1));
+        SegmentHandle hot = hotHandles.get(slot);
+        if (hot != null && hot.getSegment() == segment && hot.tryRetain()) {
+            hot.setLastAccess(System.nanoTime());
+            return hot;
+        }
+
+        String filePath = getSegmentFilePath(segment);
+        while (true) {
+            SegmentHandle handle = writeChannels.get(filePath);
+            if (handle == null) {
+                handle = writeChannels.computeIfAbsent(filePath,
+                        path -> openSegmentHandle(path, segment));
+                if (maxOpenSegments > 0 && writeChannels.size() > maxOpenSegments) {
+                    evictColdSegments();
+                }
+            }
 
-        SegmentHandle handle = writeChannels.computeIfAbsent(filePath, a -> {
-            try {
-                boolean verify = true;
-                if (noVerify) {
-                    verify = false;
+            // A handle that can't be retained was swapped out by compaction, closed by a
+            // trim or evicted, the map holds its replacement or will shortly no longer
+            // hold it
+            if (handle.tryRetain()) {
+                handle.setLastAccess(System.nanoTime());
+                hotHandles.set(slot, handle);
+                return handle;
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Closes the least recently used segments that are behind the tail segment, until at
+     * most --log-max-open-segments segments are open. Segments that are referenced, or
+     * that compaction or compression is expected to rewrite, are kept open.
+     */
+    private void evictColdSegments() {
+        if (maxOpenSegments <= 0 || !evictionLock.tryLock()) {
+            // Another thread is evicting
+            return;
+        }
+
+        try {
+            int excess = writeChannels.size() - maxOpenSegments;
+            if (excess <= 0) {
+                return;
+            }
+
+            List<SegmentHandle> candidates = writeChannels.values().stream()
+                    .filter(this::isEvictable)
+                    .sorted(Comparator.comparingLong(SegmentHandle::getLastAccess))
+                    .collect(Collectors.toList());
+            for (SegmentHandle sh : candidates) {
+                if (excess <= 0) {
+                    break;
                 }
+                if (sh.tryRetire()) {
+                    writeChannels.remove(sh.getFileName(), sh);
+                    evictedSegments.add(sh.getSegment());
+                    sh.close();
+                    excess--;
+                }
+            }
+            log.debug("evictColdSegments: {} segments open", writeChannels.size());
+        } finally {
+            evictionLock.unlock();
+        }
+    }
 
-                FileChannel writeCh = getChannel(a, false);
-                FileChannel readCh = getChannel(a, true);
-                FileChannel trimmedCh = getChannel(getTrimmedFilePath(a), false);
-                FileChannel pendingTrimmedCh = getChannel(getPendingTrimsFilePath(a), false);
-
-                SegmentHandle sh = new SegmentHandle(segment, writeCh, readCh, trimmedCh, pendingTrimmedCh, a);
-                // The first time we open a file we should read to the end, to load the
-                // map of entries we already have.
-                // Once the segment address space is loaded, it should be ready to accept writes.
-                readAddressSpace(sh);
-                loadTrimAddresses(sh);
-                return sh;
-            } catch (IOException e) {
-                log.error("Error opening file {}", a, e);
-                throw new RuntimeException(e);
+    private boolean isEvictable(SegmentHandle sh) {
+        if (sh.getSegment() >= lastSegment || sh.getRefCount() != 0) {
+            return false;
+        }
+        if (!isSealed(sh)) {
+            return true;
+        }
+
+        Set<Long> pending = sh.getPendingTrims().toSet();
+        pending.removeAll(sh.getTrimmedAddresses().toSet());
+        boolean compressionPending = compressSegments && sh.getCompressedSegment() == null
+                && sh.isIndexed() && pending.isEmpty();
+        return pending.size() < trimThreshold && !compressionPending;
+    }
+
+    private String getSegmentFilePath(long segment) {
+        return logDirs.get(getLogDirIndex(segment)) + File.separator + segment + ".log";
+    }
+
+    /**
+     * Opens the files of a segment and loads its address space.
+     *
+     * @param filePath path of the segment file
+     * @param segment  the segment number
+     * @return a handle for the segment
+     */
+    private SegmentHandle openSegmentHandle(String filePath, long segment) {
+        SegmentHandle sh = null;
+        try {
+            FileChannel writeCh = getChannel(filePath, false);
+            FileChannel readCh = getChannel(filePath, true);
+            FileChannel trimmedCh = getChannel(getTrimmedFilePath(filePath), false);
+            FileChannel pendingTrimmedCh = getChannel(getPendingTrimsFilePath(filePath), false);
+
+            sh = new SegmentHandle(segment, recordsPerSegment, writeCh, readCh, trimmedCh,
+                    pendingTrimmedCh, filePath);
+            if (evictedSegments.remove(segment)) {
+                segmentReopens.mark();
             }
-        });
 
-        handle.retain();
-        return handle;
+            Path compressedPath = Paths.get(getCompressedFilePath(filePath));
+            if (Files.exists(compressedPath)) {
+                sh.setCompressedSegment(CompressedSegment.open(compressedPath));
+            }
+            // The first time we open a file we should read to the end, to load the
+            // map of entries we already have.
+            // Once the segment address space is loaded, it should be ready to accept writes.
+            readAddressSpace(sh);
+            loadTrimAddresses(sh);
+            indexIfSealed(sh);
+            return sh;
+        } catch (IOException e) {
+            log.error("Error opening file {}", filePath, e);
+            if (sh != null) {
+                sh.close();
+            }
+            throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            if (sh != null) {
+                sh.close();
+            }
+            throw e;
+        }
     }
 
     private void loadTrimAddresses(SegmentHandle sh) throws IOException {
@@ -915,7 +2224,9 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
 
         LogEntry.Builder logEntryBuilder = LogEntry.newBuilder()
                 .setDataType(Types.DataType.forNumber(entry.getType().ordinal()))
-                .setData(ByteString.copyFrom(data))
+                // The entry is serialized right after it's built, so the payload can be
+                // aliased instead of copied
+                .setData(UnsafeByteOperations.unsafeWrap(data))
                 .setGlobalAddress(address)
                 .addAllStreams(getStrUUID(entry.getStreams()))
                 .putAllBackpointers(getStrLongMap(entry.getBackpointerMap()));
@@ -984,45 +2295,68 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
     private Map<Long, AddressMetaData> writeRecords(SegmentHandle sh,
                                              List<LogData> entries) throws IOException {
         Map<Long, AddressMetaData> recordsMap = new HashMap<>();
+        if (sh.getCompressedSegment() != null) {
+            restoreSegment(sh);
+        }
 
-        List<ByteBuffer> entryBuffs = new ArrayList<>();
-        int totalBytes = 0;
-
-        List<Metadata> metadataList = new ArrayList<>();
+        ByteBuffer[] recordBuffers = new ByteBuffer[entries.size() * 2];
+        List<Metadata> metadataList = new ArrayList<>(entries.size());
 
         for (int ind = 0; ind < entries.size(); ind++) {
             LogData curr = entries.get(ind);
-            LogEntry logEntry = getLogEntry(curr.getGlobalAddress(), curr);
-            Metadata metadata = getMetadata(logEntry);
+            byte[] payload = getLogEntry(curr.getGlobalAddress(), curr).toByteArray();
+            Metadata metadata = getMetadata(payload);
             metadataList.add(metadata);
-            ByteBuffer record = getByteBuffer(metadata, logEntry);
-            totalBytes += record.limit();
-            entryBuffs.add(record);
+            recordBuffers[ind * 2] = ByteBuffer.wrap(metadata.toByteArray());
+            recordBuffers[ind * 2 + 1] = ByteBuffer.wrap(payload);
         }
 
-        ByteBuffer allRecordsBuf = ByteBuffer.allocate(totalBytes);
-
         try (MultiReadWriteLock.AutoCloseableLock ignored =
                      segmentLocks.acquireWriteLock(sh.getSegment())) {
-            for (int ind = 0; ind < entryBuffs.size(); ind++) {
-                long channelOffset = sh.getWriteChannel().position()
-                        + allRecordsBuf.position() + METADATA_SIZE;
-                allRecordsBuf.put(entryBuffs.get(ind));
+            invalidateSegmentIndex(sh);
+            long channelOffset = sh.getWriteChannel().position();
+            for (int ind = 0; ind < entries.size(); ind++) {
                 Metadata metadata = metadataList.get(ind);
                 recordsMap.put(entries.get(ind).getGlobalAddress(),
                         new AddressMetaData(metadata.getPayloadChecksum(),
-                                metadata.getLength(), channelOffset));
+                                metadata.getLength(), channelOffset + METADATA_SIZE));
+                channelOffset += recordBuffers[ind * 2].remaining() + metadata.getLength();
             }
 
-            allRecordsBuf.flip();
-            safeWrite(sh.getWriteChannel(), allRecordsBuf);
-            channelsToSync.add(sh.getWriteChannel());
+            appendRecords(sh, recordBuffers);
+            addChannelToSync(sh, sh.getWriteChannel());
             syncTailSegment(entries.get(entries.size() - 1).getGlobalAddress());
         }
 
         return recordsMap;
     }
 
+    /**
+     * Appends records at the end of a segment, with direct I/O if it's enabled and the
+     * segment isn't sealed. The caller must hold the segment write lock.
+     *
+     * @param sh      handle of the segment
+     * @param records the records to append, in order
+     */
+    private void appendRecords(SegmentHandle sh, ByteBuffer[] records) throws IOException {
+        if (directIo && sh.getDirectAppender() == null && !isSealed(sh)) {
+            DirectAppender appender = DirectAppender.open(Paths.get(sh.getFileName()),
+                    sh.getWriteChannel());
+            if (appender == null) {
+                log.warn("appendRecords: direct I/O isn't supported by the file system of {},"
+                        + " appending through the page cache", sh.getFileName());
+                directIo = false;
+            }
+            sh.setDirectAppender(appender);
+        }
+
+        if (sh.getDirectAppender() != null) {
+            sh.getDirectAppender().append(records);
+        } else {
+            safeWrite(sh.getWriteChannel(), records);
+        }
+    }
+
     /**
      *
      * Attempts to write a buffer to a file channel, if write fails with an
@@ -1034,9 +2368,27 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
      * @throws IOException
      */
     private static void safeWrite(FileChannel channel, ByteBuffer buf) throws IOException {
+        safeWrite(channel, new ByteBuffer[] {buf});
+    }
+
+    /**
+     * Attempts to write a sequence of buffers to a file channel with gathering writes,
+     * if a write fails then the partially written buffers are truncated from the channel.
+     *
+     * @param channel the channel to write to
+     * @param bufs    the buffers to write, in order
+     * @throws IOException
+     */
+    private static void safeWrite(FileChannel channel, ByteBuffer[] bufs) throws IOException {
         long prev = channel.position();
         try {
-            channel.write(buf);
+            int next = 0;
+            while (next < bufs.length) {
+                channel.write(bufs, next, bufs.length - next);
+                while (next < bufs.length && !bufs[next].hasRemaining()) {
+                    next++;
+                }
+            }
         } catch (IOException e) {
             // Write failed restore the channels position, so the subsequent writes
             // can overwrite the failed write.
@@ -1064,25 +2416,40 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
      */
     private AddressMetaData writeRecord(SegmentHandle fh, long address,
                                         LogData entry) throws IOException {
-        LogEntry logEntry = getLogEntry(address, entry);
-        Metadata metadata = getMetadata(logEntry);
-
-        ByteBuffer record = getByteBuffer(metadata, logEntry);
+        if (fh.getCompressedSegment() != null) {
+            restoreSegment(fh);
+        }
+        byte[] payload = getLogEntry(address, entry).toByteArray();
+        Metadata metadata = getMetadata(payload);
+        ByteBuffer[] record = {ByteBuffer.wrap(metadata.toByteArray()), ByteBuffer.wrap(payload)};
         long channelOffset;
 
         try (MultiReadWriteLock.AutoCloseableLock ignored =
                      segmentLocks.acquireWriteLock(fh.getSegment())) {
+            invalidateSegmentIndex(fh);
             channelOffset = fh.getWriteChannel().position() + METADATA_SIZE;
-            safeWrite(fh.getWriteChannel(), record);
-            channelsToSync.add(fh.getWriteChannel());
+            appendRecords(fh, record);
+            addChannelToSync(fh, fh.getWriteChannel());
             syncTailSegment(address);
         }
 
         return new AddressMetaData(metadata.getPayloadChecksum(), metadata.getLength(), channelOffset);
     }
 
+    /**
+     * Adds written entries to the stream index of their segment.
+     *
+     * @param sh      handle of the segment the entries were written to
+     * @param entries the written entries
+     */
+    private void indexStreams(SegmentHandle sh, List<LogData> entries) {
+        for (LogData entry : entries) {
+            sh.getStreamIndex().put(entry.getGlobalAddress(), entry.getStreams());
+        }
+    }
+
     long getSegment(LogData entry) {
-        return entry.getGlobalAddress() / RECORDS_PER_LOG_FILE;
+        return entry.getGlobalAddress() / recordsPerSegment;
     }
 
     /**
@@ -1138,8 +2505,8 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
 
         // Check if the range spans more than two segments
         long lastAddress = range.get(range.size() - 1).getGlobalAddress();
-        long firstSegment = firstAddress / RECORDS_PER_LOG_FILE;
-        long endSegment = lastAddress / RECORDS_PER_LOG_FILE;
+        long firstSegment = firstAddress / recordsPerSegment;
+        long endSegment = lastAddress / recordsPerSegment;
 
         if (endSegment - firstSegment > 1) {
             return false;
@@ -1188,11 +2555,15 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
             if (!segOneEntries.isEmpty()) {
                 Map<Long, AddressMetaData> firstSegAddresses = writeRecords(firstSh, segOneEntries);
                 firstSh.getKnownAddresses().putAll(firstSegAddresses);
+                indexStreams(firstSh, segOneEntries);
+                indexIfSealed(firstSh);
             }
 
             if (!segTwoEntries.isEmpty()) {
                 Map<Long, AddressMetaData> lastSegAddresses = writeRecords(lastSh, segTwoEntries);
                 lastSh.getKnownAddresses().putAll(lastSegAddresses);
+                indexStreams(lastSh, segTwoEntries);
+                indexIfSealed(lastSh);
             }
         } catch (IOException e) {
             log.error("Disk_write[{}-{}]: Exception", first.getGlobalAddress(),
@@ -1212,7 +2583,10 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
 
         SegmentHandle fh = getSegmentHandleForAddress(address);
 
-        try {
+        // The overwrite check and the write happen under the segment write lock, so two
+        // appends to the same address can't both pass the check
+        try (MultiReadWriteLock.AutoCloseableLock ignored =
+                     segmentLocks.acquireWriteLock(fh.getSegment())) {
             // make sure the entry doesn't currently exist...
             // (probably need a faster way to do this - high watermark?)
             if (fh.getKnownAddresses().containsKey(address)
@@ -1229,6 +2603,8 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
                 AddressMetaData addressMetaData = writeRecord(fh, address, entry);
                 fh.getKnownAddresses().put(address, addressMetaData);
             }
+            fh.getStreamIndex().put(address, entry.getStreams());
+            indexIfSealed(fh);
             log.trace("Disk_write[{}]: Written to disk.", address);
         } catch (IOException e) {
             log.error("Disk_write[{}]: Exception", address, e);
@@ -1257,13 +2633,220 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
         }
     }
 
+    @Override
+    public Map<Long, LogData> readAll(List<Long> addresses) {
+        long[] sorted = addresses.stream().mapToLong(Long::longValue).sorted().distinct()
+                .toArray();
+        Map<Long, LogData> entries = new TreeMap<>();
+        int first = 0;
+        while (first < sorted.length) {
+            long segment = sorted[first] / recordsPerSegment;
+            int last = first;
+            while (last < sorted.length && sorted[last] / recordsPerSegment == segment) {
+                last++;
+            }
+            readSegmentRecords(Arrays.copyOfRange(sorted, first, last), entries);
+            first = last;
+        }
+        return entries;
+    }
+
+    /**
+     * Read records of a segment in the order of their offsets, merging the reads of
+     * records that are close in the segment file into a single sequential read.
+     *
+     * @param addresses addresses of the segment to read, in ascending order
+     * @param entries   map to add the entries read to
+     */
+    private void readSegmentRecords(long[] addresses, Map<Long, LogData> entries) {
+        SegmentHandle sh = getSegmentHandleForAddress(addresses[0]);
+        try {
+            FileChannel fc = sh.getReadChannel();
+            // The records of a compressed segment are read from its inflated blocks
+            boolean readRecords = sh.getCompressedSegment() != null;
+
+            Map<Long, AddressMetaData> toRead = new HashMap<>();
+            for (long address : addresses) {
+                if (isTrimmed(address) || sh.getPendingTrims().contains(address)) {
+                    entries.put(address, LogData.getTrimmed(address));
+                } else if (readRecords) {
+                    LogData entry = readRecord(sh, address);
+                    if (entry != null) {
+                        entries.put(address, entry);
+                    }
+                } else {
+                    AddressMetaData metaData = sh.getKnownAddresses().get(address);
+                    if (metaData != null) {
+                        toRead.put(address, metaData);
+                    }
+                }
+            }
+
+            long[] sortedByOffset = toRead.keySet().stream()
+                    .sorted(Comparator.comparingLong(a -> toRead.get(a).offset))
+                    .mapToLong(Long::longValue)
+                    .toArray();
+            int first = 0;
+            while (first < sortedByOffset.length) {
+                AddressMetaData start = toRead.get(sortedByOffset[first]);
+                long end = start.offset + start.length;
+                int last = first + 1;
+                while (last < sortedByOffset.length) {
+                    AddressMetaData next = toRead.get(sortedByOffset[last]);
+                    if (next.offset - end > MAX_MERGED_READ_GAP
+                            || next.offset + next.length - start.offset > MAX_MERGED_READ) {
+                        break;
+                    }
+                    end = Math.max(end, next.offset + next.length);
+                    last++;
+                }
+                readMerged(fc, Arrays.copyOfRange(sortedByOffset, first, last), toRead,
+                        start.offset, (int) (end - start.offset), entries);
+                first = last;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            sh.release();
+        }
+    }
+
+    /**
+     * Read a range of a segment file with a single read, and parse the records in it.
+     *
+     * @param fc        read channel of the segment file
+     * @param addresses addresses of the records in the range
+     * @param metaData  metadata of the records
+     * @param offset    offset of the range in the segment file
+     * @param length    length of the range
+     * @param entries   map to add the entries read to
+     */
+    private void readMerged(FileChannel fc, long[] addresses, Map<Long, AddressMetaData> metaData,
+                            long offset, int length, Map<Long, LogData> entries)
+            throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining() && fc.read(buf, offset + buf.position()) >= 0) {
+            // Keep reading until the range is filled or the end of the file
+        }
+        mergedReads.mark();
+
+        try {
+            for (long address : addresses) {
+                AddressMetaData record = metaData.get(address);
+                ByteBuffer recordBuf = ByteBuffer.wrap(buf.array(),
+                        (int) (record.offset - offset), record.length);
+                if (verifyOnRead) {
+                    verifyRecord(address, record, recordBuf);
+                }
+                entries.put(address, getLogData(parseLogEntry(recordBuf)));
+            }
+        } catch (InvalidProtocolBufferException e) {
+            throw new DataCorruptionException();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Map<Long, LogData>> readAllAsync(List<Long> addresses) {
+        if (addresses.isEmpty()) {
+            return CompletableFuture.completedFuture(new TreeMap<>());
+        }
+        // Each disk reads its own addresses on its own executor
+        Map<ExecutorService, List<Long>> addressesPerDisk = new IdentityHashMap<>();
+        for (long address : addresses) {
+            addressesPerDisk.computeIfAbsent(getIoExecutor(address), k -> new ArrayList<>())
+                    .add(address);
+        }
+
+        List<CompletableFuture<Map<Long, LogData>>> reads = new ArrayList<>();
+        addressesPerDisk.forEach((executor, diskAddresses) ->
+                reads.add(CompletableFuture.supplyAsync(() -> readAll(diskAddresses), executor)));
+        if (reads.size() == 1) {
+            return reads.get(0);
+        }
+
+        return CompletableFuture.allOf(reads.toArray(new CompletableFuture[reads.size()]))
+                .thenApply(v -> {
+                    Map<Long, LogData> entries = new TreeMap<>();
+                    reads.forEach(read -> entries.putAll(read.join()));
+                    return entries;
+                });
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Only the indexes of the open segments are consulted, so that a query over a large
+     * range doesn't open every segment of the log and evict the segments being accessed.
+     * The addresses of the other segments are omitted.
+     */
+    @Override
+    public List<Long> getStreamAddresses(UUID streamId, long start, long end) {
+        long first = Math.max(start, startingAddress);
+        long last = Math.min(end, getGlobalTail());
+        List<Long> addresses = new ArrayList<>();
+        if (first > last) {
+            return addresses;
+        }
+
+        long fromSegment = first / recordsPerSegment;
+        long toSegment = last / recordsPerSegment;
+        long[] segments = writeChannels.values().stream()
+                .mapToLong(SegmentHandle::getSegment)
+                .filter(segment -> segment >= fromSegment && segment <= toSegment)
+                .sorted()
+                .distinct()
+                .toArray();
+        for (long segment : segments) {
+            SegmentHandle sh = getOpenSegmentHandle(segment);
+            if (sh == null) {
+                // Evicted or removed by a prefix trim since
+                continue;
+            }
+            try {
+                for (long address : sh.getStreamIndex().get(streamId, first, last)) {
+                    if (!sh.getPendingTrims().contains(address)
+                            && !sh.getTrimmedAddresses().contains(address)) {
+                        addresses.add(address);
+                    }
+                }
+            } finally {
+                sh.release();
+            }
+        }
+
+        return addresses;
+    }
+
+    @Override
+    public CompletableFuture<List<Long>> getStreamAddressesAsync(UUID streamId, long start,
+                                                                 long end) {
+        return CompletableFuture.supplyAsync(() -> getStreamAddresses(streamId, start, end),
+                getIoExecutor(Math.max(start, startingAddress)));
+    }
+
     @Override
     public void close() {
+        preallocator.shutdown();
+        ioExecutors.forEach(ExecutorService::shutdown);
+        scrubber.shutdownNow();
+        if (syncExecutor != null) {
+            syncExecutor.shutdown();
+        }
+        try {
+            preallocator.awaitTermination(EXECUTOR_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            for (ExecutorService ioExecutor : ioExecutors) {
+                ioExecutor.awaitTermination(EXECUTOR_SHUTDOWN_TIMEOUT_SECONDS,
+                        TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
         for (SegmentHandle fh : writeChannels.values()) {
             fh.close();
         }
 
-        writeChannels = new HashMap<>();
+        writeChannels = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -1287,6 +2870,22 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
                 writeChannels.remove(sh.getFileName());
             }
         }
+        evictedSegments.removeIf(segment -> segment <= endSegment);
+    }
+
+    /**
+     * Returns the segment files of all the log directories.
+     */
+    private Set<File> listSegmentFiles() {
+        String[] extension = {"log"};
+        Set<File> files = new LinkedHashSet<>();
+        for (String path : logDirs) {
+            File dir = new File(path);
+            if (dir.exists()) {
+                files.addAll(FileUtils.listFiles(dir, extension, true));
+            }
+        }
+        return files;
     }
 
     /**
@@ -1297,8 +2896,13 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
     private void deleteFilesMatchingFilter(FileFilter fileFilter) {
         int numFiles = 0;
         long freedBytes = 0;
-        File dir = new File(logDir);
-        File[] files = dir.listFiles(fileFilter);
+        List<File> files = new ArrayList<>();
+        for (String path : logDirs) {
+            File[] dirFiles = new File(path).listFiles(fileFilter);
+            if (dirFiles != null) {
+                files.addAll(Arrays.asList(dirFiles));
+            }
+        }
         for (File file : files) {
             long delta = file.length();
 
@@ -1321,11 +2925,13 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
     @Override
     public void reset() {
         // Trim all segments
-        long endSegment = (globalTail.get() / RECORDS_PER_LOG_FILE);
+        // Preallocated segments are empty, but are removed with the rest of the log
+        long endSegment = (globalTail.get() / recordsPerSegment) + segmentsToPreallocate;
         log.warn("Global Tail:{}, endSegment={}", globalTail.get(), endSegment);
 
         // Close segments before deleting their corresponding log files
         closeSegmentHandlers(endSegment);
+        uncompressedHandles.clear();
 
         deleteFilesMatchingFilter(file -> {
             try {
@@ -1348,29 +2954,13 @@ public class StreamLogFiles implements StreamLog, StreamLogWithRankedAddressSpac
 
     @VisibleForTesting
     Set<FileChannel> getChannelsToSync() {
-        return channelsToSync;
+        return channelsToSync.stream()
+                .flatMap(Set::stream)
+                .collect(Collectors.toSet());
     }
 
     @VisibleForTesting
     Collection<SegmentHandle> getSegmentHandles() {
         return writeChannels.values();
     }
-
-    public static class CompactedEntry {
-        private final LogHeader logHeader;
-        private final Collection<LogEntry> entries;
-
-        public CompactedEntry(LogHeader logHeader, Collection<LogEntry> entries) {
-            this.logHeader = logHeader;
-            this.entries = entries;
-        }
-
-        public LogHeader getLogHeader() {
-            return logHeader;
-        }
-
-        public Collection<LogEntry> getEntries() {
-            return entries;
-        }
-    }
 }
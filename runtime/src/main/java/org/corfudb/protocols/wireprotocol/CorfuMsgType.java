@@ -51,6 +51,9 @@ public enum CorfuMsgType {
     TOKEN_RES(26, new TypeToken<CorfuPayloadMsg<TokenResponse>>(){}),
     BOOTSTRAP_SEQUENCER(27, new TypeToken<CorfuPayloadMsg<SequencerTailsRecoveryMsg>>(){}),
     SEQUENCER_TRIM_REQ(28, new TypeToken<CorfuPayloadMsg<Long>>() {}),
+    SEQUENCER_SNAPSHOT_REQUEST(23, TypeToken.of(CorfuMsg.class), true),
+    SEQUENCER_SNAPSHOT_RESPONSE(24,
+            new TypeToken<CorfuPayloadMsg<SequencerTailsRecoveryMsg>>(){}, true),
 
     // Logging Unit Messages
     WRITE(30, new TypeToken<CorfuPayloadMsg<WriteRequest>>() {}),
@@ -67,6 +70,8 @@ public enum CorfuMsgType {
     TRIM_MARK_REQUEST(45, TypeToken.of(CorfuMsg.class), true),
     TRIM_MARK_RESPONSE(46, new TypeToken<CorfuPayloadMsg<Long>>(){}, true),
     RESET_LOGUNIT(47, TypeToken.of(CorfuMsg.class)),
+    STREAM_ADDRESS_REQUEST(48, new TypeToken<CorfuPayloadMsg<StreamAddressRequest>>() {}),
+    STREAM_ADDRESS_RESPONSE(49, new TypeToken<CorfuPayloadMsg<StreamAddressResponse>>() {}),
 
     WRITE_OK(50, TypeToken.of(CorfuMsg.class)),
     ERROR_TRIMMED(51, TypeToken.of(CorfuMsg.class)),
@@ -0,0 +1,47 @@
+package org.corfudb.protocols.wireprotocol;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A request for the addresses of a stream that a log unit stores within a range of
+ * addresses.
+ */
+@Data
+@AllArgsConstructor
+public class StreamAddressRequest implements ICorfuPayload<StreamAddressRequest> {
+
+    final UUID stream;
+
+    /**
+     * First address of the range (inclusive).
+     */
+    final Long start;
+
+    /**
+     * Last address of the range (inclusive).
+     */
+    final Long end;
+
+    /**
+     * Deserialization Constructor from ByteBuf to StreamAddressRequest.
+     *
+     * @param buf The buffer to deserialize
+     */
+    public StreamAddressRequest(ByteBuf buf) {
+        stream = ICorfuPayload.fromBuffer(buf, UUID.class);
+        start = ICorfuPayload.fromBuffer(buf, Long.class);
+        end = ICorfuPayload.fromBuffer(buf, Long.class);
+    }
+
+    @Override
+    public void doSerialize(ByteBuf buf) {
+        ICorfuPayload.serialize(buf, stream);
+        ICorfuPayload.serialize(buf, start);
+        ICorfuPayload.serialize(buf, end);
+    }
+}
@@ -0,0 +1,33 @@
+package org.corfudb.protocols.wireprotocol;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * The addresses of a stream that a log unit stores within the requested range, in
+ * ascending order.
+ */
+@Data
+@AllArgsConstructor
+public class StreamAddressResponse implements ICorfuPayload<StreamAddressResponse> {
+
+    final List<Long> addresses;
+
+    /**
+     * Deserialization Constructor from ByteBuf to StreamAddressResponse.
+     *
+     * @param buf The buffer to deserialize
+     */
+    public StreamAddressResponse(ByteBuf buf) {
+        addresses = ICorfuPayload.listFromBuffer(buf, Long.class);
+    }
+
+    @Override
+    public void doSerialize(ByteBuf buf) {
+        ICorfuPayload.serialize(buf, addresses);
+    }
+}
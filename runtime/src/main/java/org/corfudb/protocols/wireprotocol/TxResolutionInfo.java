@@ -1,10 +1,13 @@
 package org.corfudb.protocols.wireprotocol;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 
 import io.netty.buffer.ByteBuf;
 
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -19,6 +22,13 @@ import org.corfudb.util.Utils;
  */
 public class TxResolutionInfo implements ICorfuPayload<TxResolutionInfo> {
 
+    /**
+     * Size of a conflict parameter hash, see {@link #hashConflictParam(UUID, byte[])}.
+     */
+    public static final int CONFLICT_HASH_SIZE = 16;
+
+    private static final HashFunction CONFLICT_HASH_FUNCTION = Hashing.murmur3_128();
+
     @Getter
     @Setter
     @SuppressWarnings({"checkstyle:abbreviationaswordinname", "checkstyle:membername"})
@@ -37,6 +47,13 @@ public class TxResolutionInfo implements ICorfuPayload<TxResolutionInfo> {
     @Getter
     final Map<UUID, Set<byte[]>>  writeConflictParams;
 
+    /**
+     * True if the conflict parameters were replaced by their hashes, see
+     * {@link #withHashedConflictParams()}.
+     */
+    @Getter
+    final boolean preHashed;
+
     /**
      * Constructor for TxResolutionInfo.
      *
@@ -48,6 +65,7 @@ public class TxResolutionInfo implements ICorfuPayload<TxResolutionInfo> {
         this.snapshotTimestamp = snapshotTimestamp;
         this.conflictSet = Collections.emptyMap();
         this.writeConflictParams = Collections.emptyMap();
+        this.preHashed = false;
     }
 
     /**
@@ -60,10 +78,16 @@ public class TxResolutionInfo implements ICorfuPayload<TxResolutionInfo> {
      */
     public TxResolutionInfo(UUID txId, long snapshotTimestamp, Map<UUID, Set<byte[]>>
             conflictMap, Map<UUID, Set<byte[]>> writeConflictParams) {
+        this(txId, snapshotTimestamp, conflictMap, writeConflictParams, false);
+    }
+
+    private TxResolutionInfo(UUID txId, long snapshotTimestamp, Map<UUID, Set<byte[]>>
+            conflictMap, Map<UUID, Set<byte[]>> writeConflictParams, boolean preHashed) {
         this.TXid = txId;
         this.snapshotTimestamp = snapshotTimestamp;
         this.conflictSet = conflictMap;
         this.writeConflictParams = writeConflictParams;
+        this.preHashed = preHashed;
     }
 
     /**
@@ -74,6 +98,11 @@ public class TxResolutionInfo implements ICorfuPayload<TxResolutionInfo> {
      * Next, entries are serialized one by one, first the key, then each value,
      * itself a set of objects.</p>
      *
+     * <p>Pre-hashed conflict parameters are followed by a trailing flag. Resolution infos
+     * with raw parameters don't have it, so they keep the format that sequencers which don't
+     * know pre-hashed parameters can read. The resolution info is the last field of a
+     * {@link TokenRequest}, so the flag is present if the message has bytes left.</p>
+     *
      * @param buf        The buffer to deserialize.
      */
     public TxResolutionInfo(ByteBuf buf) {
@@ -100,6 +129,48 @@ public class TxResolutionInfo implements ICorfuPayload<TxResolutionInfo> {
         }
 
         writeConflictParams = writeMapBuilder.build();
+        preHashed = buf.isReadable() && buf.readBoolean();
+    }
+
+    /**
+     * Hashes a conflict parameter of a stream into a fixed-width, 128-bit key. The sequencer
+     * tracks conflicts by these keys.
+     *
+     * @param streamId      the stream of the conflict parameter
+     * @param conflictParam the conflict parameter
+     * @return the {@link #CONFLICT_HASH_SIZE} bytes of the hash
+     */
+    public static byte[] hashConflictParam(UUID streamId, byte[] conflictParam) {
+        return CONFLICT_HASH_FUNCTION.newHasher()
+                .putLong(streamId.getMostSignificantBits())
+                .putLong(streamId.getLeastSignificantBits())
+                .putBytes(conflictParam)
+                .hash()
+                .asBytes();
+    }
+
+    /**
+     * Returns a copy of this resolution info whose conflict parameters are replaced by their
+     * hashes, so that the sequencer uses them as they are instead of hashing them.
+     *
+     * @return the resolution info, with hashed conflict parameters
+     */
+    public TxResolutionInfo withHashedConflictParams() {
+        if (preHashed) {
+            return this;
+        }
+        return new TxResolutionInfo(TXid, snapshotTimestamp, hashConflictParams(conflictSet),
+                hashConflictParams(writeConflictParams), true);
+    }
+
+    private static Map<UUID, Set<byte[]>> hashConflictParams(Map<UUID, Set<byte[]>> params) {
+        ImmutableMap.Builder<UUID, Set<byte[]>> hashed = ImmutableMap.builder();
+        params.forEach((streamId, conflictParams) -> {
+            Set<byte[]> hashes = new HashSet<>();
+            conflictParams.forEach(x -> hashes.add(hashConflictParam(streamId, x)));
+            hashed.put(streamId, hashes);
+        });
+        return hashed.build();
     }
 
     /**
@@ -125,6 +196,11 @@ public class TxResolutionInfo implements ICorfuPayload<TxResolutionInfo> {
             ICorfuPayload.serialize(buf, x.getKey());
             ICorfuPayload.serialize(buf, x.getValue());
         });
+
+        // raw parameters keep the original format, see TxResolutionInfo(ByteBuf)
+        if (preHashed) {
+            buf.writeBoolean(true);
+        }
     }
 
     @Override
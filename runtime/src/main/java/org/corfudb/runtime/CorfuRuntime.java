@@ -81,6 +81,15 @@ public class CorfuRuntime {
         /** True, if optimistic undo logging is disabled. */
         @Default boolean optimisticUndoDisabled = false;
 
+        /**
+         * True, if transactions send their conflict parameters hashed, so that the sequencer
+         * doesn't hash them. Sequencers that predate pre-hashed parameters key them apart from
+         * raw parameters, and would miss conflicts between clients sending either. Enable this
+         * only once every sequencer of the cluster is upgraded, upgrading the servers before
+         * the clients.
+         */
+        @Default boolean conflictParamsPreHashed = false;
+
         /**
          * Max size for a write request.
          */
@@ -134,6 +143,10 @@ public class CorfuRuntime {
         /** Whether or not hole filling should be disabled. */
         @Default boolean holeFillingDisabled = false;
 
+        /** Whether or not streams should be read from the stream index of the log units,
+         * instead of following backpointers one read at a time. */
+        @Default boolean streamIndexEnabled = true;
+
         /** Number of times to retry on an
          * {@link org.corfudb.runtime.exceptions.OverwriteException} before giving up. */
         @Default int writeRetry = 5;
@@ -27,6 +27,7 @@ import org.corfudb.protocols.wireprotocol.MultipleReadRequest;
 import org.corfudb.protocols.wireprotocol.RangeWriteMsg;
 import org.corfudb.protocols.wireprotocol.ReadRequest;
 import org.corfudb.protocols.wireprotocol.ReadResponse;
+import org.corfudb.protocols.wireprotocol.StreamAddressRequest;
 import org.corfudb.protocols.wireprotocol.TrimRequest;
 import org.corfudb.protocols.wireprotocol.WriteMode;
 import org.corfudb.protocols.wireprotocol.WriteRequest;
@@ -207,6 +208,20 @@ public class LogUnitClient extends AbstractClient {
         });
     }
 
+    /**
+     * Get the addresses of a stream that the log unit stores within a range.
+     *
+     * @param streamId the stream to get the addresses of
+     * @param start    first address of the range (inclusive)
+     * @param end      last address of the range (inclusive)
+     * @return CompletableFuture which returns the addresses in ascending order on completion.
+     */
+    public CompletableFuture<List<Long>> getStreamAddresses(UUID streamId, long start,
+                                                            long end) {
+        return sendMessageWithFuture(CorfuMsgType.STREAM_ADDRESS_REQUEST
+                .payloadMsg(new StreamAddressRequest(streamId, start, end)));
+    }
+
     /**
      * Get the global tail maximum address the log unit has written.
      *
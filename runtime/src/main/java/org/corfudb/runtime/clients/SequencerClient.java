@@ -66,4 +66,15 @@ public class SequencerClient extends AbstractClient {
         return sendMessageWithFuture(CorfuMsgType.BOOTSTRAP_SEQUENCER.payloadMsg(
                 new SequencerTailsRecoveryMsg(initialToken, sequencerTails, readyStateEpoch)));
     }
+
+    /**
+     * Fetches the latest snapshot of the sequencer state persisted by the sequencer.
+     *
+     * @return A CompletableFuture which completes with the snapshot. The global tail of the
+     *     snapshot is {@link org.corfudb.runtime.view.Address#NON_ADDRESS} if the sequencer
+     *     has no snapshot.
+     */
+    public CompletableFuture<SequencerTailsRecoveryMsg> getSnapshot() {
+        return sendMessageWithFuture(CorfuMsgType.SEQUENCER_SNAPSHOT_REQUEST.msg());
+    }
 }
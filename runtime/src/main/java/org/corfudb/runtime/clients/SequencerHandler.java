@@ -9,6 +9,7 @@ import lombok.Setter;
 
 import org.corfudb.protocols.wireprotocol.CorfuMsgType;
 import org.corfudb.protocols.wireprotocol.CorfuPayloadMsg;
+import org.corfudb.protocols.wireprotocol.SequencerTailsRecoveryMsg;
 import org.corfudb.protocols.wireprotocol.TokenResponse;
 
 
@@ -42,4 +43,10 @@ public class SequencerHandler implements IClient, IHandler<SequencerClient> {
                                               ChannelHandlerContext ctx, IClientRouter r) {
         return msg.getPayload();
     }
+
+    @ClientHandler(type = CorfuMsgType.SEQUENCER_SNAPSHOT_RESPONSE)
+    private static Object handleSnapshotResponse(CorfuPayloadMsg<SequencerTailsRecoveryMsg> msg,
+                                                 ChannelHandlerContext ctx, IClientRouter r) {
+        return msg.getPayload();
+    }
 }
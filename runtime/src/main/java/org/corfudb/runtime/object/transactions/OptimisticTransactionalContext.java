@@ -280,7 +280,7 @@ public class OptimisticTransactionalContext extends AbstractTransactionalContext
         // This step currently happens all at once, and we get an
         // address of -1L if it is rejected.
         long address = -1L;
-        final TxResolutionInfo txInfo =
+        TxResolutionInfo txInfo =
             // TxResolution info:
             // 1. snapshot timestamp
             // 2. a map of conflict params, arranged by streamID's
@@ -290,6 +290,11 @@ public class OptimisticTransactionalContext extends AbstractTransactionalContext
                 getSnapshotTimestamp(),
                 conflictSet.getHashedConflictSet(),
                 getWriteSetInfo().getHashedConflictSet());
+        // if enabled, the conflict-params are hashed into fixed-width keys here,
+        // so that the sequencer does no hashing on the commit path.
+        if (this.builder.runtime.getParameters().isConflictParamsPreHashed()) {
+            txInfo = txInfo.withHashedConflictParams();
+        }
 
         try {
             address = this.builder.runtime.getStreamsView()
@@ -8,11 +8,16 @@ import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.google.common.collect.Iterables;
 
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
@@ -223,6 +228,46 @@ public class AddressSpaceView extends AbstractView {
         return addressesMap;
     }
 
+    /**
+     * Get the addresses of a stream within a range of the address space, from the
+     * stream index of the log units.
+     *
+     * <p>Each log unit only indexes the addresses it stores, so the tail of every stripe
+     * of the layout segments that overlap the range is queried. The result can miss
+     * addresses that weren't replicated to the tail yet, or that a log unit doesn't have
+     * an open segment for, callers must not assume that it is complete.</p>
+     *
+     * @param streamId the stream to get the addresses of
+     * @param start    first address of the range (inclusive)
+     * @param end      last address of the range (inclusive)
+     * @return the addresses of the stream, in ascending order
+     */
+    public List<Long> getStreamAddresses(UUID streamId, long start, long end) {
+        return layoutHelper(e -> {
+            List<CompletableFuture<List<Long>>> futures = new ArrayList<>();
+            for (Layout.LayoutSegment segment : e.getLayout().getSegments()) {
+                long segmentEnd = segment.getEnd() == -1 ? Long.MAX_VALUE : segment.getEnd() - 1;
+                if (segment.getStart() > end || segmentEnd < start) {
+                    continue;
+                }
+
+                long from = Math.max(start, segment.getStart());
+                long to = Math.min(end, segmentEnd);
+                for (Layout.LayoutStripe stripe : segment.getStripes()) {
+                    List<String> logServers = stripe.getLogServers();
+                    futures.add(e.getLogUnitClient(logServers.get(logServers.size() - 1))
+                            .getStreamAddresses(streamId, from, to));
+                }
+            }
+
+            SortedSet<Long> addresses = new TreeSet<>();
+            for (CompletableFuture<List<Long>> future : futures) {
+                addresses.addAll(CFUtils.getUninterruptibly(future));
+            }
+            return new ArrayList<>(addresses);
+        });
+    }
+
     /**
      * Get the first address in the address space.
      */
@@ -2,16 +2,20 @@ package org.corfudb.runtime.view;
 
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 import javax.annotation.Nonnull;
 
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
+import org.corfudb.protocols.wireprotocol.SequencerTailsRecoveryMsg;
 import org.corfudb.recovery.FastObjectLoader;
 import org.corfudb.runtime.CorfuRuntime;
 import org.corfudb.runtime.exceptions.LayoutModificationException;
@@ -411,11 +415,49 @@ public class LayoutManagementView extends AbstractView {
         return maxTokenRequested;
     }
 
+    /**
+     * Fetches the latest snapshot taken by a primary sequencer at an epoch, from the
+     * sequencers of the new layout. A backup sequencer holds the snapshot it replicated from
+     * the primary, and the primary holds its own snapshot if it is still a sequencer.
+     * Unresponsive and unreachable sequencers are skipped.
+     *
+     * @param epoch     Epoch the primary sequencer took the snapshot at.
+     * @param newLayout Layout whose sequencers are queried.
+     * @return The snapshot with the highest global tail, or null if no sequencer has a
+     *     snapshot taken at the epoch.
+     */
+    private SequencerTailsRecoveryMsg getSequencerSnapshot(long epoch, Layout newLayout) {
+        RuntimeLayout runtimeLayout = runtime.getLayoutView().getRuntimeLayout(newLayout);
+        List<CompletableFuture<SequencerTailsRecoveryMsg>> futures = newLayout.getSequencers()
+                .stream()
+                .filter(s -> !newLayout.getUnresponsiveServers().contains(s))
+                .map(s -> runtimeLayout.getSequencerClient(s).getSnapshot())
+                .collect(Collectors.toList());
+
+        SequencerTailsRecoveryMsg latest = null;
+        for (CompletableFuture<SequencerTailsRecoveryMsg> future : futures) {
+            try {
+                SequencerTailsRecoveryMsg snapshot = CFUtils.getUninterruptibly(future);
+                // Only the primary sequencer of the epoch issued tokens since the snapshot, an
+                // older snapshot may have tails that were reset by a later failover.
+                if (snapshot.getReadyStateEpoch() == epoch
+                        && (latest == null || snapshot.getGlobalTail() > latest.getGlobalTail())) {
+                    latest = snapshot;
+                }
+            } catch (RuntimeException e) {
+                log.warn("getSequencerSnapshot: Failed to fetch snapshot, {}", e.toString());
+            }
+        }
+        return latest;
+    }
+
     /**
      * Reconfigures the sequencer.
      * If the primary sequencer has changed in the new layout,
      * the global tail of the log units are queried and used to set
      * the initial token of the new primary sequencer.
+     * The stream tails are recovered from the latest snapshot of the primary sequencer of the
+     * original layout, if any, and from the log written after the snapshot.
      *
      * @param originalLayout   Current layout to get the latest state of servers.
      * @param newLayout        New Layout to be reconfigured.
@@ -434,15 +476,37 @@ public class LayoutManagementView extends AbstractView {
             Layout.LayoutSegment latestSegment = newLayout.getSegments()
                     .get(newLayout.getSegments().size() - 1);
             maxTokenRequested = getMaxGlobalTail(newLayout, latestSegment);
+            // The original layout was sealed, which incremented its epoch. Its primary
+            // sequencer served the previous epoch.
+            SequencerTailsRecoveryMsg snapshot =
+                    getSequencerSnapshot(originalLayout.getEpoch() - 1, newLayout);
 
             FastObjectLoader fastObjectLoader = new FastObjectLoader(runtime);
             fastObjectLoader.setRecoverSequencerMode(true);
             fastObjectLoader.setLoadInCache(false);
 
-            // FastSMRLoader sets the logHead based on trim mark.
+            // FastSMRLoader sets the logHead based on trim mark. With a snapshot, only the
+            // log written after the snapshot is scanned.
+            if (snapshot != null) {
+                fastObjectLoader.setLogHead(Math.max(snapshot.getGlobalTail(),
+                        runtime.getAddressSpaceView().getTrimMark()));
+            }
             fastObjectLoader.setLogTail(maxTokenRequested);
             fastObjectLoader.loadMaps();
             streamTails = fastObjectLoader.getStreamTails();
+
+            if (snapshot != null) {
+                log.info("reconfigureSequencerServers: Recovered from snapshot with "
+                                + "globalTail = {}, scanned [{}, {}]", snapshot.getGlobalTail(),
+                        fastObjectLoader.getLogHead(), maxTokenRequested);
+                Map<UUID, Long> recoveredTails = new HashMap<>(snapshot.getStreamTails());
+                streamTails.forEach((stream, tail) ->
+                        recoveredTails.merge(stream, tail, Math::max));
+                streamTails = recoveredTails;
+
+                // Tokens issued before the snapshot may not have been written.
+                maxTokenRequested = Math.max(maxTokenRequested, snapshot.getGlobalTail() - 1);
+            }
             verifyStreamTailsMap(streamTails);
 
             // Incrementing the maxTokenRequested value for sequencer reset.
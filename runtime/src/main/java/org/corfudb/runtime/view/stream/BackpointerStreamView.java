@@ -1,5 +1,6 @@
 package org.corfudb.runtime.view.stream;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -301,6 +302,73 @@ public class BackpointerStreamView extends AbstractQueuedStreamView {
 
     }
 
+    /**
+     * Resolve the addresses of a stream from the stream index of the log units, and read
+     * them in a single batch instead of following backpointers one read at a time.
+     *
+     * <p>The index can be incomplete (e.g. a write wasn't replicated to the tail of its
+     * chain yet), so the addresses are only queued if the backpointers of the batch
+     * form a complete chain from the start address down to the stop address. Otherwise
+     * nothing is queued and the caller has to follow the backpointers, whose reads are
+     * likely to hit the cache filled by the batch read.</p>
+     *
+     * @param streamId     the stream to resolve
+     * @param queue        the queue to add the addresses of the stream to
+     * @param startAddress the latest address of the stream
+     * @param stopAddress  the address to resolve down to (exclusive)
+     * @return true if the addresses were resolved and queued
+     */
+    protected boolean followStreamIndex(final UUID streamId,
+                                        final NavigableSet<Long> queue,
+                                        final long startAddress,
+                                        final long stopAddress) {
+        if (runtime.getParameters().isBackpointersDisabled()
+                || !runtime.getParameters().isStreamIndexEnabled()
+                || startAddress <= stopAddress) {
+            return false;
+        }
+
+        Map<Long, ILogData> dataMap;
+        try {
+            List<Long> addresses = runtime.getAddressSpaceView()
+                    .getStreamAddresses(streamId, stopAddress + 1, startAddress);
+            if (!addresses.contains(startAddress)) {
+                log.trace("followStreamIndex: index of stream[{}] doesn't have address[{}]",
+                        streamId, startAddress);
+                return false;
+            }
+            dataMap = runtime.getAddressSpaceView().read(addresses);
+        } catch (TrimmedException te) {
+            return false;
+        } catch (RuntimeException e) {
+            log.warn("followStreamIndex: couldn't query the index of stream[{}]: {}",
+                    streamId, e.toString());
+            return false;
+        }
+
+        List<Long> chain = new ArrayList<>();
+        long currentAddress = startAddress;
+        while (currentAddress > stopAddress && Address.isAddress(currentAddress)) {
+            ILogData d = dataMap.get(currentAddress);
+            if (d == null || !d.containsStream(streamId) || !d.hasBackpointer(streamId)) {
+                log.trace("followStreamIndex: chain of stream[{}] broken at address[{}]",
+                        streamId, currentAddress);
+                return false;
+            }
+            chain.add(currentAddress);
+
+            long backpointer = d.getBackpointer(streamId);
+            if (!Address.isAddress(backpointer) && backpointer != Address.NON_EXIST) {
+                return false;
+            }
+            currentAddress = backpointer;
+        }
+
+        backpointerCount += chain.size();
+        queue.addAll(chain);
+        return true;
+    }
+
     protected BackpointerOp resolveCheckpoint(final QueuedStreamContext context, ILogData data,
                                               long maxGlobal) {
         if (data.hasCheckpointMetadata()) {
@@ -443,10 +511,14 @@ public class BackpointerStreamView extends AbstractQueuedStreamView {
         // should be reflected. For each address which is less than
         // maxGlobalAddress, we insert it into the read queue.
 
-        followBackpointers(context.id, context.readQueue,
-                latestTokenValue,
-                Long.max(context.globalPointer, context.checkpointSnapshotAddress),
-                d -> BackpointerOp.INCLUDE);
+        final long stopAddress =
+                Long.max(context.globalPointer, context.checkpointSnapshotAddress);
+        if (!followStreamIndex(context.id, context.readQueue, latestTokenValue, stopAddress)) {
+            followBackpointers(context.id, context.readQueue,
+                    latestTokenValue,
+                    stopAddress,
+                    d -> BackpointerOp.INCLUDE);
+        }
 
         return ! context.readCpQueue.isEmpty() || !context.readQueue.isEmpty();
     }
@@ -19,7 +19,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Created by mwei on 12/12/15.
@@ -83,6 +85,33 @@ public abstract class AbstractServerTest extends AbstractCorfuTest {
                 .setRequestID(requestCounter.getAndIncrement())
                 .setEpoch(0L);
         router.sendServerMessage(message);
+        awaitResponse(message);
+    }
+
+    /**
+     * Wait for the response to a message, like a client waits for its request to
+     * complete. Servers can respond after the handler returns (i.e. once a write is
+     * durable).
+     *
+     * @param message The message sent to the server.
+     */
+    private void awaitResponse(CorfuMsg message) {
+        if (router.handlerMap.get(message.getMsgType()) == null) {
+            return;
+        }
+        long deadline = System.nanoTime() + PARAMETERS.TIMEOUT_NORMAL.toNanos();
+        while (!hasResponse(message) && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private boolean hasResponse(CorfuMsg message) {
+        List<CorfuMsg> responses = router.getResponseMessages();
+        synchronized (responses) {
+            return responses.stream()
+                    .anyMatch(r -> r.getRequestID() == message.getRequestID()
+                            && message.getClientID().equals(r.getClientID()));
+        }
     }
 
     /**
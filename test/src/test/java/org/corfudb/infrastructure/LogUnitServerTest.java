@@ -3,9 +3,12 @@ package org.corfudb.infrastructure;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import org.assertj.core.api.Assertions;
+import org.corfudb.infrastructure.log.InMemoryStreamLog;
+import org.corfudb.infrastructure.log.StreamLog;
 import org.corfudb.infrastructure.log.StreamLogFiles;
 import org.corfudb.protocols.wireprotocol.*;
 import org.corfudb.runtime.CorfuRuntime;
+import org.corfudb.runtime.exceptions.OverwriteException;
 import org.corfudb.runtime.view.Address;
 import org.corfudb.util.serializer.Serializers;
 import org.junit.Test;
@@ -13,16 +16,22 @@ import org.junit.Test;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Random;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.corfudb.infrastructure.LogUnitServerAssertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 /**
  * Created by mwei on 2/4/16.
@@ -421,6 +430,130 @@ public class LogUnitServerTest extends AbstractServerTest {
         assertThat(s1).hasCorrectCacheSize(randomCacheRatio);
     }
 
+    @Test
+    public void checkGroupCommitCompletesWritesAsynchronously() throws Exception {
+        StreamLog streamLog = new InMemoryStreamLog();
+        final long maxDelayMicros = 200;
+        BatchWriter<Long, ILogData> batchWriter = new BatchWriter<>(streamLog, maxDelayMicros);
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (long address = 0; address < PARAMETERS.NUM_ITERATIONS_MODERATE; address++) {
+            ByteBuf b = Unpooled.buffer();
+            Serializers.CORFU.serialize(Long.toString(address).getBytes(), b);
+            futures.add(batchWriter.writeAsync(address, new LogData(DataType.DATA, b)));
+        }
+
+        // Callbacks don't run on the write processor
+        CompletableFuture<String> completionThread = futures.get(0)
+                .thenApply(v -> Thread.currentThread().getName());
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
+                .get(PARAMETERS.TIMEOUT_NORMAL.toMillis(), TimeUnit.MILLISECONDS);
+        assertThat(completionThread.get(PARAMETERS.TIMEOUT_NORMAL.toMillis(),
+                TimeUnit.MILLISECONDS)).doesNotStartWith("LogUnit-Write-Processor");
+
+        for (long address = 0; address < PARAMETERS.NUM_ITERATIONS_MODERATE; address++) {
+            assertThat(streamLog.read(address)).isNotNull();
+        }
+
+        // An overwrite fails only its own future
+        ByteBuf b = Unpooled.buffer();
+        Serializers.CORFU.serialize("0".getBytes(), b);
+        CompletableFuture<Void> overwrite = batchWriter.writeAsync(0L,
+                new LogData(DataType.DATA, b));
+        assertThatThrownBy(() -> overwrite.get(PARAMETERS.TIMEOUT_NORMAL.toMillis(),
+                TimeUnit.MILLISECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(OverwriteException.class);
+
+        batchWriter.close();
+    }
 
-}
+    private LogData getLogData(long address, String payload) {
+        ByteBuf b = Unpooled.buffer();
+        Serializers.CORFU.serialize(payload.getBytes(), b);
+        LogData ld = new LogData(DataType.DATA, b);
+        ld.setGlobalAddress(address);
+        return ld;
+    }
+
+    @Test
+    public void checkOffHeapCacheEvictsByBytes() {
+        final int numEntries = 10;
+        final long entrySize;
+        try (OffHeapLogDataCache sizing = new OffHeapLogDataCache(Long.MAX_VALUE)) {
+            sizing.put(0L, getLogData(0L, "data"));
+            entrySize = sizing.getResidentBytes();
+        }
+
+        OffHeapLogDataCache cache = new OffHeapLogDataCache(entrySize * numEntries);
+        for (long address = 0; address < numEntries; address++) {
+            cache.put(address, getLogData(address, "data"));
+        }
+        assertThat(cache.getSize()).isEqualTo(numEntries);
+        assertThat(cache.getResidentBytes()).isEqualTo(entrySize * numEntries);
+
+        // Reading address 0 gives it a second chance, so address 1 is evicted instead
+        assertThat(cache.get(0L).getGlobalAddress()).isEqualTo(0L);
+        cache.put(numEntries, getLogData(numEntries, "data"));
+        assertThat(cache.getSize()).isEqualTo(numEntries);
+        assertThat(cache.getEvictionCount()).isEqualTo(1L);
+        assertThat(cache.get(1L)).isNull();
+        assertThat(cache.get(0L).getData()).isEqualTo(getLogData(0L, "data").getData());
+
+        final long trimMark = 5L;
+        cache.invalidateUpTo(trimMark);
+        assertThat(cache.get(trimMark)).isNull();
+        assertThat((long) cache.getSize()).isEqualTo(numEntries - trimMark);
+        assertThat(cache.getResidentBytes()).isEqualTo(entrySize * (numEntries - trimMark));
+
+        final double expectedHitRate = 0.5;
+        assertThat(cache.getHitRate()).isEqualTo(expectedHitRate);
+
+        cache.close();
+        assertThat(cache.getResidentBytes()).isEqualTo(0L);
+    }
+
+    @Test
+    public void checkOffHeapCacheServesMisses() {
+        final String offHeapSize = "1000000";
+        LogUnitServer s1 = new LogUnitServer(new ServerContextBuilder()
+                .setCacheOffHeapSize(offHeapSize)
+                .build());
+
+        final long address = 10L;
+        s1.getOffHeapCache().put(address, getLogData(address, "offheap"));
+        assertThat(s1)
+                .matchesDataAtAddress(address, "offheap".getBytes());
+        s1.shutdown();
+    }
 
+    @Test
+    public void checkReadWaitsForPendingWrite() {
+        // The group commit of the write stays open for the max delay after the write
+        // is appended, the read must not return the entry before it is synced
+        final long batchMaxDelayMillis = 200;
+        LogUnitServer s1 = new LogUnitServer(new ServerContextBuilder()
+                .setBatchMaxDelay(Long.toString(
+                        TimeUnit.MILLISECONDS.toMicros(batchMaxDelayMillis)))
+                .build());
+        setServer(s1);
+
+        final long address = 0L;
+        CorfuMsg write = CorfuMsgType.WRITE.payloadMsg(
+                new WriteRequest(getLogData(address, "0")));
+        write.setClientID(testClientId)
+                .setRequestID(requestCounter.getAndIncrement())
+                .setEpoch(0L);
+        router.sendServerMessage(write);
+        sendMessage(CorfuMsgType.READ_REQUEST.payloadMsg(new ReadRequest(address)));
+
+        List<CorfuMsgType> responses = new ArrayList<>();
+        getResponseMessages().forEach(r -> responses.add(r.getMsgType()));
+        assertThat(responses)
+                .containsExactly(CorfuMsgType.WRITE_OK, CorfuMsgType.READ_RESPONSE);
+        ReadResponse rr = getLastPayloadMessageAs(ReadResponse.class);
+        assertThat(rr.getAddresses().get(address).getType()).isEqualTo(DataType.DATA);
+        s1.shutdown();
+    }
+}
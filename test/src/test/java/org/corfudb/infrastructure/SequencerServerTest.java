@@ -1,13 +1,30 @@
 package org.corfudb.infrastructure;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
 import org.corfudb.protocols.wireprotocol.*;
+import org.corfudb.runtime.view.Address;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -219,4 +236,566 @@ public class SequencerServerTest extends AbstractServerTest {
                 new TokenRequest(0L, Collections.singleton(streamC))));
         assertThat(getLastPayloadMessageAs(TokenResponse.class).getToken().getTokenValue()).isEqualTo(newTailC);
     }
+
+    /**
+     * The snapshot holds the tails at the time it was taken, and is served even if the
+     * sequencer isn't ready. A sequencer that isn't ready doesn't overwrite it.
+     */
+    @Test
+    public void snapshotIsPersistedAndServed() {
+        UUID streamA = UUID.nameUUIDFromBytes("streamA".getBytes());
+        UUID streamB = UUID.nameUUIDFromBytes("streamB".getBytes());
+        final long snapshotTail = 3L;
+        final long tailA = 2L;
+        final long tailB = 1L;
+
+        sendMessage(CorfuMsgType.SEQUENCER_SNAPSHOT_REQUEST.msg());
+        assertThat(getLastPayloadMessageAs(SequencerTailsRecoveryMsg.class).getGlobalTail())
+                .isEqualTo(Address.NON_ADDRESS);
+
+        sendMessage(new CorfuPayloadMsg<>(CorfuMsgType.TOKEN_REQ,
+                new TokenRequest(1L, Collections.singleton(streamA))));
+        sendMessage(new CorfuPayloadMsg<>(CorfuMsgType.TOKEN_REQ,
+                new TokenRequest(1L, Collections.singleton(streamB))));
+        sendMessage(new CorfuPayloadMsg<>(CorfuMsgType.TOKEN_REQ,
+                new TokenRequest(1L, Collections.singleton(streamA))));
+        server.takeSnapshot();
+
+        // Neither a later token nor a snapshot of a sequencer that isn't ready is persisted
+        sendMessage(new CorfuPayloadMsg<>(CorfuMsgType.TOKEN_REQ,
+                new TokenRequest(1L, Collections.singleton(streamB))));
+        server.setReadyStateEpoch(-1L);
+        server.takeSnapshot();
+
+        sendMessage(CorfuMsgType.SEQUENCER_SNAPSHOT_REQUEST.msg());
+        SequencerTailsRecoveryMsg snapshot =
+                getLastPayloadMessageAs(SequencerTailsRecoveryMsg.class);
+        assertThat(snapshot.getGlobalTail()).isEqualTo(snapshotTail);
+        assertThat(snapshot.getStreamTails())
+                .containsEntry(streamA, tailA)
+                .containsEntry(streamB, tailB)
+                .hasSize(2);
+        assertThat(snapshot.getReadyStateEpoch()).isEqualTo(0L);
+    }
+
+    /**
+     * Stream tokens are allocated concurrently, but the backpointers of a stream must
+     * still chain its tokens in address order.
+     */
+    @Test
+    public void concurrentStreamTokensChainBackpointers() throws Exception {
+        final int numStreams = PARAMETERS.CONCURRENCY_SOME;
+        List<UUID> streams = new ArrayList<>();
+        for (int i = 0; i < numStreams; i++) {
+            streams.add(UUID.nameUUIDFromBytes(("stream" + i).getBytes()));
+        }
+
+        scheduleConcurrently(PARAMETERS.CONCURRENCY_LOTS, threadNumber -> {
+            for (int i = 0; i < PARAMETERS.NUM_ITERATIONS_LOW; i++) {
+                UUID stream = streams.get((threadNumber + i) % numStreams);
+                sendMessage(new CorfuPayloadMsg<>(CorfuMsgType.TOKEN_REQ,
+                        new TokenRequest(1L, Collections.singleton(stream))));
+            }
+        });
+        executeScheduled(PARAMETERS.CONCURRENCY_LOTS, PARAMETERS.TIMEOUT_LONG);
+
+        List<TokenResponse> responses = getTokenResponses();
+        assertThat(responses)
+                .hasSize(PARAMETERS.CONCURRENCY_LOTS * PARAMETERS.NUM_ITERATIONS_LOW);
+        assertThat(responses.stream().map(x -> x.getToken().getTokenValue()).distinct())
+                .hasSize(responses.size());
+
+        for (UUID stream : streams) {
+            // Token -> backpointer of the stream, in address order
+            TreeMap<Long, Long> backpointers = new TreeMap<>();
+            responses.stream()
+                    .filter(x -> x.getBackpointerMap().containsKey(stream))
+                    .forEach(x -> backpointers.put(x.getToken().getTokenValue(),
+                            x.getBackpointerMap().get(stream)));
+
+            long previous = Address.NON_EXIST;
+            for (Map.Entry<Long, Long> entry : backpointers.entrySet()) {
+                assertThat(entry.getValue()).isEqualTo(previous);
+                previous = entry.getKey();
+            }
+
+            sendMessage(new CorfuPayloadMsg<>(CorfuMsgType.TOKEN_REQ,
+                    new TokenRequest(0L, Collections.singleton(stream))));
+            assertThat(getLastPayloadMessageAs(TokenResponse.class).getToken().getTokenValue())
+                    .isEqualTo(previous);
+        }
+    }
+
+    /**
+     * Stream tail queries interleaved with allocations on the stream never return a tail
+     * older than a global tail queried before them. Every token is allocated on the stream,
+     * so a transaction snapshotting the global tail sees all of them in the stream tail.
+     */
+    @Test
+    public void streamTailQueryIsNotBehindGlobalTail() throws Exception {
+        UUID streamA = UUID.nameUUIDFromBytes("streamA".getBytes());
+        final int numWriters = PARAMETERS.CONCURRENCY_SOME;
+        final int numReaders = PARAMETERS.CONCURRENCY_SOME;
+        sendMessage(new CorfuPayloadMsg<>(CorfuMsgType.TOKEN_REQ,
+                new TokenRequest(1L, Collections.singleton(streamA))));
+
+        scheduleConcurrently(numWriters, threadNumber -> {
+            for (int i = 0; i < PARAMETERS.NUM_ITERATIONS_MODERATE; i++) {
+                sendMessage(new CorfuPayloadMsg<>(CorfuMsgType.TOKEN_REQ,
+                        new TokenRequest(1L, Collections.singleton(streamA))));
+            }
+        });
+        scheduleConcurrently(numReaders, threadNumber -> {
+            for (int i = 0; i < PARAMETERS.NUM_ITERATIONS_LOW; i++) {
+                long globalTail = requestToken(new TokenRequest(0L,
+                        Collections.emptySet())).getToken().getTokenValue();
+                long streamTail = requestToken(new TokenRequest(0L,
+                        Collections.singleton(streamA))).getToken().getTokenValue();
+                assertThat(streamTail).isGreaterThanOrEqualTo(globalTail);
+            }
+        });
+        executeScheduled(numWriters + numReaders, PARAMETERS.TIMEOUT_LONG);
+    }
+
+    /**
+     * Trims interleaved with transactions never let a transaction commit over a conflicting
+     * update: a trim either precedes the trim mark check of the transaction, which then
+     * aborts, or follows its conflict lookups.
+     */
+    @Test
+    public void trimsInterleavedWithCommitsDetectConflicts() throws Exception {
+        final int numCommitters = PARAMETERS.CONCURRENCY_SOME;
+        CountDownLatch committing = new CountDownLatch(numCommitters);
+
+        scheduleConcurrently(numCommitters, threadNumber -> {
+            UUID stream = UUID.nameUUIDFromBytes(("stream" + threadNumber).getBytes());
+            Map<UUID, Set<byte[]>> conflictMap = Collections.singletonMap(stream,
+                    Collections.singleton("key".getBytes()));
+            try {
+                for (int i = 0; i < PARAMETERS.NUM_ITERATIONS_MODERATE; i++) {
+                    long address = requestToken(new TokenRequest(1L,
+                            Collections.singleton(stream), new TxResolutionInfo(
+                            UUID.randomUUID(), Address.MAX, Collections.emptyMap(),
+                            conflictMap))).getToken().getTokenValue();
+                    TokenResponse read = requestToken(new TokenRequest(1L,
+                            Collections.singleton(stream), new TxResolutionInfo(
+                            UUID.randomUUID(), address - 1, conflictMap,
+                            Collections.emptyMap())));
+                    assertThat(read.getRespType()).isNotEqualTo(TokenType.NORMAL);
+                }
+            } finally {
+                committing.countDown();
+            }
+        });
+        scheduleConcurrently(threadNumber -> {
+            while (committing.getCount() > 0) {
+                long tail = requestToken(new TokenRequest(0L, Collections.emptySet()))
+                        .getToken().getTokenValue();
+                sendMessage(new CorfuPayloadMsg<>(CorfuMsgType.SEQUENCER_TRIM_REQ, tail + 1));
+            }
+        });
+        executeScheduled(numCommitters + 1, PARAMETERS.TIMEOUT_LONG);
+    }
+
+    /**
+     * Measures the token throughput of the sequencer as the number of clients grows, each
+     * client writing to its own stream.
+     */
+    @Test
+    public void tokenThroughputWithClients() throws Exception {
+        final int[] clientCounts = {PARAMETERS.CONCURRENCY_ONE, PARAMETERS.CONCURRENCY_SOME,
+                PARAMETERS.CONCURRENCY_LOTS};
+        final int tokensPerRun = PARAMETERS.NUM_ITERATIONS_LARGE;
+
+        for (int clients : clientCounts) {
+            getResponseMessages().clear();
+            final int tokensPerClient = tokensPerRun / clients;
+
+            scheduleConcurrently(clients, threadNumber -> {
+                UUID stream = UUID.nameUUIDFromBytes(("client" + threadNumber).getBytes());
+                for (int i = 0; i < tokensPerClient; i++) {
+                    sendMessage(new CorfuPayloadMsg<>(CorfuMsgType.TOKEN_REQ,
+                            new TokenRequest(1L, Collections.singleton(stream))));
+                }
+            });
+            long start = System.currentTimeMillis();
+            executeScheduled(clients, PARAMETERS.TIMEOUT_LONG);
+            calculateRequestsPerSecond("Clients" + clients, tokensPerClient * clients, start);
+
+            assertThat(getTokenResponses()).hasSize(tokensPerClient * clients);
+        }
+    }
+
+    /**
+     * Token requests read from a connection in one pass are served in arrival order, and
+     * their responses are flushed once.
+     */
+    @Test
+    public void tokenRequestsAreBatched() throws Exception {
+        final int batchSize = PARAMETERS.NUM_ITERATIONS_LOW;
+        List<CorfuMsg> responses = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger flushes = new AtomicInteger();
+        CountDownLatch flushed = new CountDownLatch(1);
+
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                responses.add((CorfuMsg) msg);
+            }
+
+            @Override
+            public void flush(ChannelHandlerContext ctx) {
+                flushes.incrementAndGet();
+                flushed.countDown();
+            }
+        }, new NettyServerRouter(Collections.singletonList(server)));
+
+        List<Object> requests = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            requests.add(new CorfuPayloadMsg<>(CorfuMsgType.TOKEN_REQ,
+                    new TokenRequest(1L, Collections.emptySet()))
+                    .setClientID(testClientId)
+                    .setRequestID(i)
+                    .setEpoch(0L));
+        }
+        channel.writeInbound(requests.toArray());
+
+        assertThat(flushed.await(PARAMETERS.TIMEOUT_NORMAL.toMillis(), TimeUnit.MILLISECONDS))
+                .isTrue();
+        assertThat(flushes.get()).isEqualTo(1);
+        assertThat(responses).hasSize(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            CorfuMsg response = responses.get(i);
+            assertThat(response.getRequestID()).isEqualTo(i);
+            assertThat(((CorfuPayloadMsg<TokenResponse>) response).getPayload().getToken()
+                    .getTokenValue()).isEqualTo(i);
+        }
+        channel.finishAndReleaseAll();
+    }
+
+    /**
+     * Token requests read in one pass are split in batches of at most
+     * {@link NettyServerRouter#MAX_BATCH_SIZE}, which are still served in arrival order.
+     */
+    @Test
+    public void splitBatchesAreServedInOrder() throws Exception {
+        final int numBatches = 3;
+        final int numRequests = NettyServerRouter.MAX_BATCH_SIZE * (numBatches - 1) + 1;
+        List<CorfuMsg> responses = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch flushed = new CountDownLatch(numBatches);
+
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                responses.add((CorfuMsg) msg);
+            }
+
+            @Override
+            public void flush(ChannelHandlerContext ctx) {
+                flushed.countDown();
+            }
+        }, new NettyServerRouter(Collections.singletonList(server)));
+
+        List<Object> requests = new ArrayList<>();
+        for (int i = 0; i < numRequests; i++) {
+            requests.add(new CorfuPayloadMsg<>(CorfuMsgType.TOKEN_REQ,
+                    new TokenRequest(1L, Collections.emptySet()))
+                    .setClientID(testClientId)
+                    .setRequestID(i)
+                    .setEpoch(0L));
+        }
+        channel.writeInbound(requests.toArray());
+
+        assertThat(flushed.await(PARAMETERS.TIMEOUT_NORMAL.toMillis(), TimeUnit.MILLISECONDS))
+                .isTrue();
+        assertThat(responses).hasSize(numRequests);
+        for (int i = 0; i < numRequests; i++) {
+            CorfuMsg response = responses.get(i);
+            assertThat(response.getRequestID()).isEqualTo(i);
+            assertThat(((CorfuPayloadMsg<TokenResponse>) response).getPayload().getToken()
+                    .getTokenValue()).isEqualTo(i);
+        }
+        channel.finishAndReleaseAll();
+    }
+
+    /**
+     * Conflict parameters are tracked by their 128-bit hash, whether the client sends them
+     * raw or pre-hashed.
+     */
+    @Test
+    public void conflictParamsMayBePreHashed() {
+        UUID streamA = UUID.nameUUIDFromBytes("streamA".getBytes());
+        byte[] conflictParam = "key".getBytes();
+        Map<UUID, Set<byte[]>> conflictMap = Collections.singletonMap(streamA,
+                Collections.singleton(conflictParam));
+
+        // A raw write conflicts with a pre-hashed read
+        TxResolutionInfo write = new TxResolutionInfo(UUID.randomUUID(), Address.NEVER_READ,
+                Collections.emptyMap(), conflictMap);
+        assertThat(requestTxToken(streamA, write).getRespType()).isEqualTo(TokenType.NORMAL);
+
+        TxResolutionInfo read = new TxResolutionInfo(UUID.randomUUID(), Address.NEVER_READ,
+                conflictMap, Collections.emptyMap()).withHashedConflictParams();
+        TokenResponse response = requestTxToken(streamA, read);
+        assertThat(response.getRespType()).isEqualTo(TokenType.TX_ABORT_CONFLICT);
+        assertThat(response.getConflictKey())
+                .isEqualTo(TxResolutionInfo.hashConflictParam(streamA, conflictParam));
+
+        // A pre-hashed write conflicts with a raw read
+        sendMessage(new CorfuPayloadMsg<>(CorfuMsgType.TOKEN_REQ,
+                new TokenRequest(0L, Collections.emptySet())));
+        long snapshot = getLastPayloadMessageAs(TokenResponse.class).getToken().getTokenValue();
+
+        write = new TxResolutionInfo(UUID.randomUUID(), snapshot, Collections.emptyMap(),
+                conflictMap).withHashedConflictParams();
+        assertThat(requestTxToken(streamA, write).getRespType()).isEqualTo(TokenType.NORMAL);
+
+        read = new TxResolutionInfo(UUID.randomUUID(), snapshot, conflictMap,
+                Collections.emptyMap());
+        assertThat(requestTxToken(streamA, read).getRespType())
+                .isEqualTo(TokenType.TX_ABORT_CONFLICT);
+    }
+
+    /**
+     * Raw conflict parameters are serialized in the format of the sequencers that predate
+     * pre-hashed parameters, and the sequencer reads both formats off the wire.
+     */
+    @Test
+    public void rawConflictParamsKeepTheirWireFormat() {
+        UUID streamA = UUID.nameUUIDFromBytes("streamA".getBytes());
+        Map<UUID, Set<byte[]>> conflictMap = Collections.singletonMap(streamA,
+                Collections.singleton("key".getBytes()));
+        TxResolutionInfo raw = new TxResolutionInfo(UUID.randomUUID(), Address.NEVER_READ,
+                conflictMap, conflictMap);
+
+        // The format without the pre-hashed flag
+        ByteBuf legacy = Unpooled.buffer();
+        ICorfuPayload.serialize(legacy, raw.getTXid());
+        legacy.writeLong(raw.getSnapshotTimestamp());
+        for (Map<UUID, Set<byte[]>> params : Arrays.asList(conflictMap, conflictMap)) {
+            legacy.writeInt(params.size());
+            params.forEach((k, v) -> {
+                ICorfuPayload.serialize(legacy, k);
+                ICorfuPayload.serialize(legacy, v);
+            });
+        }
+        ByteBuf serialized = Unpooled.buffer();
+        raw.doSerialize(serialized);
+        assertThat(serialized).isEqualTo(legacy);
+
+        TxResolutionInfo deserialized = new TxResolutionInfo(legacy);
+        assertThat(deserialized.isPreHashed()).isFalse();
+        assertThat(legacy.isReadable()).isFalse();
+        serialized.release();
+        legacy.release();
+
+        // A raw write read off the wire conflicts with a pre-hashed read read off the wire
+        CorfuMsg write = new CorfuPayloadMsg<>(CorfuMsgType.TOKEN_REQ,
+                new TokenRequest(1L, Collections.singleton(streamA), new TxResolutionInfo(
+                        UUID.randomUUID(), Address.NEVER_READ, Collections.emptyMap(),
+                        conflictMap)));
+        sendMessage(getRouter().simulateSerialization(write));
+        assertThat(getLastPayloadMessageAs(TokenResponse.class).getRespType())
+                .isEqualTo(TokenType.NORMAL);
+
+        CorfuMsg read = new CorfuPayloadMsg<>(CorfuMsgType.TOKEN_REQ,
+                new TokenRequest(1L, Collections.singleton(streamA), new TxResolutionInfo(
+                        UUID.randomUUID(), Address.NEVER_READ, conflictMap,
+                        Collections.emptyMap()).withHashedConflictParams()));
+        sendMessage(getRouter().simulateSerialization(read));
+        assertThat(getLastPayloadMessageAs(TokenResponse.class).getRespType())
+                .isEqualTo(TokenType.TX_ABORT_CONFLICT);
+    }
+
+    /**
+     * Once the conflict keys exceed the cache size, the oldest keys are evicted and
+     * transactions that read them from an older snapshot abort.
+     */
+    @Test
+    public void evictedConflictKeysAbortOlderSnapshots() {
+        final int cacheSize = 64;
+        server = new SequencerServer(new ServerContextBuilder()
+                .setSeqCache(Integer.toString(cacheSize))
+                .build());
+        server.setReadyStateEpoch(0L);
+        setServer(server);
+
+        UUID streamA = UUID.nameUUIDFromBytes("streamA".getBytes());
+        final int numKeys = cacheSize * PARAMETERS.CONCURRENCY_SOME;
+        for (int i = 0; i < numKeys; i++) {
+            Set<byte[]> conflictParams = new HashSet<>();
+            conflictParams.add(Integer.toString(i).getBytes());
+            TxResolutionInfo write = new TxResolutionInfo(UUID.randomUUID(), i,
+                    Collections.emptyMap(), Collections.singletonMap(streamA, conflictParams));
+            assertThat(requestTxToken(streamA, write).getRespType())
+                    .isEqualTo(TokenType.NORMAL);
+        }
+        assertThat(server.getConflictWindow().size()).isLessThanOrEqualTo(cacheSize);
+
+        // The first key was evicted, a read of it from before its update aborts
+        TxResolutionInfo read = new TxResolutionInfo(UUID.randomUUID(), Address.NEVER_READ,
+                Collections.singletonMap(streamA, Collections.singleton("0".getBytes())),
+                Collections.emptyMap());
+        assertThat(requestTxToken(streamA, read).getRespType())
+                .isEqualTo(TokenType.TX_ABORT_SEQ_OVERFLOW);
+
+        // The last key is still tracked, a read from after its update commits
+        read = new TxResolutionInfo(UUID.randomUUID(), numKeys,
+                Collections.singletonMap(streamA,
+                        Collections.singleton(Integer.toString(numKeys - 1).getBytes())),
+                Collections.emptyMap());
+        assertThat(requestTxToken(streamA, read).getRespType()).isEqualTo(TokenType.NORMAL);
+    }
+
+    /**
+     * The conflict window evicts its oldest keys, so transactions reading an evicted key
+     * only abort if their snapshot is older than the eviction watermark.
+     */
+    @Test
+    public void conflictWindowWatermarkIsPrecise() {
+        final int windowSize = 1024;
+        server = new SequencerServer(new ServerContextBuilder()
+                .setSeqCache(Integer.toString(windowSize))
+                .build());
+        server.setReadyStateEpoch(0L);
+        setServer(server);
+
+        UUID streamA = UUID.nameUUIDFromBytes("streamA".getBytes());
+        final int numKeys = windowSize * 2;
+        long lastAddress = Address.NON_ADDRESS;
+        for (int i = 0; i < numKeys; i++) {
+            TxResolutionInfo write = new TxResolutionInfo(UUID.randomUUID(), Address.MAX,
+                    Collections.emptyMap(), Collections.singletonMap(streamA,
+                    Collections.singleton(Integer.toString(i).getBytes())));
+            lastAddress = requestTxToken(streamA, write).getToken().getTokenValue();
+        }
+        assertThat(server.getConflictWindow().size()).isLessThanOrEqualTo(windowSize);
+
+        long watermark = (Long) ServerContext.getMetrics().getGauges()
+                .get(SequencerServer.CONFLICT_WINDOW_WATERMARK_METRIC).getValue();
+        assertThat(watermark).isGreaterThanOrEqualTo(windowSize / 2)
+                .isLessThan(lastAddress);
+
+        // The first key was evicted
+        Map<UUID, Set<byte[]>> readFirstKey = Collections.singletonMap(streamA,
+                Collections.singleton("0".getBytes()));
+        TxResolutionInfo read = new TxResolutionInfo(UUID.randomUUID(), watermark - 1,
+                readFirstKey, Collections.emptyMap());
+        assertThat(requestTxToken(streamA, read).getRespType())
+                .isEqualTo(TokenType.TX_ABORT_SEQ_OVERFLOW);
+
+        read = new TxResolutionInfo(UUID.randomUUID(), watermark, readFirstKey,
+                Collections.emptyMap());
+        assertThat(requestTxToken(streamA, read).getRespType()).isEqualTo(TokenType.NORMAL);
+    }
+
+    /**
+     * A key still in the window is checked against its own update only, even if the
+     * watermark of the keys evicted from other segments is past the snapshot.
+     */
+    @Test
+    public void trackedConflictKeysIgnoreTheWatermark() {
+        final int windowSize = 1024;
+        server = new SequencerServer(new ServerContextBuilder()
+                .setSeqCache(Integer.toString(windowSize))
+                .build());
+        server.setReadyStateEpoch(0L);
+        setServer(server);
+
+        UUID streamA = UUID.nameUUIDFromBytes("streamA".getBytes());
+        byte[] tracked = "tracked".getBytes();
+        byte[] trackedKey = TxResolutionInfo.hashConflictParam(streamA, tracked);
+        long snapshot = requestTxToken(streamA, new TxResolutionInfo(UUID.randomUUID(),
+                Address.MAX, Collections.emptyMap(),
+                Collections.singletonMap(streamA, Collections.singleton(tracked))))
+                .getToken().getTokenValue();
+
+        // Update keys of the other segments of the window until some are evicted
+        final int segmentMask = 63;
+        long watermark = Address.NOT_FOUND;
+        for (int i = 0; watermark <= snapshot; i++) {
+            byte[] param = Integer.toString(i).getBytes();
+            byte[] key = TxResolutionInfo.hashConflictParam(streamA, param);
+            if ((key[key.length - 1] & segmentMask)
+                    == (trackedKey[trackedKey.length - 1] & segmentMask)) {
+                continue;
+            }
+            requestTxToken(streamA, new TxResolutionInfo(UUID.randomUUID(), Address.MAX,
+                    Collections.emptyMap(),
+                    Collections.singletonMap(streamA, Collections.singleton(param))));
+            watermark = (Long) ServerContext.getMetrics().getGauges()
+                    .get(SequencerServer.CONFLICT_WINDOW_WATERMARK_METRIC).getValue();
+        }
+        assertThat(server.getConflictWindow().get(trackedKey)).isEqualTo(snapshot);
+
+        TxResolutionInfo read = new TxResolutionInfo(UUID.randomUUID(), snapshot,
+                Collections.singletonMap(streamA, Collections.singleton(tracked)),
+                Collections.emptyMap());
+        assertThat(requestTxToken(streamA, read).getRespType()).isEqualTo(TokenType.NORMAL);
+    }
+
+    /**
+     * Transaction resolutions are counted by outcome.
+     */
+    @Test
+    public void txResolutionsAreCountedByCause() {
+        UUID streamA = UUID.nameUUIDFromBytes("streamA".getBytes());
+        Map<UUID, Set<byte[]>> conflictMap = Collections.singletonMap(streamA,
+                Collections.singleton("key".getBytes()));
+        long commits = getMeterCount(SequencerServer.TX_COMMITS_METRIC);
+        long conflicts = getMeterCount(SequencerServer.TX_ABORTS_CONFLICT_METRIC);
+        long trims = getMeterCount(SequencerServer.TX_ABORTS_TRIM_METRIC);
+
+        TxResolutionInfo write = new TxResolutionInfo(UUID.randomUUID(), Address.NEVER_READ,
+                Collections.emptyMap(), conflictMap);
+        long address = requestTxToken(streamA, write).getToken().getTokenValue();
+        TxResolutionInfo read = new TxResolutionInfo(UUID.randomUUID(), Address.NEVER_READ,
+                conflictMap, Collections.emptyMap());
+        requestTxToken(streamA, read);
+
+        sendMessage(new CorfuPayloadMsg<>(CorfuMsgType.SEQUENCER_TRIM_REQ, address + 1));
+        assertThat(requestTxToken(streamA, read).getRespType())
+                .isEqualTo(TokenType.TX_ABORT_SEQ_TRIM);
+
+        assertThat(getMeterCount(SequencerServer.TX_COMMITS_METRIC)).isEqualTo(commits + 1);
+        assertThat(getMeterCount(SequencerServer.TX_ABORTS_CONFLICT_METRIC))
+                .isEqualTo(conflicts + 1);
+        assertThat(getMeterCount(SequencerServer.TX_ABORTS_TRIM_METRIC)).isEqualTo(trims + 1);
+        assertThat(server.getConflictWindow().size()).isEqualTo(0);
+    }
+
+    private long getMeterCount(String name) {
+        return ServerContext.getMetrics().meter(name).getCount();
+    }
+
+    private TokenResponse requestTxToken(UUID stream, TxResolutionInfo txInfo) {
+        sendMessage(new CorfuPayloadMsg<>(CorfuMsgType.TOKEN_REQ,
+                new TokenRequest(1L, Collections.singleton(stream), txInfo)));
+        return getLastPayloadMessageAs(TokenResponse.class);
+    }
+
+    /**
+     * Sends a token request and returns its response, which is looked up by request ID so
+     * that requests can be sent concurrently.
+     */
+    @SuppressWarnings("unchecked")
+    private TokenResponse requestToken(TokenRequest request) {
+        CorfuMsg msg = new CorfuPayloadMsg<>(CorfuMsgType.TOKEN_REQ, request);
+        sendMessage(msg);
+        synchronized (getResponseMessages()) {
+            return getResponseMessages().stream()
+                    .filter(x -> x.getRequestID() == msg.getRequestID())
+                    .map(x -> ((CorfuPayloadMsg<TokenResponse>) x).getPayload())
+                    .findFirst()
+                    .get();
+        }
+    }
+
+    private List<TokenResponse> getTokenResponses() {
+        synchronized (getResponseMessages()) {
+            return getResponseMessages().stream()
+                    .map(x -> ((CorfuPayloadMsg<TokenResponse>) x).getPayload())
+                    .collect(Collectors.toList());
+        }
+    }
 }
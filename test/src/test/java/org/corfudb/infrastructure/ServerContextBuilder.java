@@ -34,9 +34,23 @@ public class ServerContextBuilder {
     String implementation = "local";
 
     String cacheSizeHeapRatio = "0.5";
+    String cacheOffHeapSize = null;
+    String batchMaxDelay = null;
+    String compactionRate = null;
+    String logSegmentRecords = null;
+    String logSegmentPreallocate = null;
+    boolean logSegmentCompression = false;
+    String logIoThreads = null;
+    boolean logLazyVerify = false;
+    String logScrubInterval = null;
+    String logScrubRate = null;
+    String logDirs = null;
+    String logMaxOpenSegments = null;
+    boolean logDirectIo = false;
     String address = "test";
     int port = 9000;
     String seqCache = "1000";
+    String seqSnapshotInterval = "0";
     String managementBootstrapEndpoint = null;
     IServerRouter serverRouter;
     String numThreads = "0";
@@ -58,10 +72,44 @@ public class ServerContextBuilder {
                 .put("--memory", memory)
                 .put("--Threads", numThreads)
                 .put("--HandshakeTimeout", handshakeTimeout)
-                .put("--sequencer-cache-size", seqCache);
+                .put("--sequencer-cache-size", seqCache)
+                .put("--sequencer-snapshot-interval", seqSnapshotInterval)
+                .put("--log-segment-compression", logSegmentCompression)
+                .put("--log-lazy-verify", logLazyVerify)
+                .put("--log-direct-io", logDirectIo);
         if (logPath != null) {
          builder.put("--log-path", logPath);
         }
+        if (cacheOffHeapSize != null) {
+            builder.put("--cache-offheap-size", cacheOffHeapSize);
+        }
+        if (batchMaxDelay != null) {
+            builder.put("--batch-max-delay", batchMaxDelay);
+        }
+        if (compactionRate != null) {
+            builder.put("--compaction-rate", compactionRate);
+        }
+        if (logSegmentRecords != null) {
+            builder.put("--log-segment-records", logSegmentRecords);
+        }
+        if (logSegmentPreallocate != null) {
+            builder.put("--log-segment-preallocate", logSegmentPreallocate);
+        }
+        if (logIoThreads != null) {
+            builder.put("--log-io-threads", logIoThreads);
+        }
+        if (logScrubInterval != null) {
+            builder.put("--log-scrub-interval", logScrubInterval);
+        }
+        if (logScrubRate != null) {
+            builder.put("--log-scrub-rate", logScrubRate);
+        }
+        if (logDirs != null) {
+            builder.put("--log-dirs", logDirs);
+        }
+        if (logMaxOpenSegments != null) {
+            builder.put("--log-max-open-segments", logMaxOpenSegments);
+        }
         if (managementBootstrapEndpoint != null) {
             builder.put("--management-server", managementBootstrapEndpoint);
         }
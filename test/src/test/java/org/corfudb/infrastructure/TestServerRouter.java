@@ -13,6 +13,7 @@ import org.corfudb.runtime.clients.TestChannelContext;
 import org.corfudb.runtime.clients.TestRule;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -51,7 +52,7 @@ public class TestServerRouter implements IServerRouter {
     }
 
     public void reset() {
-        this.responseMessages = new ArrayList<>();
+        this.responseMessages = Collections.synchronizedList(new ArrayList<>());
         this.requestCounter = new AtomicLong();
         this.handlerMap = new ConcurrentHashMap<>();
         this.rules = new ArrayList<>();
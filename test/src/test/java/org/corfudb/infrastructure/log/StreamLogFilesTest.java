@@ -9,13 +9,33 @@ import io.netty.buffer.ByteBuf;
 
 import java.io.File;
 import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
-
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import com.google.common.hash.Hashing;
 import io.netty.buffer.Unpooled;
 import org.apache.commons.io.FileUtils;
 import org.corfudb.AbstractCorfuTest;
@@ -30,6 +50,7 @@ import org.corfudb.runtime.exceptions.DataCorruptionException;
 import org.corfudb.runtime.exceptions.OverwriteException;
 import org.corfudb.util.serializer.Serializers;
 import org.junit.Test;
+import sun.misc.Unsafe;
 
 
 /**
@@ -374,6 +395,239 @@ public class StreamLogFilesTest extends AbstractCorfuTest {
         }
     }
 
+    /**
+     * Reads from many threads across segments, which look up the segment handles
+     * concurrently.
+     */
+    @Test
+    public void concurrentReadsAcrossSegments() throws Exception {
+        final int recordsPerSegment = 100;
+        final int numSegments = 32;
+        final int numAddresses = recordsPerSegment * numSegments;
+        ServerContext sc = new ServerContextBuilder()
+                .setLogPath(getDirPath())
+                .setMemory(false)
+                .setLogSegmentRecords(Integer.toString(recordsPerSegment))
+                .build();
+        StreamLogFiles log = new StreamLogFiles(sc, false);
+        for (long address = 0; address < numAddresses; address++) {
+            log.append(address, getEntry(address));
+        }
+
+        final int numThreads = PARAMETERS.CONCURRENCY_LOTS;
+        final int numReads = PARAMETERS.NUM_ITERATIONS_MODERATE;
+        scheduleConcurrently(numThreads, threadNumber -> {
+            Random random = new Random(threadNumber);
+            for (int i = 0; i < numReads; i++) {
+                long address = random.nextInt(numAddresses);
+                assertThat(log.read(address).getGlobalAddress()).isEqualTo(address);
+            }
+        });
+
+        long start = System.nanoTime();
+        executeScheduled(numThreads, PARAMETERS.TIMEOUT_LONG);
+        long elapsed = System.nanoTime() - start;
+        testStatus += String.format("Reads/s=%d",
+                numThreads * numReads * TimeUnit.SECONDS.toNanos(1) / Math.max(elapsed, 1));
+
+        // Every lookup released the handle it retained
+        for (SegmentHandle sh : log.getSegmentHandles()) {
+            assertThat(sh.getRefCount()).isZero();
+        }
+    }
+
+    @Test
+    public void testMultipleLogDirs() throws Exception {
+        final int recordsPerSegment = 10;
+        final int numSegments = 6;
+        final int numAddresses = recordsPerSegment * numSegments;
+        String disk1 = getDirPath() + File.separator + "disk1";
+        String disk2 = getDirPath() + File.separator + "disk2";
+        ServerContext sc = new ServerContextBuilder()
+                .setLogPath(getDirPath())
+                .setMemory(false)
+                .setLogSegmentRecords(Integer.toString(recordsPerSegment))
+                .setLogDirs(disk1 + "," + disk2)
+                .build();
+        StreamLogFiles log = new StreamLogFiles(sc, false);
+        assertThat(log.getLogDirs()).containsExactly(log.logDir, disk1, disk2);
+
+        List<LogData> entries = new ArrayList<>();
+        for (long address = 0; address < numAddresses; address++) {
+            entries.add(getEntry(address));
+            log.append(address, entries.get((int) address));
+        }
+
+        // The channels of every disk are synced
+        log.sync(true);
+        assertThat(log.getChannelsToSync()).isEmpty();
+
+        // Batch reads span the disks
+        List<Long> addresses = LongStream.range(0, numAddresses).boxed()
+                .collect(Collectors.toList());
+        assertThat(log.readAllAsync(addresses).join().values()).containsExactlyElementsOf(entries);
+
+        // Segments are striped over the directories
+        for (int segment = 0; segment < numSegments; segment++) {
+            String dir = log.getLogDirs().get(segment % log.getLogDirs().size());
+            assertThat(new File(dir + File.separator + segment + ".log")).exists();
+        }
+        log.close();
+
+        // The log keeps the directories it was created with
+        ServerContext sc2 = new ServerContextBuilder()
+                .setLogPath(getDirPath())
+                .setMemory(false)
+                .setLogDirs(disk2)
+                .build();
+        StreamLogFiles log2 = new StreamLogFiles(sc2, false);
+        assertThat(log2.getLogDirs()).containsExactly(log.logDir, disk1, disk2);
+        assertThat(readRange(0, numAddresses, log2)).isEqualTo(entries);
+    }
+
+    @Test
+    public void testMaxOpenSegments() throws Exception {
+        final int recordsPerSegment = 10;
+        final int numSegments = 20;
+        final int maxOpenSegments = 4;
+        final int numAddresses = recordsPerSegment * numSegments;
+        ServerContext sc = new ServerContextBuilder()
+                .setLogPath(getDirPath())
+                .setMemory(false)
+                .setLogSegmentRecords(Integer.toString(recordsPerSegment))
+                .setLogMaxOpenSegments(Integer.toString(maxOpenSegments))
+                .build();
+        StreamLogFiles log = new StreamLogFiles(sc, false);
+
+        List<LogData> entries = new ArrayList<>();
+        for (long address = 0; address < numAddresses; address++) {
+            entries.add(getEntry(address));
+            log.append(address, entries.get((int) address));
+        }
+        assertThat(log.getSegmentHandles().size()).isLessThanOrEqualTo(maxOpenSegments);
+
+        // Evicted segments are opened again when they're read
+        long reopens = ServerContext.getMetrics().meter(StreamLogFiles.SEGMENT_REOPENS_METRIC)
+                .getCount();
+        assertThat(readRange(0, numAddresses, log)).isEqualTo(entries);
+        assertThat(ServerContext.getMetrics().meter(StreamLogFiles.SEGMENT_REOPENS_METRIC)
+                .getCount()).isGreaterThan(reopens);
+        assertThat(ServerContext.getMetrics().getGauges()
+                .get(StreamLogFiles.OPEN_SEGMENTS_METRIC).getValue())
+                .isEqualTo(log.getSegmentHandles().size());
+        assertThat(log.getSegmentHandles().size()).isLessThanOrEqualTo(maxOpenSegments);
+
+        // The tail segment is never evicted
+        final long tailSegment = numSegments - 1;
+        assertThat(log.getSegmentHandles().stream().map(SegmentHandle::getSegment))
+                .contains(tailSegment);
+
+        // A segment read between the reads of every other segment stays open
+        final long hotSegment = 1;
+        for (long segment = hotSegment + 1; segment < tailSegment; segment++) {
+            log.read(hotSegment * recordsPerSegment);
+            log.read(segment * recordsPerSegment);
+            assertThat(log.getSegmentHandles().stream().map(SegmentHandle::getSegment))
+                    .contains(hotSegment);
+        }
+
+        // A segment that needs compaction stays open until it's compacted
+        final int numTrimmed = recordsPerSegment / 2;
+        for (long address = 0; address < numTrimmed; address++) {
+            log.trim(address);
+        }
+        readRange(recordsPerSegment, numAddresses, log);
+        assertThat(log.getSegmentHandles().stream().map(SegmentHandle::getSegment))
+                .contains(0L);
+
+        log.compact();
+        for (long address = 0; address < numTrimmed; address++) {
+            assertThat(log.read(address).isTrimmed()).isTrue();
+        }
+        assertThat(log.read(numTrimmed)).isEqualTo(entries.get(numTrimmed));
+
+        // The recovery doesn't open more segments than the cap
+        log.close();
+        log = new StreamLogFiles(sc, false);
+        assertThat(log.getSegmentHandles().size()).isLessThanOrEqualTo(maxOpenSegments);
+        assertThat(log.getSegmentHandles().stream().map(SegmentHandle::getSegment))
+                .contains(tailSegment);
+        assertThat(readRange(recordsPerSegment, numAddresses, log))
+                .isEqualTo(entries.subList(recordsPerSegment, numAddresses));
+    }
+
+    @Test
+    public void testDirectAppender() throws Exception {
+        final int headerSize = 100;
+        final int recordSize = 1000;
+        final int numRecords = 10;
+        File file = new File(getDirPath(), "direct.log");
+        file.getParentFile().mkdirs();
+        byte[] expected = new byte[headerSize + recordSize * numRecords];
+        new Random(0).nextBytes(expected);
+
+        try (FileChannel segment = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            segment.write(ByteBuffer.wrap(expected, 0, headerSize));
+
+            // Appends are written in whole blocks, the last block is padded
+            DirectAppender appender = new DirectAppender(channel, segment);
+            for (int i = 0; i < numRecords; i++) {
+                ByteBuffer record = ByteBuffer.wrap(expected, headerSize + i * recordSize,
+                        recordSize);
+                appender.append(new ByteBuffer[] {record});
+                assertThat(record.hasRemaining()).isFalse();
+                assertThat(segment.size() % DirectAppender.BLOCK_SIZE).isZero();
+                assertThat(segment.position()).isEqualTo(appender.getPosition());
+            }
+
+            // Closing the appender truncates the padding
+            appender.close();
+            assertThat(segment.size()).isEqualTo(expected.length);
+        }
+        assertThat(FileUtils.readFileToByteArray(file)).isEqualTo(expected);
+    }
+
+    @Test
+    public void testDirectIoAppends() throws Exception {
+        ServerContext sc = new ServerContextBuilder()
+                .setLogPath(getDirPath())
+                .setMemory(false)
+                .setLogDirectIo(true)
+                .build();
+        StreamLogFiles log = new StreamLogFiles(sc, false);
+
+        // A sealed segment, and records in the tail segment
+        final int numAddresses = StreamLogFiles.RECORDS_PER_LOG_FILE + 10;
+        List<LogData> entries = new ArrayList<>();
+        for (long address = 0; address < numAddresses; address++) {
+            entries.add(getEntry(address));
+        }
+        log.append(entries.subList(0, StreamLogFiles.RECORDS_PER_LOG_FILE));
+        for (long address = StreamLogFiles.RECORDS_PER_LOG_FILE; address < numAddresses;
+             address++) {
+            log.append(address, entries.get((int) address));
+        }
+        assertThat(readRange(0, numAddresses, log)).isEqualTo(entries);
+        log.sync(true);
+
+        // The padding left behind by a crash is truncated when the segment is opened
+        String logDir = sc.getServerConfig().get("--log-path") + File.separator + "log";
+        File tail = new File(logDir + File.separator + 1 + ".log");
+        final int padding = 100;
+        try (RandomAccessFile file = new RandomAccessFile(tail, "rw")) {
+            file.setLength(file.length() + padding);
+        }
+        long size = tail.length();
+
+        StreamLogFiles log2 = new StreamLogFiles(sc, false);
+        assertThat(readRange(0, numAddresses, log2)).isEqualTo(entries);
+        assertThat(tail.length()).isLessThan(size);
+        log2.close();
+        log.close();
+    }
+
     @Test
     @SuppressWarnings("checkstyle:magicnumber")
     public void testSync() throws Exception {
@@ -431,6 +685,249 @@ public class StreamLogFilesTest extends AbstractCorfuTest {
         assertThat(log.read(address).isTrimmed()).isTrue();
     }
 
+    /**
+     * Appends to the same addresses from many threads, only one append per address
+     * passes the overwrite check.
+     */
+    @Test
+    public void concurrentAppendsToSameAddress() throws Exception {
+        StreamLogFiles log = new StreamLogFiles(getContext(), false);
+        final int numThreads = PARAMETERS.CONCURRENCY_SOME;
+        final int numAddresses = PARAMETERS.NUM_ITERATIONS_LOW;
+        AtomicInteger written = new AtomicInteger();
+
+        scheduleConcurrently(numThreads, threadNumber -> {
+            for (long address = 0; address < numAddresses; address++) {
+                try {
+                    log.append(address, getEntry(address));
+                    written.incrementAndGet();
+                } catch (OverwriteException e) {
+                    // Another thread wrote the address first
+                }
+            }
+        });
+        executeScheduled(numThreads, PARAMETERS.TIMEOUT_LONG);
+
+        assertThat(written.get()).isEqualTo(numAddresses);
+        assertThat(readRange(0, numAddresses, log)).doesNotContainNull();
+    }
+
+    @Test
+    public void testReadAll() throws Exception {
+        StreamLogFiles log = new StreamLogFiles(getContext(), false);
+
+        // Fill the second segment so that it is sealed, and write the first half of the
+        // first segment in reverse order, so that its offsets are not in address order
+        final int segmentSize = StreamLogFiles.RECORDS_PER_LOG_FILE;
+        final int halfSegment = segmentSize / 2;
+        List<LogData> sealed = new ArrayList<>();
+        for (long x = segmentSize; x < 2 * segmentSize; x++) {
+            sealed.add(getEntry(x));
+        }
+        log.append(sealed);
+        for (long x = halfSegment - 1; x >= 0; x--) {
+            log.append(x, getEntry(x));
+        }
+        final long trimmed = 2L;
+        log.trim(trimmed);
+
+        // Request addresses out of order, with duplicates and unwritten addresses
+        List<Long> addresses = new ArrayList<>();
+        for (long x = 2L * segmentSize - 1; x >= 0; x -= 2) {
+            addresses.add(x);
+        }
+        addresses.add(trimmed);
+        addresses.add(0L);
+
+        Map<Long, LogData> entries = log.readAll(addresses);
+        assertThat(new ArrayList<>(entries.keySet())).isSorted();
+        assertThat(entries.get(trimmed).isTrimmed()).isTrue();
+        for (long address : addresses) {
+            assertThat(entries.get(address)).isEqualTo(log.read(address));
+        }
+        assertThat(log.readAllAsync(addresses).join()).isEqualTo(entries);
+
+        // The records of the sealed segment are read with a few sequential reads
+        List<Long> sealedAddresses = LongStream.range(segmentSize, 2L * segmentSize).boxed()
+                .collect(Collectors.toList());
+        long mergedReads = ServerContext.getMetrics()
+                .meter(StreamLogFiles.MERGED_READS_METRIC).getCount();
+        assertThat(log.readAll(sealedAddresses).values()).containsExactlyElementsOf(sealed);
+        assertThat(ServerContext.getMetrics().meter(StreamLogFiles.MERGED_READS_METRIC)
+                .getCount() - mergedReads).isBetween(1L, (long) segmentSize / halfSegment);
+    }
+
+    @Test
+    public void testChecksums() {
+        final int size = 20000;
+        final int offset = 10;
+        byte[] bytes = new byte[size];
+        new Random(0).nextBytes(bytes);
+        int expected = Hashing.crc32c().hashBytes(bytes).asInt();
+
+        assertThat(Checksums.crc32c(bytes)).isEqualTo(expected);
+        assertThat(StreamLogFiles.getChecksum(bytes)).isEqualTo(expected);
+
+        // Buffers are checksummed in place, without moving their position
+        ByteBuffer direct = ByteBuffer.allocateDirect(size);
+        direct.put(bytes).flip();
+        assertThat(Checksums.crc32c(direct)).isEqualTo(expected);
+        assertThat(direct.position()).isZero();
+        assertThat(Checksums.crc32c(ByteBuffer.wrap(bytes, offset, size - offset).slice()))
+                .isEqualTo(Hashing.crc32c().hashBytes(bytes, offset, size - offset).asInt());
+    }
+
+    @Test
+    public void testLazyVerify() throws Exception {
+        ServerContext sc = new ServerContextBuilder()
+                .setLogPath(getDirPath())
+                .setMemory(false)
+                .setLogLazyVerify(true)
+                .build();
+        StreamLogFiles log = new StreamLogFiles(sc, false);
+
+        // A sealed segment, and a record in the tail segment
+        final int segmentSize = StreamLogFiles.RECORDS_PER_LOG_FILE;
+        List<LogData> entries = new ArrayList<>();
+        for (long x = 0; x < segmentSize; x++) {
+            entries.add(getEntry(x));
+        }
+        log.append(entries);
+        final long tailAddress = segmentSize;
+        log.append(tailAddress, getEntry(tailAddress));
+
+        final long sealedAddress = segmentSize / 2;
+        AddressMetaData sealedRecord = log.getSegmentHandleForAddress(sealedAddress)
+                .getKnownAddresses().get(sealedAddress);
+        AddressMetaData tailRecord = log.getSegmentHandleForAddress(tailAddress)
+                .getKnownAddresses().get(tailAddress);
+        log.sync(true);
+        log.close();
+
+        String logDir = sc.getServerConfig().get("--log-path") + File.separator + "log";
+        corruptPayload(logDir + File.separator + 0 + ".log", sealedRecord);
+        corruptPayload(logDir + File.separator + 1 + ".log", tailRecord);
+
+        // Verifying when segments are opened rejects the corrupted tail segment
+        assertThatThrownBy(() -> new StreamLogFiles(getContext(), false))
+                .isInstanceOf(DataCorruptionException.class);
+
+        // Verifying on read only rejects the reads of the corrupted records
+        StreamLogFiles lazyLog = new StreamLogFiles(sc, false);
+        assertThatThrownBy(() -> lazyLog.read(tailAddress))
+                .isInstanceOf(DataCorruptionException.class);
+        assertThatThrownBy(() -> lazyLog.read(sealedAddress))
+                .isInstanceOf(DataCorruptionException.class);
+        assertThat(lazyLog.read(sealedAddress + 1))
+                .isEqualTo(entries.get((int) sealedAddress + 1));
+
+        // The scrubber finds the corrupted record of the sealed segment
+        assertThat(lazyLog.scrub()).containsExactly(sealedAddress);
+        assertThat(lazyLog.getScrubProgress()).isEqualTo(1.0);
+        final long corruptRecords = 3;
+        assertThat(lazyLog.getCorruptRecordCount()).isEqualTo(corruptRecords);
+    }
+
+    @Test
+    public void testScrubber() throws Exception {
+        ServerContext sc = new ServerContextBuilder()
+                .setLogPath(getDirPath())
+                .setMemory(false)
+                .setLogScrubRate("1")
+                .build();
+        StreamLogFiles log = new StreamLogFiles(sc, false);
+
+        final int segmentSize = StreamLogFiles.RECORDS_PER_LOG_FILE;
+        List<LogData> entries = new ArrayList<>();
+        for (long x = 0; x < segmentSize; x++) {
+            entries.add(getEntry(x));
+        }
+        log.append(entries);
+        log.append(segmentSize, getEntry(segmentSize));
+
+        final long corruptAddress = segmentSize / 2;
+        AddressMetaData record = log.getSegmentHandleForAddress(corruptAddress)
+                .getKnownAddresses().get(corruptAddress);
+        log.sync(true);
+        log.close();
+
+        String logDir = sc.getServerConfig().get("--log-path") + File.separator + "log";
+        corruptPayload(logDir + File.separator + 0 + ".log", record);
+
+        // The sealed segment is loaded from its index, only the scrubber finds the corruption
+        StreamLogFiles log2 = new StreamLogFiles(sc, false);
+        assertThat(log2.getCorruptAddresses()).isEmpty();
+        assertThat(log2.scrub()).containsExactly(corruptAddress);
+        assertThat(log2.getCorruptAddresses()).containsExactly(corruptAddress);
+        assertThat(ServerContext.getMetrics().getGauges()
+                .get(StreamLogFiles.CORRUPT_ADDRESSES_METRIC).getValue())
+                .isEqualTo(Collections.singletonList(corruptAddress));
+
+        // Corrupt addresses are no longer reported once they're trimmed
+        log2.prefixTrim(corruptAddress);
+        assertThat(log2.getCorruptAddresses()).isEmpty();
+    }
+
+    @Test
+    public void testScrubberCorruptEvictedSegment() throws Exception {
+        final int recordsPerSegment = 10;
+        final int numSegments = 4;
+        final int maxOpenSegments = 2;
+        ServerContext sc = new ServerContextBuilder()
+                .setLogPath(getDirPath())
+                .setMemory(false)
+                .setLogSegmentRecords(Integer.toString(recordsPerSegment))
+                .setLogMaxOpenSegments(Integer.toString(maxOpenSegments))
+                .build();
+        StreamLogFiles log = new StreamLogFiles(sc, false);
+        for (long address = 0; address < recordsPerSegment * numSegments; address++) {
+            log.append(address, getEntry(address));
+        }
+        final long corruptAddress = recordsPerSegment / 2;
+        SegmentHandle sh = log.getSegmentHandleForAddress(corruptAddress);
+        AddressMetaData record = sh.getKnownAddresses().get(corruptAddress);
+        sh.release();
+        log.sync(true);
+
+        // Read the other segments so that the first one is evicted
+        readRange(recordsPerSegment, recordsPerSegment * numSegments, log);
+        assertThat(log.getSegmentHandles().stream().map(SegmentHandle::getSegment))
+                .doesNotContain(0L);
+
+        // Corrupt the metadata of a record of the evicted segment, and its index so that the
+        // segment is scanned when it's opened again
+        String segmentPath = log.getLogDirs().get(0) + File.separator + 0 + ".log";
+        Files.delete(Paths.get(StreamLogFiles.getSegmentIndexFilePath(segmentPath)));
+        try (RandomAccessFile file = new RandomAccessFile(segmentPath, "rw")) {
+            byte[] garbage = new byte[StreamLogFiles.METADATA_SIZE];
+            Arrays.fill(garbage, (byte) -1);
+            file.seek(record.offset - StreamLogFiles.METADATA_SIZE);
+            file.write(garbage);
+        }
+
+        // The segment is counted as corrupted, and the other segments are still verified
+        assertThat(log.scrub()).isEmpty();
+        assertThat(log.getCorruptSegmentCount()).isEqualTo(1L);
+        assertThat(log.getScrubProgress()).isEqualTo(1.0);
+        assertThat(ServerContext.getMetrics().getGauges()
+                .get(StreamLogFiles.CORRUPT_SEGMENTS_METRIC).getValue()).isEqualTo(1L);
+    }
+
+    /**
+     * Overwrites a byte of the payload of a record in a segment file.
+     */
+    private void corruptPayload(String segmentPath, AddressMetaData record) throws Exception {
+        try (RandomAccessFile file = new RandomAccessFile(segmentPath, "rw")) {
+            byte[] bytes = new byte[record.length];
+            file.seek(record.offset);
+            file.readFully(bytes);
+            int payload = new String(bytes, "ISO-8859-1").indexOf("Payload");
+            assertThat(payload).isNotNegative();
+            file.seek(record.offset + payload);
+            file.write('X');
+        }
+    }
+
     private void writeToLog(StreamLog log, long address) {
         ByteBuf b = Unpooled.buffer();
         byte[] streamEntry = "Payload".getBytes();
@@ -438,6 +935,246 @@ public class StreamLogFilesTest extends AbstractCorfuTest {
         log.append(address, new LogData(DataType.DATA, b));
     }
 
+    @Test
+    public void testConfigurableSegmentSize() throws Exception {
+        final int recordsPerSegment = 100;
+        final int numSegments = 3;
+        String logDir = getDirPath() + File.separator + "log";
+        ServerContext context = new ServerContextBuilder()
+                .setLogPath(getDirPath())
+                .setMemory(false)
+                .setLogSegmentRecords(Integer.toString(recordsPerSegment))
+                .setLogSegmentPreallocate("1")
+                .build();
+        StreamLogFiles log = new StreamLogFiles(context, false);
+        assertThat(log.getRecordsPerSegment()).isEqualTo(recordsPerSegment);
+
+        for (long x = 0; x < recordsPerSegment * numSegments; x++) {
+            writeToLog(log, x);
+        }
+
+        // The segment after the tail segment is created ahead of the writer
+        File preallocated = new File(logDir, numSegments + ".log");
+        while (!preallocated.exists()) {
+            Thread.sleep(PARAMETERS.TIMEOUT_VERY_SHORT.toMillis());
+        }
+        log.close();
+
+        for (long segment = 0; segment < numSegments; segment++) {
+            assertThat(new File(logDir, segment + ".log")).exists();
+        }
+
+        // The segment size of an existing log doesn't change with the configuration
+        ServerContext reconfigured = new ServerContextBuilder()
+                .setLogPath(getDirPath())
+                .setMemory(false)
+                .setLogSegmentRecords(Integer.toString(recordsPerSegment * 2))
+                .build();
+        StreamLogFiles reopened = new StreamLogFiles(reconfigured, false);
+        assertThat(reopened.getRecordsPerSegment()).isEqualTo(recordsPerSegment);
+        assertThat(reopened.getGlobalTail()).isEqualTo(recordsPerSegment * numSegments - 1);
+        for (long x = 0; x < recordsPerSegment * numSegments; x++) {
+            assertThat(reopened.read(x).getPayload(null)).isEqualTo("Payload".getBytes());
+        }
+        reopened.close();
+
+        // A log created before the segment size was persisted has the default segment size
+        String legacyDir = getDirPath() + File.separator + "legacy";
+        assertThat(new File(legacyDir).mkdirs()).isTrue();
+        ServerContext legacy = new ServerContextBuilder()
+                .setLogPath(legacyDir)
+                .setMemory(false)
+                .build();
+        StreamLogFiles legacyLog = new StreamLogFiles(legacy, false);
+        long legacyTail = RECORDS_PER_LOG_FILE + 1;
+        for (long x : new long[]{0L, RECORDS_PER_LOG_FILE - 1, legacyTail}) {
+            writeToLog(legacyLog, x);
+        }
+        legacyLog.close();
+        assertThat(new File(legacyDir, "LOG_SEGMENT_RECORDS_CURRENT.ds").delete()).isTrue();
+
+        ServerContext upgraded = new ServerContextBuilder()
+                .setLogPath(legacyDir)
+                .setMemory(false)
+                .setLogSegmentRecords(Integer.toString(recordsPerSegment))
+                .build();
+        StreamLogFiles upgradedLog = new StreamLogFiles(upgraded, false);
+        assertThat(upgradedLog.getRecordsPerSegment()).isEqualTo(RECORDS_PER_LOG_FILE);
+        assertThat(upgraded.getLogSegmentRecords()).isEqualTo(RECORDS_PER_LOG_FILE);
+        assertThat(upgradedLog.getGlobalTail()).isEqualTo(legacyTail);
+        for (long x : new long[]{0L, RECORDS_PER_LOG_FILE - 1, legacyTail}) {
+            assertThat(upgradedLog.read(x).getPayload(null)).isEqualTo("Payload".getBytes());
+        }
+    }
+
+    @Test
+    public void testSegmentCompression() throws Exception {
+        final int recordsPerSegment = 1000;
+        final int numSegments = 3;
+        final int trimmed = recordsPerSegment / 2;
+        String logDir = getDirPath() + File.separator + "log";
+        ServerContext context = new ServerContextBuilder()
+                .setLogPath(getDirPath())
+                .setMemory(false)
+                .setLogSegmentRecords(Integer.toString(recordsPerSegment))
+                .setLogSegmentCompression(true)
+                .build();
+        StreamLogFiles log = new StreamLogFiles(context, false);
+
+        for (long x = 0; x < recordsPerSegment * numSegments; x++) {
+            writeToLog(log, x);
+        }
+        File segment = new File(logDir, "0.log");
+        long uncompressedSize = segment.length();
+
+        // The sealed segments behind the tail segment are compressed
+        log.compact();
+        for (long x = 0; x < numSegments - 1; x++) {
+            File compressed = new File(StreamLogFiles.getCompressedFilePath(
+                    new File(logDir, x + ".log").getPath()));
+            assertThat(compressed).exists();
+            assertThat(compressed.length()).isLessThan(uncompressedSize);
+        }
+        assertThat(new File(StreamLogFiles.getCompressedFilePath(
+                new File(logDir, (numSegments - 1) + ".log").getPath()))).doesNotExist();
+        assertThat(segment.length()).isLessThan(uncompressedSize);
+
+        for (long x = 0; x < recordsPerSegment * numSegments; x++) {
+            assertThat(log.read(x).getPayload(null)).isEqualTo("Payload".getBytes());
+        }
+        assertThatThrownBy(() -> writeToLog(log, 0L)).isInstanceOf(OverwriteException.class);
+
+        // Compressed segments are read from the compressed file after a restart
+        log.close();
+        StreamLogFiles reopened = new StreamLogFiles(context, false);
+        for (long x = 0; x < recordsPerSegment * numSegments; x++) {
+            assertThat(reopened.read(x).getPayload(null)).isEqualTo("Payload".getBytes());
+        }
+
+        // A compressed segment is restored to be compacted, and compressed again
+        for (long x = 0; x < trimmed; x++) {
+            reopened.trim(x);
+        }
+        reopened.compact();
+        reopened.compact();
+        assertThat(new File(StreamLogFiles.getCompressedFilePath(segment.getPath()))).exists();
+        for (long x = 0; x < recordsPerSegment; x++) {
+            if (x < trimmed) {
+                assertThat(reopened.read(x).isTrimmed()).isTrue();
+            } else {
+                assertThat(reopened.read(x).getPayload(null)).isEqualTo("Payload".getBytes());
+            }
+        }
+    }
+
+    @Test
+    public void testStreamIndex() throws Exception {
+        final int recordsPerSegment = 100;
+        final int numSegments = 3;
+        final long numRecords = recordsPerSegment * numSegments;
+        final UUID even = UUID.randomUUID();
+        final UUID odd = UUID.randomUUID();
+        ServerContext context = new ServerContextBuilder()
+                .setLogPath(getDirPath())
+                .setMemory(false)
+                .setLogSegmentRecords(Integer.toString(recordsPerSegment))
+                .build();
+        StreamLogFiles log = new StreamLogFiles(context, false);
+
+        for (long x = 0; x < numRecords; x++) {
+            ByteBuf b = Unpooled.buffer();
+            Serializers.CORFU.serialize("Payload".getBytes(), b);
+            LogData entry = new LogData(DataType.DATA, b);
+            entry.setBackpointerMap(Collections.singletonMap(x % 2 == 0 ? even : odd, x - 2));
+            log.append(x, entry);
+        }
+
+        // The range spans the segments and is clamped to the tail
+        final long start = recordsPerSegment / 2;
+        List<Long> expected = LongStream.range(start, numRecords).filter(x -> x % 2 == 1)
+                .boxed().collect(Collectors.toList());
+        assertThat(log.getStreamAddresses(odd, start, numRecords * 2)).isEqualTo(expected);
+        assertThat(log.getStreamAddresses(UUID.randomUUID(), 0, numRecords)).isEmpty();
+
+        // Trimmed addresses are omitted, before and after compaction
+        for (long x = 0; x < recordsPerSegment / 2; x++) {
+            log.trim(x);
+        }
+        assertThat(log.getStreamAddresses(even, 0, recordsPerSegment - 1))
+                .first().isEqualTo((long) recordsPerSegment / 2);
+        log.compact();
+        List<Long> evenAddresses = log.getStreamAddresses(even, 0, numRecords);
+        assertThat(evenAddresses).hasSize((int) (numRecords - recordsPerSegment / 2) / 2);
+
+        // The index of the sealed segments is loaded from their persisted index
+        log.close();
+        StreamLogFiles reopened = new StreamLogFiles(context, false);
+        SegmentHandle sh = reopened.getSegmentHandleForAddress(0L);
+        assertThat(sh.isIndexed()).isTrue();
+        sh.release();
+        assertThat(reopened.getStreamAddresses(even, 0, numRecords)).isEqualTo(evenAddresses);
+        assertThat(reopened.getStreamAddresses(odd, start, numRecords)).isEqualTo(expected);
+        reopened.close();
+
+        // Segments that aren't open aren't opened to be queried
+        ServerContext capped = new ServerContextBuilder()
+                .setLogPath(getDirPath())
+                .setMemory(false)
+                .setLogSegmentRecords(Integer.toString(recordsPerSegment))
+                .setLogMaxOpenSegments("1")
+                .build();
+        StreamLogFiles cappedLog = new StreamLogFiles(capped, false);
+        final long tailSegment = numSegments - 1;
+        assertThat(cappedLog.getSegmentHandles().stream().map(SegmentHandle::getSegment))
+                .containsExactly(tailSegment);
+        assertThat(cappedLog.getStreamAddressesAsync(odd, start, numRecords).join())
+                .isEqualTo(expected.stream().filter(x -> x >= tailSegment * recordsPerSegment)
+                        .collect(Collectors.toList()));
+        assertThat(cappedLog.getSegmentHandles().stream().map(SegmentHandle::getSegment))
+                .containsExactly(tailSegment);
+    }
+
+    @Test
+    public void testIncrementalCompaction() throws Exception {
+        ServerContext context = new ServerContextBuilder()
+                .setLogPath(getDirPath())
+                .setMemory(false)
+                .setCompactionRate("1000")
+                .build();
+        StreamLogFiles log = new StreamLogFiles(context, false);
+        final int logChunk = StreamLogFiles.RECORDS_PER_LOG_FILE / 2;
+
+        for (long x = 0; x < logChunk * 2; x++) {
+            writeToLog(log, x);
+        }
+        for (long x = 0; x < logChunk; x++) {
+            log.trim(x);
+        }
+
+        // A reader that holds the segment while it's compacted keeps reading the old file
+        SegmentHandle oldHandle = log.getSegmentHandleForAddress(logChunk);
+        log.compact();
+        assertThat(oldHandle.getReadChannel().isOpen()).isTrue();
+        assertThat(oldHandle.getKnownAddresses().get(logChunk)).isNotNull();
+        oldHandle.release();
+        assertThat(oldHandle.getReadChannel().isOpen()).isFalse();
+
+        // The compacted segment is swapped in and still serves the live entries
+        SegmentHandle sh = log.getSegmentHandleForAddress(logChunk);
+        assertThat(sh).isNotSameAs(oldHandle);
+        assertThat(sh.getTrimmedAddresses().size()).isEqualTo(logChunk);
+        for (long x = logChunk; x < logChunk * 2; x++) {
+            assertThat(log.read(x).getPayload(null)).isEqualTo("Payload".getBytes());
+        }
+        sh.release();
+
+        // The compacted segment recovers from its index
+        log.close();
+        StreamLogFiles reopened = new StreamLogFiles(context, false);
+        assertThat(reopened.read(0).isTrimmed()).isTrue();
+        assertThat(reopened.read(logChunk).getPayload(null)).isEqualTo("Payload".getBytes());
+    }
+
     @Test
     public void testTrim() throws Exception {
         StreamLogFiles log = new StreamLogFiles(getContext(), false);
@@ -493,6 +1230,72 @@ public class StreamLogFilesTest extends AbstractCorfuTest {
         }
     }
 
+    @Test
+    public void testSealedSegmentRead() throws Exception {
+        StreamLogFiles log = new StreamLogFiles(getContext(), false);
+
+        // Fill the first segment and write one entry to the second segment
+        for (long x = 0; x <= RECORDS_PER_LOG_FILE; x++) {
+            writeToLog(log, x);
+        }
+
+        byte[] streamEntry = "Payload".getBytes();
+        for (long x = 0; x <= RECORDS_PER_LOG_FILE; x++) {
+            assertThat(log.read(x).getPayload(null)).isEqualTo(streamEntry);
+        }
+
+        // Reads of the sealed segment should still be served after a restart
+        log.close();
+        log = new StreamLogFiles(getContext(), false);
+        assertThat(log.read(1L).getPayload(null)).isEqualTo(streamEntry);
+        assertThat(log.read(RECORDS_PER_LOG_FILE).getPayload(null)).isEqualTo(streamEntry);
+    }
+
+    @Test
+    public void testSegmentIndex() throws Exception {
+        String logDir = getContext().getServerConfig().get("--log-path") + File.separator + "log";
+        StreamLogFiles log = new StreamLogFiles(getContext(), false);
+
+        // Fill the first segment and write one entry to the second segment
+        for (long x = 0; x <= RECORDS_PER_LOG_FILE; x++) {
+            writeToLog(log, x);
+        }
+        log.close();
+
+        // Only the sealed segment should be indexed
+        String sealedSegment = logDir + File.separator + 0 + ".log";
+        String tailSegment = logDir + File.separator + 1 + ".log";
+        assertThat(new File(StreamLogFiles.getSegmentIndexFilePath(sealedSegment))).exists();
+        assertThat(new File(StreamLogFiles.getSegmentIndexFilePath(tailSegment))).doesNotExist();
+
+        // Verify that the address space is loaded from the index
+        log = new StreamLogFiles(getContext(), false);
+        SegmentHandle sh = log.getSegmentHandleForAddress(0L);
+        assertThat(sh.isIndexed()).isTrue();
+        assertThat(sh.getKnownAddresses().size()).isEqualTo(RECORDS_PER_LOG_FILE);
+        byte[] streamEntry = "Payload".getBytes();
+        for (long x = 0; x <= RECORDS_PER_LOG_FILE; x++) {
+            assertThat(log.read(x).getPayload(null)).isEqualTo(streamEntry);
+        }
+        log.close();
+
+        // Corrupt the index and verify that the segment is scanned and re-indexed
+        final int corruptByte = 0xFF;
+        RandomAccessFile indexFile = new RandomAccessFile(
+                StreamLogFiles.getSegmentIndexFilePath(sealedSegment), "rw");
+        indexFile.seek(indexFile.length() - 1);
+        indexFile.writeByte(corruptByte);
+        indexFile.close();
+
+        log = new StreamLogFiles(getContext(), false);
+        sh = log.getSegmentHandleForAddress(0L);
+        assertThat(sh.isIndexed()).isTrue();
+        assertThat(sh.getKnownAddresses().size()).isEqualTo(RECORDS_PER_LOG_FILE);
+        for (long x = 0; x < RECORDS_PER_LOG_FILE; x++) {
+            assertThat(log.read(x).getPayload(null)).isEqualTo(streamEntry);
+        }
+    }
+
     @Test
     public void testWritingFileHeader() throws Exception {
         StreamLogFiles log = new StreamLogFiles(getContext(), false);
@@ -542,7 +1345,8 @@ public class StreamLogFilesTest extends AbstractCorfuTest {
 
         // Write 50 segments and trim the first 25
         final long numSegments = 50;
-        final long filesPerSegment = 3;
+        // Sealed segments have log, trimmed, pending trims and index files
+        final long filesPerSegment = 4;
         for(long x = 0; x < numSegments * StreamLogFiles.RECORDS_PER_LOG_FILE; x++) {
             writeToLog(log, x);
         }
@@ -577,10 +1381,12 @@ public class StreamLogFilesTest extends AbstractCorfuTest {
             String logFile = Long.toString(x) + ".log";
             String trimmedLogFile = StreamLogFiles.getTrimmedFilePath(logFile);
             String pendingLogFile = StreamLogFiles.getPendingTrimsFilePath(logFile);
+            String indexFile = StreamLogFiles.getSegmentIndexFilePath(logFile);
 
             assertThat(fileNames).contains(logFile);
             assertThat(fileNames).contains(trimmedLogFile);
             assertThat(fileNames).contains(pendingLogFile);
+            assertThat(fileNames).contains(indexFile);
         }
 
         // Try to trim an address that is less than the new starting address
@@ -641,7 +1447,7 @@ public class StreamLogFilesTest extends AbstractCorfuTest {
         log.compact();
 
         File logs = new File(logDir);
-        final int lastTwoSegmentsFiles = 3 * 2;
+        final int lastTwoSegmentsFiles = 4 * 2;
         assertThat(logs.list()).hasSize(lastTwoSegmentsFiles);
     }
 
@@ -664,7 +1470,7 @@ public class StreamLogFilesTest extends AbstractCorfuTest {
 
         File logsDir = new File(logDir);
 
-        final int expectedFilesBeforeReset = (int) ((numSegments - filesToBeTrimmed) * 3);
+        final int expectedFilesBeforeReset = (int) ((numSegments - filesToBeTrimmed) * 4);
         final long globalTailBeforeReset = (RECORDS_PER_LOG_FILE * numSegments) - 1;
         final long trimMarkBeforeReset = (RECORDS_PER_LOG_FILE * (filesToBeTrimmed + 1)) + 1;
         assertThat(logsDir.list()).hasSize(expectedFilesBeforeReset);
@@ -802,4 +1608,223 @@ public class StreamLogFilesTest extends AbstractCorfuTest {
         log = new StreamLogFiles(getContext(), false);
         assertThat(log.read(address0).getPayload(null)).isEqualTo(streamEntry);
     }
-}
\ No newline at end of file
+
+    /**
+     * Checks that the address indices of fully written segments hold every address of
+     * their segment, with one slot per address rather than a boxed entry per address.
+     */
+    @Test
+    public void testSegmentAddressIndexFootprint() throws Exception {
+        final int numSegments = 10;
+        final int checksum = 1;
+        final int length = 100;
+
+        for (int segment = 0; segment < numSegments; segment++) {
+            long first = (long) segment * RECORDS_PER_LOG_FILE;
+            SegmentAddressMap known = new SegmentAddressMap(first, RECORDS_PER_LOG_FILE);
+            SegmentAddressSet trimmed = new SegmentAddressSet(first, RECORDS_PER_LOG_FILE);
+            for (long address = first; address < first + RECORDS_PER_LOG_FILE; address++) {
+                known.put(address, new AddressMetaData(checksum, length, address * length));
+                trimmed.add(address);
+            }
+            // Rewriting an address reuses its slot
+            known.put(first, new AddressMetaData(checksum, length, first * length));
+            assertThat(trimmed.add(first)).isFalse();
+
+            assertThat(known.size()).isEqualTo(RECORDS_PER_LOG_FILE);
+            assertThat(trimmed.size()).isEqualTo(RECORDS_PER_LOG_FILE);
+            assertThat(known.addresses()).containsExactly(
+                    LongStream.range(first, first + RECORDS_PER_LOG_FILE).toArray());
+            assertThat(trimmed.toSet()).hasSize(RECORDS_PER_LOG_FILE);
+            assertThat(known.get(first + RECORDS_PER_LOG_FILE - 1).offset)
+                    .isEqualTo((first + RECORDS_PER_LOG_FILE - 1) * length);
+            assertThat(known.containsKey(first + RECORDS_PER_LOG_FILE)).isFalse();
+            assertThat(trimmed.contains(first - 1)).isFalse();
+        }
+
+        // Compare the retained sizes with the boxed map and set the segments used to keep,
+        // for a full segment
+        SegmentAddressMap known = new SegmentAddressMap(0L, RECORDS_PER_LOG_FILE);
+        SegmentAddressSet trimmed = new SegmentAddressSet(0L, RECORDS_PER_LOG_FILE);
+        Map<Long, AddressMetaData> boxedKnown = new ConcurrentHashMap<>();
+        Set<Long> boxedTrimmed = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        for (long address = 0; address < RECORDS_PER_LOG_FILE; address++) {
+            known.put(address, new AddressMetaData(checksum, length, address * length));
+            boxedKnown.put(address, new AddressMetaData(checksum, length, address * length));
+            trimmed.add(address);
+            boxedTrimmed.add(address);
+        }
+
+        // The metadata takes 16 bytes per address instead of a node, a boxed address and
+        // a metadata object, and a trimmed address a bit instead of a node and a boxed address
+        final int minMapRatio = 4;
+        final int minSetRatio = 64;
+        assertThat(retainedSize(boxedKnown)).isGreaterThan(minMapRatio * retainedSize(known));
+        assertThat(retainedSize(boxedTrimmed))
+                .isGreaterThan(minSetRatio * retainedSize(trimmed));
+    }
+
+    /**
+     * Returns the number of bytes of heap retained by an object graph, computed from the
+     * field layout of the objects rather than measured, so that it's deterministic.
+     */
+    private static long retainedSize(Object root) throws Exception {
+        Field theUnsafe = Unsafe.class.getDeclaredField("theUnsafe");
+        theUnsafe.setAccessible(true);
+        Unsafe unsafe = (Unsafe) theUnsafe.get(null);
+        final int referenceSize = unsafe.arrayIndexScale(Object[].class);
+        final int headerSize = unsafe.arrayBaseOffset(Object[].class) - Integer.BYTES;
+        final long alignment = Long.BYTES;
+
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(root);
+        long size = 0;
+        while (!pending.isEmpty()) {
+            Object o = pending.pop();
+            if (!visited.add(o)) {
+                continue;
+            }
+
+            long end = headerSize;
+            Class<?> type = o.getClass();
+            if (type.isArray()) {
+                end = unsafe.arrayBaseOffset(type)
+                        + (long) unsafe.arrayIndexScale(type) * Array.getLength(o);
+                if (!type.getComponentType().isPrimitive()) {
+                    for (int i = 0; i < Array.getLength(o); i++) {
+                        Object element = Array.get(o, i);
+                        if (element != null) {
+                            pending.push(element);
+                        }
+                    }
+                }
+            }
+            for (Class<?> c = type; c != null && !type.isArray(); c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    Class<?> fieldType = field.getType();
+                    int fieldSize = !fieldType.isPrimitive() ? referenceSize
+                            : fieldType == long.class || fieldType == double.class ? Long.BYTES
+                            : fieldType == int.class || fieldType == float.class ? Integer.BYTES
+                            : fieldType == short.class || fieldType == char.class ? Short.BYTES
+                            : Byte.BYTES;
+                    end = Math.max(end, unsafe.objectFieldOffset(field) + fieldSize);
+                    if (!fieldType.isPrimitive()) {
+                        field.setAccessible(true);
+                        Object value = field.get(o);
+                        if (value != null) {
+                            pending.push(value);
+                        }
+                    }
+                }
+            }
+            size += (end + alignment - 1) / alignment * alignment;
+        }
+        return size;
+    }
+
+    @Test
+    public void testSegmentAddressMapAndSet() {
+        final long first = RECORDS_PER_LOG_FILE;
+        SegmentAddressMap known = new SegmentAddressMap(first, RECORDS_PER_LOG_FILE);
+        SegmentAddressSet trimmed = new SegmentAddressSet(first, RECORDS_PER_LOG_FILE);
+        final long last = first + RECORDS_PER_LOG_FILE - 1;
+        final int checksum = 7;
+        final int length = 11;
+        final long offset = 13;
+
+        assertThat(known.get(first)).isNull();
+        known.put(last, new AddressMetaData(checksum, length, offset));
+        known.put(first, new AddressMetaData(checksum, length, offset));
+        known.put(first, new AddressMetaData(checksum, length + 1, offset + 1));
+        assertThat(known.size()).isEqualTo(2);
+        assertThat(known.get(first).length).isEqualTo(length + 1);
+        assertThat(known.get(first).offset).isEqualTo(offset + 1);
+        assertThat(known.get(last).checksum).isEqualTo(checksum);
+        assertThat(known.addresses()).containsExactly(first, last);
+        assertThat(known.containsKey(first - 1)).isFalse();
+        assertThatThrownBy(() -> known.put(last + 1, new AddressMetaData(checksum, length, offset)))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(trimmed.add(last)).isTrue();
+        assertThat(trimmed.add(last)).isFalse();
+        assertThat(trimmed.add(first)).isTrue();
+        assertThat(trimmed.contains(first + 1)).isFalse();
+        assertThat(trimmed.contains(last + 1)).isFalse();
+        assertThat(trimmed.size()).isEqualTo(2);
+        assertThat(trimmed.toSet()).containsExactlyInAnyOrder(first, last);
+    }
+
+    @Test
+    public void testParallelRecovery() throws Exception {
+        StreamLogFiles log = new StreamLogFiles(getContext(), false);
+        final int numSegments = 4;
+        ByteBuf b = Unpooled.buffer();
+        byte[] streamEntry = "Payload".getBytes();
+        Serializers.CORFU.serialize(streamEntry, b);
+        for (int segment = 0; segment < numSegments; segment++) {
+            log.append((long) segment * RECORDS_PER_LOG_FILE, new LogData(DataType.DATA, b));
+        }
+        log.close();
+
+        // Every segment is loaded by the recovery
+        log = new StreamLogFiles(getContext(), false);
+        assertThat(log.getRecoveryProgress()).isEqualTo(1.0);
+        for (int segment = 0; segment < numSegments; segment++) {
+            long address = (long) segment * RECORDS_PER_LOG_FILE;
+            assertThat(log.read(address).getPayload(null)).isEqualTo(streamEntry);
+        }
+        log.close();
+
+        // Invalidate the headers of the last two segments, the recovery reports the
+        // error of the lowest segment regardless of the order they were verified in
+        String logDir = getContext().getServerConfig().get("--log-path") + File.separator + "log";
+        for (int segment = numSegments - 2; segment < numSegments; segment++) {
+            RandomAccessFile file = new RandomAccessFile(logDir + File.separator + segment
+                    + ".log", "rw");
+            StreamLogFiles.writeHeader(file.getChannel(), StreamLogFiles.VERSION + 1, true);
+            file.close();
+        }
+
+        final String firstInvalid = (numSegments - 2) + ".log";
+        assertThatThrownBy(() -> new StreamLogFiles(getContext(), false))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining(firstInvalid)
+                .matches(e -> e.getSuppressed().length == 1);
+    }
+
+    @Test
+    public void testRecoveryReportsLowestSegmentNumber() throws Exception {
+        final int recordsPerSegment = 10;
+        final int numSegments = 12;
+        ServerContext sc = new ServerContextBuilder()
+                .setLogPath(getDirPath())
+                .setMemory(false)
+                .setLogSegmentRecords(Integer.toString(recordsPerSegment))
+                .build();
+        StreamLogFiles log = new StreamLogFiles(sc, false);
+        for (long segment = 0; segment < numSegments; segment++) {
+            log.append(segment * recordsPerSegment, getEntry(segment * recordsPerSegment));
+        }
+        log.close();
+
+        // Segment 10 sorts before segment 2 by file name, the error of segment 2 is reported
+        final long[] invalidSegments = {2, 10};
+        String logDir = getDirPath() + File.separator + "log";
+        for (long segment : invalidSegments) {
+            try (RandomAccessFile file = new RandomAccessFile(logDir + File.separator + segment
+                    + ".log", "rw")) {
+                StreamLogFiles.writeHeader(file.getChannel(), StreamLogFiles.VERSION + 1, true);
+            }
+        }
+
+        final String firstInvalid = File.separator + invalidSegments[0] + ".log";
+        assertThatThrownBy(() -> new StreamLogFiles(sc, false))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessageContaining(firstInvalid)
+                .matches(e -> e.getSuppressed().length == 1);
+    }
+}
@@ -176,7 +176,7 @@ public class LogUnitHandlerTest extends AbstractClientTest {
         assertThat(r.getType())
                 .isEqualTo(DataType.DATA);
 
-        client.prefixTrim(address0);
+        client.prefixTrim(address0).get();
         client.compact();
 
         // For logunit cach flush
@@ -362,6 +362,37 @@ public class LogUnitHandlerTest extends AbstractClientTest {
         assertThat(resp.getAddresses().size()).isEqualTo(twoBatches);
     }
 
+    @Test
+    public void streamAddressesCanBeQueried()
+            throws Exception {
+        final UUID even = CorfuRuntime.getStreamID("even");
+        final UUID odd = CorfuRuntime.getStreamID("odd");
+        final long numAddresses = 6;
+        final long start = 1;
+        final long end = 4;
+
+        byte[] testString = "hello world".getBytes();
+        List<Long> evenInRange = new ArrayList<>();
+        List<Long> oddAddresses = new ArrayList<>();
+        for (long address = 0; address < numAddresses; address++) {
+            boolean isEven = address % 2 == 0;
+            client.write(address, Collections.<UUID>emptySet(), null, testString,
+                    Collections.singletonMap(isEven ? even : odd, address - 2)).get();
+            if (!isEven) {
+                oddAddresses.add(address);
+            } else if (address >= start && address <= end) {
+                evenInRange.add(address);
+            }
+        }
+
+        assertThat(client.getStreamAddresses(even, start, end).get())
+                .isEqualTo(evenInRange);
+        assertThat(client.getStreamAddresses(odd, 0, Long.MAX_VALUE).get())
+                .isEqualTo(oddAddresses);
+        assertThat(client.getStreamAddresses(CorfuRuntime.getStreamID("none"), 0,
+                numAddresses).get()).isEmpty();
+    }
+
     @Test
     public void backpointersCanBeWrittenAndRead()
             throws Exception {
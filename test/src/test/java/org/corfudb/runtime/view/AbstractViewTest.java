@@ -245,6 +245,15 @@ public abstract class AbstractViewTest extends AbstractCorfuTest {
         return getServer(port).getSequencerServer();
     }
 
+    /** Get the server context of a server, given a port.
+     *
+     * @param port      The port of the server.
+     * @return          The server context.
+     */
+    public ServerContext getServerContext(int port) {
+        return getServer(port).getServerContext();
+    }
+
     /** Get a instance of a layout server, given a port.
      *
      * @param port      The port of the layout server to retrieve.
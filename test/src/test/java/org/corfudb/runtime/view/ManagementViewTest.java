@@ -15,6 +15,7 @@ import org.corfudb.infrastructure.management.HealingDetector;
 import org.corfudb.protocols.wireprotocol.CorfuMsgType;
 import org.corfudb.protocols.wireprotocol.LogData;
 import org.corfudb.protocols.wireprotocol.ReadResponse;
+import org.corfudb.protocols.wireprotocol.SequencerTailsRecoveryMsg;
 import org.corfudb.protocols.wireprotocol.TokenResponse;
 import org.corfudb.runtime.CorfuRuntime;
 import org.corfudb.runtime.clients.TestRule;
@@ -668,6 +669,54 @@ public class ManagementViewTest extends AbstractViewTest {
         getTokenWriteAndAssertBackPointer(streamB, streamB_backpointerFinal);
     }
 
+    /**
+     * Scenario with 3 nodes: SERVERS.PORT_0, SERVERS.PORT_1 and SERVERS.PORT_2.
+     * The primary sequencer on SERVERS.PORT_0 takes a snapshot, which is replicated to the
+     * backup sequencer on SERVERS.PORT_1, and fails. The new primary sequencer recovers the
+     * stream tails from the snapshot and from the log written after the snapshot.
+     * A token issued but not written before the snapshot is only known from the snapshot.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void sequencerFailoverFromSnapshot() throws Exception {
+        getManagementTestLayout();
+
+        UUID streamA = UUID.nameUUIDFromBytes("stream A".getBytes());
+        UUID streamB = UUID.nameUUIDFromBytes("stream B".getBytes());
+        UUID streamC = UUID.nameUUIDFromBytes("stream C".getBytes());
+
+        final long snapshotTail = 3L;
+        final long streamA_backpointerRecovered = 3L;
+        final long streamB_backpointerRecovered = 1L;
+        final long streamC_backpointerRecovered = 2L;
+
+        getTokenWriteAndAssertBackPointer(streamA, Address.NON_EXIST);
+        getTokenWriteAndAssertBackPointer(streamB, Address.NON_EXIST);
+        corfuRuntime.getSequencerView().nextToken(Collections.singleton(streamC), 1);
+
+        getSequencer(SERVERS.PORT_0).takeSnapshot();
+        SequencerTailsRecoveryMsg snapshot = corfuRuntime.getLayoutView().getRuntimeLayout()
+                .getSequencerClient(SERVERS.ENDPOINT_0).getSnapshot().get();
+        assertThat(snapshot.getGlobalTail()).isEqualTo(snapshotTail);
+        getServerContext(SERVERS.PORT_1).setSequencerSnapshot(snapshot);
+
+        // Written after the snapshot, recovered from the log
+        getTokenWriteAndAssertBackPointer(streamA, 0L);
+
+        induceSequencerFailureAndWait();
+
+        TokenResponse tokenResponse = corfuRuntime.getSequencerView()
+                .nextToken(Collections.singleton(streamC), 1);
+        assertThat(tokenResponse.getTokenValue()).isGreaterThan(streamA_backpointerRecovered);
+        assertThat(tokenResponse.getBackpointerMap())
+                .containsEntry(streamC, streamC_backpointerRecovered);
+        corfuRuntime.getAddressSpaceView().write(tokenResponse, "test".getBytes());
+
+        getTokenWriteAndAssertBackPointer(streamA, streamA_backpointerRecovered);
+        getTokenWriteAndAssertBackPointer(streamB, streamB_backpointerRecovered);
+    }
+
     /**
      * Requests for a token for the given stream ID.
      * Asserts the backpointer map in the token response with the specified backpointer location.
@@ -1,7 +1,13 @@
 package org.corfudb.runtime.view.stream;
 
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.corfudb.protocols.wireprotocol.ILogData;
 import org.corfudb.runtime.CorfuRuntime;
 import org.corfudb.runtime.view.AbstractViewTest;
+import org.corfudb.runtime.view.Address;
 import org.junit.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -28,6 +34,38 @@ public class BackpointerStreamViewTest extends AbstractViewTest {
         assertThat(sv.hasNext()).isFalse();
     }
 
+    /**
+     * Tests that a stream resolved from the stream index of the log units has the same
+     * entries, in the same order, as the stream resolved by following backpointers.
+     */
+    @Test
+    public void streamIndexTest() {
+        CorfuRuntime runtime = getDefaultRuntime();
+        UUID streamA = CorfuRuntime.getStreamID("streamA");
+        UUID streamB = CorfuRuntime.getStreamID("streamB");
+
+        IStreamView svA = runtime.getStreamsView().get(streamA);
+        IStreamView svB = runtime.getStreamsView().get(streamB);
+        for (int i = 0; i < PARAMETERS.NUM_ITERATIONS_LOW; i++) {
+            svA.append(String.valueOf(i).getBytes());
+            svB.append(String.valueOf(i).getBytes());
+        }
+
+        List<Long> indexed = runtime.getStreamsView().get(streamA).remaining().stream()
+                .map(ILogData::getGlobalAddress)
+                .collect(Collectors.toList());
+
+        runtime.getParameters().setStreamIndexEnabled(false);
+        List<Long> followed = runtime.getStreamsView().get(streamA).remaining().stream()
+                .map(ILogData::getGlobalAddress)
+                .collect(Collectors.toList());
+
+        assertThat(indexed).hasSize(PARAMETERS.NUM_ITERATIONS_LOW);
+        assertThat(indexed).isEqualTo(followed);
+        assertThat(runtime.getAddressSpaceView().getStreamAddresses(streamB, 0, Address.MAX))
+                .doesNotContainAnyElementsOf(indexed);
+    }
+
     /**
      * tests navigating forward/backward on a stream,
      * with intermittent appends to the stream.